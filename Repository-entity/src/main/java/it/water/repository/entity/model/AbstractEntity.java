@@ -16,6 +16,7 @@
 
 package it.water.repository.entity.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
 import it.water.core.api.model.BaseEntity;
 import it.water.core.api.service.rest.WaterJsonView;
@@ -26,7 +27,10 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 
 /**
@@ -80,6 +84,12 @@ public abstract class AbstractEntity extends AbstractResource implements BaseEnt
     @JsonView(WaterJsonView.Extended.class)
     protected long[] tagIds;
 
+    /**
+     * Properties modified since the entity has been loaded, one bit per property (see EntityPropertyIndex).
+     * Not persisted nor serialized.
+     */
+    private transient long[] dirtyProperties;
+
     protected AbstractEntity() {
         initEntity(0, new Date(Instant.now().toEpochMilli()));
     }
@@ -92,6 +102,55 @@ public abstract class AbstractEntity extends AbstractResource implements BaseEnt
         initEntity(id, entityCreateDate);
     }
 
+    /**
+     * Records a property change, setters of entities supporting partial updates should call it.
+     *
+     * @param propertyName name of the modified property
+     */
+    public void markDirty(String propertyName) {
+        EntityPropertyIndex index = EntityPropertyIndex.of(this.getClass());
+        int position = index.positionOf(propertyName);
+        if (position < 0)
+            throw new IllegalArgumentException("Unknown property " + propertyName + " for " + this.getClass().getName());
+        if (dirtyProperties == null)
+            dirtyProperties = new long[(index.size() + 63) / 64];
+        dirtyProperties[position / 64] |= 1L << (position % 64);
+    }
+
+    /**
+     * @return true if the property has been modified since the entity has been loaded
+     */
+    public boolean isDirty(String propertyName) {
+        int position = EntityPropertyIndex.of(this.getClass()).positionOf(propertyName);
+        return position >= 0 && dirtyProperties != null && (dirtyProperties[position / 64] & (1L << (position % 64))) != 0;
+    }
+
+    /**
+     * @return names of the properties modified since the entity has been loaded, in declaration order
+     */
+    @JsonIgnore
+    public Set<String> getDirtyFields() {
+        if (dirtyProperties == null)
+            return Collections.emptySet();
+        EntityPropertyIndex index = EntityPropertyIndex.of(this.getClass());
+        Set<String> dirtyFields = new LinkedHashSet<>();
+        for (int word = 0; word < dirtyProperties.length; word++) {
+            long bits = dirtyProperties[word];
+            while (bits != 0) {
+                dirtyFields.add(index.nameAt(word * 64 + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        return dirtyFields;
+    }
+
+    /**
+     * Forgets the recorded changes, called once the entity state matches the persisted one
+     */
+    public void clearDirtyFields() {
+        this.dirtyProperties = null;
+    }
+
     private void initEntity(long id, Date entityCreateDate) {
         this.id = id;
         this.setEntityCreateDate(entityCreateDate);
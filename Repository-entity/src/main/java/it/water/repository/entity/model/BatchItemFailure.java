@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.entity.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Failure of a single item inside a batch operation.
+ */
+@JsonView({WaterJsonView.Extended.class,WaterJsonView.Compact.class,WaterJsonView.Internal.class,WaterJsonView.Privacy.class,WaterJsonView.Public.class,WaterJsonView.Secured.class})
+public class BatchItemFailure {
+    /**
+     * Position of the item inside the submitted batch
+     */
+    @Getter
+    private final int index;
+    /**
+     * Entity id, 0 if not yet assigned
+     */
+    @Getter
+    private final long entityId;
+    @Getter
+    private final String errorMessage;
+    @Getter
+    @JsonIgnore
+    private final transient Throwable cause;
+
+    public BatchItemFailure(int index, long entityId, Throwable cause) {
+        this.index = index;
+        this.entityId = entityId;
+        this.cause = cause;
+        this.errorMessage = (cause != null) ? cause.getClass().getSimpleName() + ": " + cause.getMessage() : null;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.entity.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * @param <T> entity which extends BaseEntity
+ * @Author Aristide Cittadino.
+ * Outcome of a batch operation: processed entities and per item failures.
+ * A failing item never aborts the whole batch.
+ */
+@JsonView({WaterJsonView.Extended.class,WaterJsonView.Compact.class,WaterJsonView.Internal.class,WaterJsonView.Privacy.class,WaterJsonView.Public.class,WaterJsonView.Secured.class})
+public class BatchResult<T extends BaseEntity> {
+    /**
+     * Entities successfully processed
+     */
+    @Getter
+    private final List<T> succeeded = new ArrayList<>();
+    /**
+     * Failed items, referring to their position in the submitted batch
+     */
+    @Getter
+    private final List<BatchItemFailure> failures = new ArrayList<>();
+
+    public void addSucceeded(T entity) {
+        this.succeeded.add(entity);
+    }
+
+    public void addFailure(BatchItemFailure failure) {
+        this.failures.add(failure);
+    }
+
+    /**
+     * Adds the outcome of a batch executed on a subset of the items of this batch
+     *
+     * @param subsetResult result of the subset
+     * @param indexes      position in this batch of each item of the subset
+     */
+    public void merge(BatchResult<T> subsetResult, int[] indexes) {
+        this.succeeded.addAll(subsetResult.getSucceeded());
+        subsetResult.getFailures().forEach(failure ->
+                this.failures.add(new BatchItemFailure(indexes[failure.getIndex()], failure.getEntityId(), failure.getCause())));
+        this.failures.sort(Comparator.comparingInt(BatchItemFailure::getIndex));
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public int getSucceededCount() {
+        return succeeded.size();
+    }
+
+    public int getFailedCount() {
+        return failures.size();
+    }
+}
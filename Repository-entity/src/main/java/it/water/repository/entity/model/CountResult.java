@@ -0,0 +1,56 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.entity.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Result of a count, which may be an estimate or a cached value instead of a fresh exact count.
+ */
+@JsonView({WaterJsonView.Extended.class,WaterJsonView.Compact.class,WaterJsonView.Internal.class,WaterJsonView.Privacy.class,WaterJsonView.Public.class,WaterJsonView.Secured.class})
+public class CountResult {
+    @Getter
+    private final long count;
+    /**
+     * True when the count is an estimate, ex. from the table statistics of the database
+     */
+    @Getter
+    private final boolean approximate;
+    /**
+     * Time elapsed since the count has been computed, 0 for fresh counts
+     */
+    @Getter
+    private final long ageMillis;
+
+    public CountResult(long count, boolean approximate, long ageMillis) {
+        this.count = count;
+        this.approximate = approximate;
+        this.ageMillis = ageMillis;
+    }
+
+    /**
+     * @param count fresh exact count
+     */
+    public static CountResult exact(long count) {
+        return new CountResult(count, false, 0);
+    }
+}
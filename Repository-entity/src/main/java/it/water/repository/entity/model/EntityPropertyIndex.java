@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.entity.model;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Positions of the persistent properties of an entity class, computed once per class.
+ * Properties are the non static, non transient fields declared by the class and its superclasses,
+ * superclass fields first, so each property can be tracked with a single bit.
+ */
+public class EntityPropertyIndex {
+    private static final ClassValue<EntityPropertyIndex> indexes = new ClassValue<>() {
+        @Override
+        protected EntityPropertyIndex computeValue(Class<?> type) {
+            return new EntityPropertyIndex(type);
+        }
+    };
+
+    private final List<String> names;
+    private final Map<String, Integer> positions;
+
+    private EntityPropertyIndex(Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass())
+            hierarchy.add(0, current);
+        List<String> propertyNames = new ArrayList<>();
+        Map<String, Integer> propertyPositions = new HashMap<>();
+        for (Class<?> current : hierarchy) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic() || propertyPositions.containsKey(field.getName()))
+                    continue;
+                propertyPositions.put(field.getName(), propertyNames.size());
+                propertyNames.add(field.getName());
+            }
+        }
+        this.names = Collections.unmodifiableList(propertyNames);
+        this.positions = propertyPositions;
+    }
+
+    /**
+     * @param type entity class
+     * @return the shared index of the class
+     */
+    public static EntityPropertyIndex of(Class<?> type) {
+        return indexes.get(type);
+    }
+
+    /**
+     * @param propertyName property name
+     * @return the property position, -1 if the class has no such property
+     */
+    public int positionOf(String propertyName) {
+        Integer position = positions.get(propertyName);
+        return (position != null) ? position : -1;
+    }
+
+    public String nameAt(int position) {
+        return names.get(position);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+}
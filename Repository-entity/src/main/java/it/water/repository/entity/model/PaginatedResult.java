@@ -35,7 +35,12 @@ import java.util.Collection;
 public class PaginatedResult<T extends BaseEntity>
         implements PaginableResult<T> {
     /**
-     * Num pages
+     * Num pages of results fetched without counting them
+     */
+    public static final int UNKNOWN_NUM_PAGES = -1;
+
+    /**
+     * Num pages, UNKNOWN_NUM_PAGES when the total has not been counted
      */
     @Getter
     private final int numPages;
@@ -59,15 +64,44 @@ public class PaginatedResult<T extends BaseEntity>
      */
     @Getter
     private final Collection<T> results;
+    /**
+     * True if at least one more result exists after this page
+     */
+    @Getter
+    private final boolean hasNext;
 
     public PaginatedResult(int numPages, int currentPage, int nextPage, int delta,
                            Collection<T> results) {
+        this(numPages, currentPage, nextPage, delta, results, currentPage < numPages);
+    }
+
+    private PaginatedResult(int numPages, int currentPage, int nextPage, int delta,
+                            Collection<T> results, boolean hasNext) {
         super();
         this.numPages = numPages;
         this.currentPage = currentPage;
         this.nextPage = nextPage;
         this.delta = delta;
         this.results = results;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * @param currentPage current page
+     * @param delta       num of items per page
+     * @param results     query results
+     * @param hasNext     true if more results exist after this page
+     * @return page which does not know the total number of pages
+     */
+    public static <T extends BaseEntity> PaginatedResult<T> withoutTotal(int currentPage, int delta, Collection<T> results, boolean hasNext) {
+        return new PaginatedResult<>(UNKNOWN_NUM_PAGES, currentPage, hasNext ? currentPage + 1 : currentPage, delta, results, hasNext);
+    }
+
+    /**
+     * @return false when the page has been fetched without counting the results, so numPages is UNKNOWN_NUM_PAGES
+     */
+    public boolean isTotalKnown() {
+        return numPages != UNKNOWN_NUM_PAGES;
     }
 
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.entity.model;
+
+import it.water.core.api.entity.owned.OwnedChildResource;
+import it.water.core.api.entity.owned.OwnedResource;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Owned child resource carrying the id of the root of its parent chain as a denormalized, indexed column.
+ * System services refresh it on every save and update, so visibility filters test a single column
+ * instead of joining the whole parent chain.
+ * Moving a node in the middle of the chain does not write its descendants: their column must be recomputed
+ * with BaseEntitySystemServiceImpl.reindexRootParents.
+ */
+public interface RootParentIndexedResource extends OwnedChildResource {
+    static String getRootParentIdFieldName() {
+        return "rootParentId";
+    }
+
+    /**
+     * @return root of the parent chain, null when the resource is not attached to a parent
+     */
+    OwnedResource getRootParent();
+
+    Long getRootParentId();
+
+    void setRootParentId(Long rootParentId);
+}
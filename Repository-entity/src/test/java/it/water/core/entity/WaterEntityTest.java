@@ -25,6 +25,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 class WaterEntityTest {
 
@@ -54,6 +55,20 @@ class WaterEntityTest {
         Assertions.assertTrue(results.containsAll(results));
     }
 
+    @Test
+    void testDirtyFieldTracking() {
+        WaterTestEntity entity = new WaterTestEntity(1);
+        Assertions.assertTrue(entity.getDirtyFields().isEmpty());
+        entity.markDirty("tagIds");
+        entity.markDirty("entityVersion");
+        Assertions.assertTrue(entity.isDirty("tagIds"));
+        Assertions.assertFalse(entity.isDirty("categoryIds"));
+        Assertions.assertEquals(List.of("entityVersion", "tagIds"), new ArrayList<>(entity.getDirtyFields()));
+        entity.clearDirtyFields();
+        Assertions.assertTrue(entity.getDirtyFields().isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> entity.markDirty("notAProperty"));
+    }
+
     @Test
     void testEntityExceptionsModels() {
         String[] fields = {"a", "b"};
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.query;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Describes a sub query selecting one field of an entity under equality conditions,
+ * for example the ids of the entities shared with a user: "select entityId from SharedEntity where userId = ? and entityResourceName = ?".
+ * Query builders supporting it push the sub query down to the database as a semi join,
+ * so the selected values are never loaded in memory.
+ */
+@Getter
+public class SubQueryDescriptor {
+    private final String entityName;
+    private final String selectedField;
+    private final Map<String, Object> conditions;
+
+    /**
+     * @param entityName    entity the sub query reads from
+     * @param selectedField field whose values are matched by the outer query
+     * @param conditions    equality conditions by field name, combined with and
+     */
+    public SubQueryDescriptor(String entityName, String selectedField, Map<String, Object> conditions) {
+        this.entityName = Objects.requireNonNull(entityName);
+        this.selectedField = Objects.requireNonNull(selectedField);
+        this.conditions = Collections.unmodifiableMap(new LinkedHashMap<>(conditions));
+    }
+
+    @Override
+    public String toString() {
+        return "select " + selectedField + " from " + entityName + " where " + conditions.keySet();
+    }
+}
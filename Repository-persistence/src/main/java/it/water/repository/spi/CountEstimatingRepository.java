@@ -0,0 +1,35 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.spi;
+
+import it.water.core.api.repository.query.Query;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional repository capability: estimates the number of entities matching a filter without counting them,
+ * ex. from the table statistics or the query planner of the database.
+ * Approximate counts are computed exactly with repositories not implementing it.
+ */
+public interface CountEstimatingRepository {
+    /**
+     * @param filter filter, null for the whole table
+     * @return estimated number of matching entities, a negative value if no estimate is available for the filter
+     */
+    long estimateCount(Query filter);
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.spi;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional repository capability: reads entity ids only, without loading the entities nor counting them.
+ * Repositories not implementing it are read through whole entities.
+ */
+public interface IdProjectionRepository {
+    /**
+     * @param afterId    returned ids are greater than this one
+     * @param maxResults max number of ids
+     * @return ids in ascending order
+     */
+    long[] findIdsAfter(long afterId, int maxResults);
+}
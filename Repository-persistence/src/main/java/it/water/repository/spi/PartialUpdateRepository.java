@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.spi;
+
+import it.water.core.api.model.BaseEntity;
+
+import java.util.Set;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Optional repository capability: updates only the given columns of an entity.
+ * Repositories not implementing it are updated with the whole entity.
+ */
+public interface PartialUpdateRepository<T extends BaseEntity> {
+    /**
+     * @param entity            entity to update
+     * @param changedProperties names of the properties to write
+     * @return updated entity
+     */
+    T update(T entity, Set<String> changedProperties);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.spi;
+
+import it.water.core.api.repository.query.Query;
+import it.water.repository.query.SubQueryDescriptor;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional query builder capability: filters a field by the values selected by a sub query,
+ * translated by the persistence layer as an exists/in semi join.
+ * Services fall back to literal value lists with query builders not implementing it.
+ * No query builder of this repository implements it, DefaultQueryBuilder only produces string filters:
+ * the semi join is inert until a persistence backend provides a query builder translating the sub query.
+ */
+public interface SemiJoinQueryBuilder {
+    /**
+     * @param field    field of the queried entity
+     * @param subQuery sub query selecting the accepted values
+     * @return filter matching the entities whose field value is selected by the sub query
+     */
+    Query in(String field, SubQueryDescriptor subQuery);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.spi;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional capability of a repository able to group several operations in a single transaction.
+ * Batch operations of the service layer use it to persist items in chunks, one transaction per chunk.
+ * Repositories not implementing it execute every operation in its own transaction.
+ */
+public interface TransactionalRepository {
+    /**
+     * Executes all the repository operations invoked by the given runnable in one transaction,
+     * rolling everything back if the runnable throws an exception.
+     *
+     * @param operations repository operations
+     */
+    void runInTransaction(Runnable operations);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.spi;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+
+import java.util.List;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Optional repository capability: reads a window of results without counting the whole result set.
+ * Repositories not implementing it are read through findAll, which counts the results.
+ */
+public interface UncountedFindAllRepository<T extends BaseEntity> {
+    /**
+     * @param firstResult index of the first result, starting from 0
+     * @param maxResults  max number of results
+     * @param filter      filter, can be null
+     * @param queryOrder  order, can be null
+     * @return results in the given order
+     */
+    List<T> findRange(int firstResult, int maxResults, Query filter, QueryOrder queryOrder);
+}
@@ -23,9 +23,11 @@ import it.water.core.api.entity.owned.OwnedResource;
 import it.water.core.api.entity.shared.SharedEntity;
 import it.water.core.api.model.BaseEntity;
 import it.water.core.api.model.PaginableResult;
+import it.water.core.api.permission.PermissionManager;
 import it.water.core.api.permission.SecurityContext;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryBuilder;
 import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.api.service.BaseEntityApi;
 import it.water.core.api.service.BaseEntitySystemApi;
@@ -36,16 +38,58 @@ import it.water.core.permission.annotations.AllowGenericPermissions;
 import it.water.core.permission.annotations.AllowPermissions;
 import it.water.core.permission.annotations.AllowPermissionsOnReturn;
 import it.water.core.permission.exceptions.UnauthorizedException;
-import it.water.core.registry.model.exception.NoComponentRegistryFoundException;
 import it.water.core.service.BaseAbstractService;
+import it.water.repository.entity.model.BatchItemFailure;
+import it.water.repository.entity.model.BatchResult;
+import it.water.repository.entity.model.CountResult;
+import it.water.repository.entity.model.PaginatedResult;
 import it.water.repository.entity.model.exceptions.EntityNotFound;
+import it.water.repository.query.SubQueryDescriptor;
+import it.water.repository.service.api.AsyncEntityApi;
+import it.water.repository.service.api.BatchEntityApi;
+import it.water.repository.service.api.BatchEntitySystemApi;
+import it.water.repository.service.api.CachedFindSystemApi;
+import it.water.repository.service.api.CountEntityApi;
+import it.water.repository.service.api.PatchEntityApi;
+import it.water.repository.service.api.SnapshotUpdateSystemApi;
+import it.water.repository.service.api.StreamingEntityApi;
+import it.water.repository.service.api.UncountedFindAllApi;
+import it.water.repository.service.cache.CachedComponentLookup;
+import it.water.repository.service.cache.SharedEntityIdCache;
+import it.water.repository.service.cache.SharedEntityIdCacheStatistics;
+import it.water.repository.service.cache.UnitOfWork;
+import it.water.repository.service.concurrent.AsyncExecutors;
+import it.water.repository.service.patch.EntityPatcher;
+import it.water.repository.service.spi.SharedEntitySubQueryProvider;
+import it.water.repository.service.stream.EntityCursor;
+import it.water.repository.service.metrics.EntityOperation;
+import it.water.repository.service.metrics.InProcessMetricsRegistry;
+import it.water.repository.service.metrics.ServiceLayer;
+import it.water.repository.service.metrics.ServiceMetrics;
+import it.water.repository.service.spi.EntityMetricsRegistry;
+import it.water.repository.service.stream.EntityPublisher;
+import it.water.repository.service.stream.PageFetcher;
+import it.water.repository.service.stream.PrefetchingSpliterator;
+import it.water.repository.spi.SemiJoinQueryBuilder;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -56,7 +100,7 @@ import java.util.Collection;
  * This methods are reusable by all entities in order to interact with the
  * system layer.
  */
-public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAbstractService implements BaseEntityApi<T> {
+public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAbstractService implements BaseEntityApi<T>, BatchEntityApi<T>, AsyncEntityApi<T>, StreamingEntityApi<T>, PatchEntityApi<T>, CountEntityApi, UncountedFindAllApi<T> {
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
 
     @Inject
@@ -64,11 +108,47 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
     @Getter(AccessLevel.PROTECTED)
     private Runtime runtime;
 
+    /**
+     * Executor running the async methods, null means AsyncExecutors.defaultExecutor()
+     */
+    @Setter
+    private Executor asyncExecutor;
+
+    /**
+     * When true find, update and remove run in a unit of work, so the entity is read once per call
+     * by this service and its system service (and by the permission checks if the caller opened the unit of work)
+     */
+    @Getter
+    @Setter
+    private boolean unitOfWorkEnabled;
+
+    /**
+     * Ids of the entities shared with each user, null when disabled (default)
+     */
+    private volatile SharedEntityIdCache sharedEntityIdCache;
+
+    /**
+     * Recorders of the operation metrics, null when disabled (default)
+     */
+    private volatile ServiceMetrics serviceMetrics;
+
     /**
      * Generic class for  platform
      */
     private final Class<T> type;
 
+    /**
+     * Shared entity integration client resolved once from the component registry
+     */
+    private final CachedComponentLookup<SharedEntityIntegrationClient> sharedEntityIntegrationClientLookup = new CachedComponentLookup<>(SharedEntityIntegrationClient.class,
+            this::getComponentRegistry, CachedComponentLookup.DEFAULT_NEGATIVE_TTL_MILLIS, () -> getLog().warn("No shared entity integration client found!"));
+
+    /**
+     * Permission manager checking each item of the batch operations
+     */
+    private final CachedComponentLookup<PermissionManager> permissionManagerLookup = new CachedComponentLookup<>(PermissionManager.class,
+            this::getComponentRegistry, CachedComponentLookup.DEFAULT_NEGATIVE_TTL_MILLIS, () -> getLog().warn("No permission manager found, batch items are allowed to admins only!"));
+
     /**
      * Constructor for BaseEntityServiceImpl
      *
@@ -86,6 +166,10 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
      */
     @AllowPermissions(actions = {CrudActions.SAVE})
     public T save(T entity) {
+        return timed(EntityOperation.SAVE, () -> saveEntity(entity));
+    }
+
+    private T saveEntity(T entity) {
         this.log.debug("Service Saving entity {}: {}", this.type.getSimpleName(), entity);
         //automatic setting ownership on entity
         if (entity instanceof OwnedResource ownedResource) {
@@ -103,7 +187,17 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
 
     @AllowPermissions(actions = {CrudActions.UPDATE})
     public T update(T entity) {
+        return timed(EntityOperation.UPDATE, () -> updateEntity(entity));
+    }
+
+    private T updateEntity(T entity) {
         this.log.debug("Service Updating entity entity {}: {} ", this.type.getSimpleName(), entity);
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            return this.doUpdate(entity, unitOfWork);
+        }
+    }
+
+    private T doUpdate(T entity, UnitOfWork unitOfWork) {
         if (entity.getId() > 0) {
             // #38: on the generic update path the client must never be able to change the owner of an
             // OwnedResource (give it away or null it). Always restore ownerUserId from the currently
@@ -111,20 +205,59 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
             // to admins too: the generic update is not the place to transfer ownership (a dedicated
             // operation should be used for that). Note this only fixes the persisted field value; the
             // H5 ownership/permission interceptor independently reloads the entity for authorization.
+            // The persisted entity is loaded once and handed over to the system service as the
+            // pre-update snapshot, which would otherwise read it again for the detailed events.
+            // It is loaded only when the owner must be restored or the system service uses it.
+            boolean snapshotUpdate = this.getSystemService() instanceof SnapshotUpdateSystemApi<?>;
+            // The caller may be updating the very instance held by the unit of work,
+            // so it is flushed to read the persisted state.
+            if (unitOfWork != null)
+                unitOfWork.written(this.type, entity.getId());
+            T persisted = null;
+            if (entity instanceof OwnedResource || (snapshotUpdate && this.snapshotSystemService().isUpdateSnapshotNeeded()))
+                persisted = this.getSystemService().find(entity.getId());
             if (entity instanceof OwnedResource ownedResource) {
                 // Restore the owner from the persisted entity when it exists; if it does not exist we
                 // leave the entity unchanged and let the system-service update surface the error,
                 // preserving the prior not-found behaviour of update().
-                BaseEntity persisted = this.getSystemService().find(entity.getId());
                 if (persisted instanceof OwnedResource persistedOwned) {
                     ownedResource.setOwnerUserId(persistedOwned.getOwnerUserId());
                 }
             }
+            if (snapshotUpdate)
+                return this.snapshotSystemService().update(entity, persisted);
             return this.getSystemService().update(entity);
         }
         throw new EntityNotFound();
     }
 
+    /**
+     * Partially update an entity in datacore.
+     * As in update, the owner of OwnedResource entities cannot be changed.
+     *
+     * @param id      id of the entity to update
+     * @param changes new values by property name
+     * @return entity updated
+     */
+    @Override
+    @AllowPermissions(actions = CrudActions.UPDATE, checkById = true)
+    public T patch(long id, Map<String, Object> changes) {
+        return timed(EntityOperation.UPDATE, () -> patchEntity(id, changes));
+    }
+
+    private T patchEntity(long id, Map<String, Object> changes) {
+        this.log.debug("Service Patching entity {} with id {}: {}", this.type.getSimpleName(), id, changes.keySet());
+        if (OwnedResource.class.isAssignableFrom(this.type) && changes.containsKey(OwnedResource.getOwnerUserIdFieldName()))
+            throw new UnauthorizedException();
+        if (this.getSystemService() instanceof PatchEntityApi<?>)
+            return this.patchSystemService().patch(id, changes);
+        T entity = this.getSystemService().find(id);
+        if (entity == null)
+            throw new EntityNotFound();
+        EntityPatcher.apply(entity, changes);
+        return this.getSystemService().update(entity);
+    }
+
     /**
      * Remove an entity in datacore
      *
@@ -132,15 +265,245 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
      */
     @AllowPermissions(actions = CrudActions.REMOVE, checkById = true)
     public void remove(long id) {
+        timed(EntityOperation.REMOVE, () -> removeEntity(id));
+    }
+
+    private void removeEntity(long id) {
         this.log.debug("Service Removing entity {} with id {}", this.type.getSimpleName(), id);
-        BaseEntity entity = this.getSystemService().find(id);
-        if (entity != null) {
-            this.getSystemService().remove(entity.getId());
-            return;
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            BaseEntity entity = this.getSystemService().find(id);
+            if (entity != null) {
+                this.getSystemService().remove(entity.getId());
+                return;
+            }
         }
         throw new EntityNotFound();
     }
 
+    /**
+     * Save a batch of entities in datacore.
+     * Permissions are checked once for the whole batch.
+     *
+     * @param entities entities to save
+     * @return saved entities and failed items
+     */
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.SAVE})
+    public BatchResult<T> saveAll(Collection<T> entities) {
+        this.log.debug("Service Saving {} entities {}", entities.size(), this.type.getSimpleName());
+        if (OwnedResource.class.isAssignableFrom(this.type)) {
+            Long ownerUserId = (runtime != null) ? runtime.getSecurityContext().getLoggedEntityId() : 0;
+            entities.forEach(entity -> ((OwnedResource) entity).setOwnerUserId(ownerUserId));
+        }
+        if (this.getSystemService() instanceof BatchEntitySystemApi<?>)
+            return this.batchSystemService().saveAll(entities);
+        BatchResult<T> result = new BatchResult<>();
+        int index = 0;
+        for (T entity : entities) {
+            try {
+                result.addSucceeded(this.getSystemService().save(entity));
+            } catch (RuntimeException e) {
+                result.addFailure(new BatchItemFailure(index, entity.getId(), e));
+            }
+            index++;
+        }
+        return result;
+    }
+
+    /**
+     * Update a batch of entities in datacore.
+     * The update permission is checked once for the whole batch, then on each persisted entity as checkById does.
+     * For OwnedResource entities non admin users can update only the entities they own or which are shared with them.
+     * As in update, the owner of OwnedResource entities is always restored from the persisted entity.
+     *
+     * @param entities entities to update
+     * @return updated entities and failed items
+     */
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.UPDATE})
+    public BatchResult<T> updateAll(Collection<T> entities) {
+        this.log.debug("Service Updating {} entities {}", entities.size(), this.type.getSimpleName());
+        BatchResult<T> result = new BatchResult<>();
+        Supplier<Set<Long>> sharedIds = this.lazySharedEntityIds();
+        List<T> allowed = new ArrayList<>(entities.size());
+        int[] indexes = new int[entities.size()];
+        int index = 0;
+        for (T entity : entities) {
+            RuntimeException denied = (entity.getId() > 0) ? this.checkBatchItemPermission(entity.getId(), entity, sharedIds, CrudActions.UPDATE) : new EntityNotFound();
+            if (denied != null) {
+                result.addFailure(new BatchItemFailure(index, entity.getId(), denied));
+            } else {
+                indexes[allowed.size()] = index;
+                allowed.add(entity);
+            }
+            index++;
+        }
+        if (this.getSystemService() instanceof BatchEntitySystemApi<?>) {
+            result.merge(this.batchSystemService().updateAll(allowed), indexes);
+            return result;
+        }
+        for (int i = 0; i < allowed.size(); i++) {
+            try {
+                result.addSucceeded(this.getSystemService().update(allowed.get(i)));
+            } catch (RuntimeException e) {
+                result.addFailure(new BatchItemFailure(indexes[i], allowed.get(i).getId(), e));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove a batch of entities from datacore, with the same permission semantics of updateAll.
+     *
+     * @param ids ids of the entities to remove
+     * @return removed entities and failed items
+     */
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.REMOVE})
+    public BatchResult<T> removeAllByIds(Collection<Long> ids) {
+        this.log.debug("Service Removing {} entities {}", ids.size(), this.type.getSimpleName());
+        BatchResult<T> result = new BatchResult<>();
+        Supplier<Set<Long>> sharedIds = this.lazySharedEntityIds();
+        List<Long> allowed = new ArrayList<>(ids.size());
+        int[] indexes = new int[ids.size()];
+        int index = 0;
+        for (Long id : ids) {
+            RuntimeException denied = this.checkBatchItemPermission(id, null, sharedIds, CrudActions.REMOVE);
+            if (denied != null) {
+                result.addFailure(new BatchItemFailure(index, id, denied));
+            } else {
+                indexes[allowed.size()] = index;
+                allowed.add(id);
+            }
+            index++;
+        }
+        if (this.getSystemService() instanceof BatchEntitySystemApi<?>) {
+            result.merge(this.batchSystemService().removeAllByIds(allowed), indexes);
+            return result;
+        }
+        for (int i = 0; i < allowed.size(); i++) {
+            try {
+                T entity = this.getSystemService().find(allowed.get(i));
+                if (entity == null)
+                    throw new EntityNotFound();
+                this.getSystemService().remove(allowed.get(i));
+                result.addSucceeded(entity);
+            } catch (RuntimeException e) {
+                result.addFailure(new BatchItemFailure(indexes[i], allowed.get(i), e));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the current user can execute the action on the persisted entity with the given id.
+     * Non admin users need the action permission on the entity, as checked by the permission manager,
+     * and for OwnedResource entities they must own it or it must be shared with them.
+     * Inside a unit of work the decision is memoized until the entity is written.
+     *
+     * @param id        entity id
+     * @param entity    entity to update, its owner is restored from the persisted one, null on remove
+     * @param sharedIds ids of the entities shared with the current user
+     * @param action    checked action
+     * @return the exception describing why the item is refused, null if allowed
+     */
+    private RuntimeException checkBatchItemPermission(long id, T entity, Supplier<Set<Long>> sharedIds, String action) {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        SecurityContext securityContext = runtime.getSecurityContext();
+        boolean memoizable = unitOfWork != null && securityContext != null && !securityContext.isAdmin() && securityContext.getLoggedEntityId() != 0;
+        UnitOfWork.PermissionDecision decision = memoizable ? unitOfWork.findPermissionDecision(securityContext.getLoggedEntityId(), this.type, id, action) : null;
+        //the entity to update may be the instance held by the unit of work
+        if (entity != null && unitOfWork != null)
+            unitOfWork.detach(this.type, id);
+        if (decision != null)
+            return applyOwnershipDecision(entity, decision.isAllowed(), decision.getOwnerUserId());
+        T persisted = this.getSystemService().find(id);
+        if (persisted == null)
+            return new EntityNotFound();
+        if (securityContext == null)
+            return new UnauthorizedException();
+        Long ownerUserId = (persisted instanceof OwnedResource persistedOwned) ? persistedOwned.getOwnerUserId() : null;
+        boolean allowed = securityContext.isAdmin() || (hasEntityPermission(securityContext, persisted, action) && isOwnedOrShared(securityContext, id, ownerUserId, sharedIds));
+        if (memoizable)
+            unitOfWork.permissionDecided(securityContext.getLoggedEntityId(), this.type, id, action, allowed, ownerUserId);
+        return applyOwnershipDecision(entity, allowed, ownerUserId);
+    }
+
+    /**
+     * @return true if the permission manager grants the action on the persisted entity to the current user,
+     * false when no permission manager is available
+     */
+    private boolean hasEntityPermission(SecurityContext securityContext, T persisted, String action) {
+        PermissionManager permissionManager = this.permissionManagerLookup.get();
+        return permissionManager != null && securityContext.getLoggedUsername() != null
+                && permissionManager.checkPermission(securityContext.getLoggedUsername(), persisted, action);
+    }
+
+    /**
+     * @return true if the entity is not an OwnedResource, or the current user owns it or it is shared with the current user
+     */
+    private boolean isOwnedOrShared(SecurityContext securityContext, long id, Long ownerUserId, Supplier<Set<Long>> sharedIds) {
+        if (!OwnedResource.class.isAssignableFrom(this.type))
+            return true;
+        return (securityContext.getLoggedEntityId() != 0 && Long.valueOf(securityContext.getLoggedEntityId()).equals(ownerUserId))
+                || sharedIds.get().contains(id);
+    }
+
+    /**
+     * @param entity      entity to update, null on remove
+     * @param allowed     permission decision
+     * @param ownerUserId persisted owner, restored on the entity to update
+     * @return the exception describing why the item is refused, null if allowed
+     */
+    private RuntimeException applyOwnershipDecision(T entity, boolean allowed, Long ownerUserId) {
+        if (!allowed)
+            return new UnauthorizedException();
+        if (entity instanceof OwnedResource ownedResource)
+            ownedResource.setOwnerUserId(ownerUserId);
+        return null;
+    }
+
+    /**
+     * @return supplier of the ids of the entities shared with the current user, fetched at most once per batch
+     * and only when an entity is not owned by the current user
+     */
+    private Supplier<Set<Long>> lazySharedEntityIds() {
+        List<Set<Long>> sharedIds = new ArrayList<>(1);
+        return () -> {
+            if (sharedIds.isEmpty())
+                sharedIds.add(this.findSharedEntityIds());
+            return sharedIds.get(0);
+        };
+    }
+
+    /**
+     * @return ids of the entities shared with the current user, fetched once per batch
+     */
+    private Set<Long> findSharedEntityIds() {
+        if (!SharedEntity.class.isAssignableFrom(this.type) || runtime == null || runtime.getSecurityContext() == null)
+            return Collections.emptySet();
+        SharedEntityIntegrationClient sharedEntityIntegrationClient = getSharedEntityIntegrationClient();
+        if (sharedEntityIntegrationClient == null)
+            return Collections.emptySet();
+        Collection<Long> ids = fetchSharedEntityIds(sharedEntityIntegrationClient, type.getName(), runtime.getSecurityContext().getLoggedEntityId());
+        return (ids != null) ? new HashSet<>(ids) : Collections.emptySet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private PatchEntityApi<T> patchSystemService() {
+        return (PatchEntityApi<T>) this.getSystemService();
+    }
+
+    @SuppressWarnings("unchecked")
+    private SnapshotUpdateSystemApi<T> snapshotSystemService() {
+        return (SnapshotUpdateSystemApi<T>) this.getSystemService();
+    }
+
+    @SuppressWarnings("unchecked")
+    private BatchEntitySystemApi<T> batchSystemService() {
+        return (BatchEntitySystemApi<T>) this.getSystemService();
+    }
+
     /**
      * Find an existing entity in datacore
      *
@@ -149,8 +512,58 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
      */
     @AllowPermissions(actions = CrudActions.FIND, checkById = true)
     public T find(long id) {
+        return timed(EntityOperation.FIND, () -> findEntity(id));
+    }
+
+    private T findEntity(long id) {
+        if (unitOfWorkEnabled || UnitOfWork.current() != null) {
+            try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+                T entity = this.findBySystemService(id);
+                if (entity != null)
+                    return entity;
+            }
+        } else if (this.getSystemService() instanceof CachedFindSystemApi cachedFindSystemApi && cachedFindSystemApi.isFindByIdCached()) {
+            T entity = this.findBySystemService(id);
+            if (entity != null)
+                return entity;
+        }
         Query queryFilter = getSystemService().getQueryBuilderInstance().createQueryFilter("id=" + id);
-        return this.find(queryFilter);
+        return this.findEntity(queryFilter);
+    }
+
+    /**
+     * Find by id through the system service identity map or entity cache, applying the same ownership rules of the filtered find.
+     * Owner decisions are memoized in the current unit of work, if any.
+     *
+     * @return the entity, null if it has not been found or it is not visible to the current user
+     */
+    private T findBySystemService(long id) {
+        T entity = this.getSystemService().find(id);
+        if (entity == null || !(entity instanceof OwnedResource ownedResource))
+            return entity;
+        SecurityContext securityContext = runtime.getSecurityContext();
+        if (securityContext == null)
+            throw new UnauthorizedException();
+        if (securityContext.isAdmin())
+            return entity;
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        long userId = securityContext.getLoggedEntityId();
+        UnitOfWork.PermissionDecision decision = (unitOfWork != null) ? unitOfWork.findPermissionDecision(userId, this.type, id, CrudActions.FIND) : null;
+        if (decision == null) {
+            boolean owned = userId != 0 && Long.valueOf(userId).equals(ownedResource.getOwnerUserId());
+            if (unitOfWork != null)
+                unitOfWork.permissionDecided(userId, this.type, id, CrudActions.FIND, owned, ownedResource.getOwnerUserId());
+            return owned ? entity : null;
+        }
+        //shared entities are resolved by the filtered find
+        return decision.isAllowed() ? entity : null;
+    }
+
+    /**
+     * @return the unit of work to close, null when disabled
+     */
+    private UnitOfWork beginUnitOfWork() {
+        return (unitOfWorkEnabled || UnitOfWork.current() != null) ? UnitOfWork.begin() : null;
     }
 
     /**
@@ -161,6 +574,10 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
     @AllowGenericPermissions(actions = {CrudActions.FIND})
     @AllowPermissionsOnReturn(actions = {CrudActions.FIND})
     public T find(Query filter) {
+        return timed(EntityOperation.FIND, () -> findEntity(filter));
+    }
+
+    private T findEntity(Query filter) {
         this.log.debug("Service Find entity {} with id {}", this.type.getSimpleName(), filter);
         SecurityContext securityContext = runtime.getSecurityContext();
         filter = this.createConditionForOwnedOrSharedResource(filter, securityContext);
@@ -177,12 +594,142 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
     @Override
     @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
     public PaginableResult<T> findAll(Query filter, int delta, int page, QueryOrder queryOrder) {
+        return timed(EntityOperation.FIND_ALL, () -> findAllEntities(filter, delta, page, queryOrder));
+    }
+
+    private PaginableResult<T> findAllEntities(Query filter, int delta, int page, QueryOrder queryOrder) {
         this.log.debug("Service Find all entities {} ", this.type.getSimpleName());
         SecurityContext securityContext = runtime.getSecurityContext();
         filter = this.createConditionForOwnedOrSharedResource(filter, securityContext);
         return this.getSystemService().findAll(filter, delta, page, queryOrder);
     }
 
+    /**
+     * findAll with the same visibility rules, which tells whether a next page exists instead of counting the results.
+     *
+     * @param filter     filter
+     * @param delta      num of items per page
+     * @param page       page number, starting from 1
+     * @param queryOrder order
+     * @return page with hasNext
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    @SuppressWarnings("unchecked")
+    public PaginatedResult<T> findAllWithoutCount(Query filter, int delta, int page, QueryOrder queryOrder) {
+        this.log.debug("Service Find all entities {} without count", this.type.getSimpleName());
+        SecurityContext securityContext = runtime.getSecurityContext();
+        filter = this.createConditionForOwnedOrSharedResource(filter, securityContext);
+        if (this.getSystemService() instanceof UncountedFindAllApi<?> uncountedFindAllApi)
+            return ((UncountedFindAllApi<T>) uncountedFindAllApi).findAllWithoutCount(filter, delta, page, queryOrder);
+        PaginableResult<T> result = this.getSystemService().findAll(filter, delta, page, queryOrder);
+        if (result instanceof PaginatedResult<T> paginatedResult)
+            return paginatedResult;
+        return new PaginatedResult<>(result.getNumPages(), result.getCurrentPage(), result.getNextPage(), result.getDelta(), result.getResults());
+    }
+
+    /**
+     * Streams the whole result set of findAll, reading chunks without counting them when the system service allows it.
+     * The permission is checked and the ownership filter is computed when the method is called,
+     * so the publisher can be consumed from any thread.
+     *
+     * @param filter     filter, can be null
+     * @param queryOrder order, can be null
+     * @return cold publisher emitting entities according to the subscriber demand
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public Flow.Publisher<T> findAllPublisher(Query filter, QueryOrder queryOrder) {
+        this.log.debug("Service Publishing all entities {} ", this.type.getSimpleName());
+        Query ownedFilter = this.createConditionForOwnedOrSharedResource(filter, runtime.getSecurityContext());
+        BaseEntitySystemApi<T> systemService = this.getSystemService();
+        return new EntityPublisher<>(() -> new EntityCursor<>(uncountedPageFetcher(systemService), systemService.getQueryBuilderInstance(), ownedFilter, queryOrder, EntityCursor.DEFAULT_PAGE_SIZE));
+    }
+
+    /**
+     * @return findAllWithoutCount of the system service when available, its findAll otherwise
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends BaseEntity> PageFetcher<T> uncountedPageFetcher(BaseEntitySystemApi<T> systemService) {
+        if (systemService instanceof UncountedFindAllApi<?> uncountedFindAllApi)
+            return ((UncountedFindAllApi<T>) uncountedFindAllApi)::findAllWithoutCount;
+        return systemService::findAll;
+    }
+
+    /**
+     * Streams the whole result set of findAll, prefetching pages on the async executor.
+     * As for findAllPublisher, permission and ownership filter are resolved when the method is called
+     * and pages are read without counting them when the system service allows it.
+     *
+     * @param filter        filter, can be null
+     * @param queryOrder    order, can be null
+     * @param prefetchDepth pages read ahead, 0 to read pages on the consumer thread
+     * @return lazy sequential stream, closing it stops the background reads
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public Stream<T> findAllStream(Query filter, QueryOrder queryOrder, int prefetchDepth) {
+        this.log.debug("Service Streaming all entities {} ", this.type.getSimpleName());
+        Query ownedFilter = this.createConditionForOwnedOrSharedResource(filter, runtime.getSecurityContext());
+        BaseEntitySystemApi<T> systemService = this.getSystemService();
+        EntityCursor<T> cursor = new EntityCursor<>(uncountedPageFetcher(systemService), systemService.getQueryBuilderInstance(), ownedFilter, queryOrder, EntityCursor.DEFAULT_PAGE_SIZE);
+        Executor executor = (asyncExecutor != null) ? asyncExecutor : AsyncExecutors.defaultExecutor();
+        PrefetchingSpliterator<T> spliterator = new PrefetchingSpliterator<>(cursor, prefetchDepth, executor);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Async find by id, the permission is checked on the calling thread.
+     *
+     * @param id entity id
+     * @return future completed with the entity
+     */
+    @Override
+    @AllowPermissions(actions = CrudActions.FIND, checkById = true)
+    public CompletableFuture<T> findAsync(long id) {
+        return supplyAsync(() -> this.find(id));
+    }
+
+    /**
+     * Async findAll, the permission is checked on the calling thread.
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public CompletableFuture<PaginableResult<T>> findAllAsync(Query filter, int delta, int page, QueryOrder queryOrder) {
+        return supplyAsync(() -> this.findAll(filter, delta, page, queryOrder));
+    }
+
+    /**
+     * Async countAll, the permission is checked on the calling thread.
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND)
+    public CompletableFuture<Long> countAllAsync(Query filter) {
+        return supplyAsync(() -> this.countAll(filter));
+    }
+
+    /**
+     * Runs the operation on the async executor with the security context and the unit of work of the calling thread,
+     * the security context drives the ownership and sharing filters.
+     * The executor thread security context is restored afterwards, since executor threads may be reused.
+     */
+    private <R> CompletableFuture<R> supplyAsync(Supplier<R> operation) {
+        SecurityContext callerSecurityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        UnitOfWork callerUnitOfWork = UnitOfWork.current();
+        Executor executor = (asyncExecutor != null) ? asyncExecutor : AsyncExecutors.defaultExecutor();
+        return CompletableFuture.supplyAsync(() -> UnitOfWork.callWithin(callerUnitOfWork, () -> {
+            if (runtime == null)
+                return operation.get();
+            SecurityContext previousSecurityContext = runtime.getSecurityContext();
+            runtime.fillSecurityContext(callerSecurityContext);
+            try {
+                return operation.get();
+            } finally {
+                runtime.fillSecurityContext(previousSecurityContext);
+            }
+        }), executor);
+    }
+
     /**
      * @param initialFilter
      * @return
@@ -234,24 +781,149 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
     @Override
     @AllowGenericPermissions(actions = CrudActions.FIND)
     public long countAll(Query filter) {
+        return timed(EntityOperation.COUNT_ALL, () -> countEntities(filter));
+    }
+
+    private long countEntities(Query filter) {
         this.log.debug("Service countAll entities {}", this.type.getSimpleName());
         SecurityContext securityContext = runtime.getSecurityContext();
         filter = this.createConditionForOwnedOrSharedResource(filter, securityContext);
         return this.getSystemService().countAll(filter);
     }
 
+    /**
+     * Count with the same visibility rules of countAll, reporting whether the result is cached or estimated.
+     *
+     * @param filter           filter
+     * @param allowApproximate true to accept an estimate, ex. to draw the number of pages of a big table
+     * @return number of matching entities
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND)
+    public CountResult countAll(Query filter, boolean allowApproximate) {
+        return timed(EntityOperation.COUNT_ALL, () -> countEntities(filter, allowApproximate));
+    }
+
+    private CountResult countEntities(Query filter, boolean allowApproximate) {
+        this.log.debug("Service countAll entities {} allowing approximate count: {}", this.type.getSimpleName(), allowApproximate);
+        SecurityContext securityContext = runtime.getSecurityContext();
+        filter = this.createConditionForOwnedOrSharedResource(filter, securityContext);
+        if (this.getSystemService() instanceof CountEntityApi countEntityApi)
+            return countEntityApi.countAll(filter, allowApproximate);
+        return CountResult.exact(this.getSystemService().countAll(filter));
+    }
+
     /**
      * Retrieve the SharedEntityIntegrationClient
      *
      * @return the SharedEntitySystemApi
      */
     protected SharedEntityIntegrationClient getSharedEntityIntegrationClient() {
-        try {
-            return getComponentRegistry().findComponent(SharedEntityIntegrationClient.class, null);
-        } catch (NoComponentRegistryFoundException e) {
-            getLog().warn("No shared entity integration client found!");
+        return sharedEntityIntegrationClientLookup.get();
+    }
+
+    /**
+     * @param sharedEntityIntegrationClient client used on cache misses
+     * @param resourceName                  shared entity type name
+     * @param userId                        user id
+     * @return ids of the entities of the given type shared with the user, through the shared entity id cache when enabled
+     */
+    protected Collection<Long> fetchSharedEntityIds(SharedEntityIntegrationClient sharedEntityIntegrationClient, String resourceName, long userId) {
+        SharedEntityIdCache cache = this.sharedEntityIdCache;
+        if (cache == null)
+            return sharedEntityIntegrationClient.fetchSharingUsersIds(resourceName, userId);
+        return cache.get(resourceName, userId, () -> sharedEntityIntegrationClient.fetchSharingUsersIds(resourceName, userId));
+    }
+
+    /**
+     * Builds the shared entity filter as a semi join on the share table, when both the shared entity client
+     * and the query builder support sub queries, so the shared ids are never loaded in memory.
+     * Only query builders provided by a persistence backend can implement SemiJoinQueryBuilder,
+     * with DefaultQueryBuilder the shared ids are always fetched.
+     *
+     * @param sharedEntityIntegrationClient shared entity client
+     * @param field                         field holding the shared entity id
+     * @param resourceName                  shared entity type name
+     * @param userId                        user id
+     * @return semi join filter or null when the shared ids must be fetched
+     */
+    protected Query createSharedEntitySemiJoinFilter(SharedEntityIntegrationClient sharedEntityIntegrationClient, String field, String resourceName, long userId) {
+        if (!(sharedEntityIntegrationClient instanceof SharedEntitySubQueryProvider subQueryProvider))
             return null;
-        }
+        QueryBuilder queryBuilder = getSystemService().getQueryBuilderInstance();
+        if (!(queryBuilder instanceof SemiJoinQueryBuilder semiJoinQueryBuilder))
+            return null;
+        SubQueryDescriptor subQuery = subQueryProvider.sharedEntityIdsSubQuery(resourceName, userId);
+        return subQuery != null ? semiJoinQueryBuilder.in(field, subQuery) : null;
+    }
+
+    /**
+     * Enables the operation metrics on the default in process registry.
+     */
+    public void enableMetrics() {
+        enableMetrics(InProcessMetricsRegistry.defaultRegistry());
+    }
+
+    /**
+     * Enables the metrics of save, update, remove, find, findAll and countAll, measured separately from the system service
+     * since they include the ownership and sharing filters.
+     *
+     * @param registry registry receiving the metrics
+     */
+    public void enableMetrics(EntityMetricsRegistry registry) {
+        this.serviceMetrics = new ServiceMetrics(registry, this.type, ServiceLayer.SERVICE);
+    }
+
+    public void disableMetrics() {
+        this.serviceMetrics = null;
+    }
+
+    /**
+     * @return the registry receiving the metrics or null if metrics are disabled
+     */
+    public EntityMetricsRegistry getMetricsRegistry() {
+        ServiceMetrics metrics = this.serviceMetrics;
+        return metrics != null ? metrics.getRegistry() : null;
+    }
+
+    /**
+     * Runs the operation recording its metrics, when enabled
+     */
+    private <R> R timed(EntityOperation operation, Supplier<R> body) {
+        return ServiceMetrics.timed(this.serviceMetrics, operation, body);
+    }
+
+    private void timed(EntityOperation operation, Runnable body) {
+        ServiceMetrics.timed(this.serviceMetrics, operation, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Caches the ids of the entities shared with each user, so that a list and its count fetch them once.
+     * Share and unshare operations do not notify the cache: entries are refreshed only when the time to live expires,
+     * unless SharedEntityIdCache.invalidateAll is called explicitly. A revoked share can therefore still grant
+     * visibility of the entity to the user for up to ttlMillis, which should be sized accordingly.
+     *
+     * @param maxSize   max number of cached users
+     * @param ttlMillis entry time to live in milliseconds, the max staleness of a share or of a revoke
+     */
+    public void enableSharedEntityIdCache(int maxSize, long ttlMillis) {
+        getLog().debug("Enabling shared entity id cache for {} with size {} and ttl {}ms", this.type.getSimpleName(), maxSize, ttlMillis);
+        this.sharedEntityIdCache = new SharedEntityIdCache(maxSize, ttlMillis);
+    }
+
+    public void disableSharedEntityIdCache() {
+        this.sharedEntityIdCache = null;
+    }
+
+    /**
+     * @return shared entity id cache statistics or null if the cache is disabled
+     */
+    public SharedEntityIdCacheStatistics getSharedEntityIdCacheStatistics() {
+        SharedEntityIdCache cache = this.sharedEntityIdCache;
+        return cache != null ? cache.getStatistics() : null;
     }
 
     protected Query createFilterForOwnedOrSharedResource(Query ownedResourceFilter, long loggedEntityId) {
@@ -259,7 +931,10 @@ public abstract class BaseEntityServiceImpl<T extends BaseEntity> extends BaseAb
             SharedEntityIntegrationClient sharedEntityIntegrationClient = getSharedEntityIntegrationClient();
             if (sharedEntityIntegrationClient != null) {
                 //forcing the condition that user must own the entity or is shared with him
-                Collection<Long> entityIds = sharedEntityIntegrationClient.fetchSharingUsersIds(type.getName(), loggedEntityId);
+                Query sharedSemiJoinFilter = createSharedEntitySemiJoinFilter(sharedEntityIntegrationClient, "id", type.getName(), loggedEntityId);
+                if (sharedSemiJoinFilter != null)
+                    return ownedResourceFilter.or(sharedSemiJoinFilter);
+                Collection<Long> entityIds = fetchSharedEntityIds(sharedEntityIntegrationClient, type.getName(), loggedEntityId);
                 if (!entityIds.isEmpty()) {
                     // H7: parse only server-controlled numeric ids and combine via or(),
                     // never re-serialize the existing filter (injection risk).
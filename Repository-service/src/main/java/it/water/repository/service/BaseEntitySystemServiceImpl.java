@@ -20,6 +20,7 @@ package it.water.repository.service;
 import it.water.core.api.service.integration.AssetCategoryIntegrationClient;
 import it.water.core.api.service.integration.AssetTagIntegrationClient;
 import it.water.core.api.entity.events.*;
+import it.water.core.api.entity.owned.OwnedResource;
 import it.water.core.api.model.*;
 import it.water.core.api.model.events.ApplicationEventProducer;
 import it.water.core.api.model.events.Event;
@@ -32,15 +33,95 @@ import it.water.core.api.service.BaseEntitySystemApi;
 import it.water.core.api.validation.WaterValidator;
 import it.water.core.interceptors.annotations.Inject;
 import it.water.core.model.exceptions.WaterRuntimeException;
-import it.water.core.registry.model.exception.NoComponentRegistryFoundException;
 import it.water.core.service.BaseAbstractSystemService;
 import it.water.repository.entity.model.exceptions.DuplicateEntityException;
 import it.water.repository.entity.model.exceptions.EntityNotFound;
 import it.water.repository.entity.model.exceptions.NoResultException;
+import it.water.repository.entity.model.BatchItemFailure;
+import it.water.repository.entity.model.BatchResult;
+import it.water.repository.query.order.DefaultQueryOrder;
+import it.water.repository.service.api.BatchEntitySystemApi;
+import it.water.repository.service.api.CachedFindSystemApi;
+import it.water.repository.service.api.CountEntityApi;
+import it.water.repository.service.api.PatchEntityApi;
+import it.water.repository.service.api.SnapshotUpdateSystemApi;
+import it.water.repository.service.api.StreamingEntityApi;
+import it.water.repository.service.api.UncountedFindAllApi;
+import it.water.repository.service.cache.CachedComponentLookup;
+import it.water.repository.service.cache.CountCache;
+import it.water.repository.service.cache.CountCacheStatistics;
+import it.water.repository.service.cache.EntityCache;
+import it.water.repository.service.cache.EntityCacheStatistics;
+import it.water.repository.service.cache.ExistenceFilter;
+import it.water.repository.service.cache.ExistenceFilterStatistics;
+import it.water.repository.service.cache.UnitOfWork;
+import it.water.repository.service.asset.AssetIdDelta;
+import it.water.repository.service.asset.AssetMutation;
+import it.water.repository.service.event.AsyncEventDispatcher;
+import it.water.repository.service.event.AsyncEventStatistics;
+import it.water.repository.service.event.UpdateEventCoalescer;
+import it.water.repository.service.ingestion.IngestionOptions;
+import it.water.repository.service.ingestion.IngestionPipeline;
+import it.water.repository.service.ingestion.IngestionResult;
+import it.water.repository.service.ingestion.PublisherIterator;
+import it.water.repository.service.patch.EntityPatcher;
+import it.water.repository.service.spi.BatchAssetCategoryIntegrationClient;
+import it.water.repository.service.spi.BatchAssetTagIntegrationClient;
+import it.water.repository.service.spi.EventInterestRegistry;
+import it.water.repository.service.spi.PropertyValidator;
+import it.water.repository.service.stream.EntityCursor;
+import it.water.repository.service.concurrent.AsyncExecutors;
+import it.water.repository.service.metrics.EntityOperation;
+import it.water.repository.service.metrics.InProcessMetricsRegistry;
+import it.water.repository.service.metrics.ServiceLayer;
+import it.water.repository.service.metrics.ServiceMetrics;
+import it.water.repository.service.spi.EntityMetricsRegistry;
+import it.water.repository.service.stream.EntityPublisher;
+import it.water.repository.service.validation.ValidationExecutor;
+import it.water.repository.service.validation.ValidationPlan;
+import it.water.repository.service.stream.PrefetchingSpliterator;
+import it.water.repository.entity.model.AbstractEntity;
+import it.water.repository.entity.model.CountResult;
+import it.water.repository.entity.model.EntityPropertyIndex;
+import it.water.repository.entity.model.PaginatedResult;
+import it.water.repository.entity.model.RootParentIndexedResource;
+import it.water.repository.spi.CountEstimatingRepository;
+import it.water.repository.spi.IdProjectionRepository;
+import it.water.repository.spi.PartialUpdateRepository;
+import it.water.repository.spi.TransactionalRepository;
+import it.water.repository.spi.UncountedFindAllRepository;
+import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 
 /**
  * @param <T> parameter that indicates a generic class
@@ -51,18 +132,32 @@ import org.slf4j.LoggerFactory;
  * persistence layer.
  */
 public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
-        extends BaseAbstractSystemService implements BaseEntitySystemApi<T> {
+        extends BaseAbstractSystemService implements BaseEntitySystemApi<T>, BatchEntitySystemApi<T>, StreamingEntityApi<T>, SnapshotUpdateSystemApi<T>, PatchEntityApi<T>, CountEntityApi, UncountedFindAllApi<T>, CachedFindSystemApi {
     private static Logger log = LoggerFactory.getLogger(BaseEntitySystemServiceImpl.class);
 
+    /**
+     * Page size used while reading all ids to seed the existence filter
+     */
+    private static final int EXISTENCE_FILTER_SEED_PAGE_SIZE = 1000;
+
+    /**
+     * Default number of entities persisted in the same transaction by batch operations
+     */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 500;
+
     /**
      * Generic class for Water platform
      */
     private Class<T> type;
 
     @Inject
-    @Setter
     protected ComponentRegistry componentRegistry;
 
+    /**
+     * Event producer resolved once from the component registry
+     */
+    private final CachedComponentLookup<ApplicationEventProducer> eventProducerLookup = new CachedComponentLookup<>(ApplicationEventProducer.class, () -> this.componentRegistry);
+
     @Inject
     @Setter
     protected WaterValidator waterValidator;
@@ -75,6 +170,67 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
     @Setter
     private AssetTagIntegrationClient assetTagIntegrationClient;
 
+    /**
+     * Read-through cache for find by id, null when disabled (default)
+     */
+    private volatile EntityCache<T> entityCache;
+
+    /**
+     * Negative lookup filter for nonexistent ids, null when disabled (default)
+     */
+    private volatile ExistenceFilter existenceFilter;
+
+    /**
+     * Dispatcher of post events, null when they are delivered synchronously (default)
+     */
+    private volatile AsyncEventDispatcher asyncEventDispatcher;
+
+    /**
+     * Merges post update events of the same entity, null when disabled (default)
+     */
+    private volatile UpdateEventCoalescer<T> updateEventCoalescer;
+
+    /**
+     * Cache of countAll results by filter, null when disabled (default)
+     */
+    private volatile CountCache countCache;
+
+    /**
+     * True to validate through the per class validation plans, false to hand every resource to the validator (default)
+     */
+    @Getter
+    private volatile boolean validationPlanEnabled;
+
+    /**
+     * True to skip the constrained properties left unchanged since the entity has been loaded
+     */
+    @Getter
+    private volatile boolean skipUnchangedProperties;
+
+    /**
+     * Validates batches in parallel, null when batches are validated on the calling thread (default)
+     */
+    private volatile ValidationExecutor validationExecutor;
+
+    /**
+     * Recorders of the operation metrics, null when disabled (default)
+     */
+    private volatile ServiceMetrics serviceMetrics;
+
+    /**
+     * Number of entities persisted in the same transaction by batch operations
+     */
+    @Getter
+    @Setter
+    private int batchChunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+
+    /**
+     * Maximum number of entities fetched at once by streaming reads
+     */
+    @Getter
+    @Setter
+    private int streamPageSize = EntityCursor.DEFAULT_PAGE_SIZE;
+
     /**
      * Constructor for WaterBaseEntitySystemServiceImpl
      *
@@ -92,8 +248,13 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      */
     @Override
     public T save(T entity) {
+        return timed(EntityOperation.SAVE, () -> saveEntity(entity));
+    }
+
+    private T saveEntity(T entity) {
         getLog().debug(
                 "System Service Saving entity {}: {}", this.type.getSimpleName(), entity);
+        indexRootParent(entity);
         //throws runtime exception if validation is not met
         this.validate(entity);
         this.validateEntityExtension(entity);
@@ -101,6 +262,8 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
             produceEvent(entity, PreSaveEvent.class);
             //Save the entity and if it has expansion proceed to invoke the save of the extension in the same transaction
             this.getRepository().persist(entity);
+            cacheWritten(entity);
+            existenceFilterAdd(entity.getId());
             manageAssets(entity, AssetOperation.ADD);
             produceEvent(entity, PostSaveEvent.class);
             return entity;
@@ -119,19 +282,63 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      */
     @Override
     public T update(T entity) {
+        return timed(EntityOperation.UPDATE, () -> updateEntity(entity));
+    }
+
+    private T updateEntity(T entity) {
         getLog().debug(
                 "System Service Updating entity {}: {}", this.type.getSimpleName(), entity);
+        indexRootParent(entity);
         //throws runtime exception if validation is not met
         this.validate(entity);
         this.validateEntityExtension(entity);
+        return this.doUpdate(entity, null, false);
+    }
+
+    /**
+     * Update an existing entity whose persisted state has already been loaded by the caller,
+     * used by the public service layer to avoid reading the entity twice.
+     *
+     * @param entity             parameter that indicates a generic entity
+     * @param entityBeforeUpdate persisted state of the entity, null if not loaded: it is then read only for detailed update events
+     * @return entity updated
+     */
+    @Override
+    public T update(T entity, T entityBeforeUpdate) {
+        return timed(EntityOperation.UPDATE, () -> updateEntity(entity, entityBeforeUpdate));
+    }
+
+    private T updateEntity(T entity, T entityBeforeUpdate) {
+        getLog().debug(
+                "System Service Updating entity {} with snapshot: {}", this.type.getSimpleName(), entity);
+        indexRootParent(entity);
+        //throws runtime exception if validation is not met
+        this.validateChanges(entity, entityBeforeUpdate);
+        this.validateEntityExtension(entity);
+        return this.doUpdate(entity, entityBeforeUpdate, entityBeforeUpdate != null);
+    }
+
+    /**
+     * @return true if detailed update events are listened or the validation plan compares the changes with the persisted state
+     */
+    @Override
+    public boolean isUpdateSnapshotNeeded() {
+        return (this.validationPlanEnabled && this.skipUnchangedProperties) || hasDetailedUpdateListeners(findEventProducer());
+    }
+
+    private T doUpdate(T entity, T snapshot, boolean snapshotLoaded) {
         try {
-            T entityBeforeUpdate = find(entity.getId());
-            produceEvent(entity, PreUpdateEvent.class);
-            produceDetailedEvent(entityBeforeUpdate, entity, PreUpdateDetailedEvent.class);
+            //the instance in the unit of work may be the one being updated
+            unitOfWorkFlush(entity.getId());
+            ApplicationEventProducer eventProducer = findEventProducer();
+            T entityBeforeUpdate = snapshotLoaded || !hasDetailedUpdateListeners(eventProducer) ? snapshot : findEntity(entity.getId());
+            produceEvent(eventProducer, entity, PreUpdateEvent.class);
+            produceDetailedEvent(eventProducer, entityBeforeUpdate, entity, PreUpdateDetailedEvent.class);
             //updates the entity and process, eventually the expandable entity
             T updatedEntity = this.getRepository().update(entity);
+            cacheWritten(updatedEntity);
             manageAssets(entity, AssetOperation.UPDATE);
-            produceDetailedEvent(entityBeforeUpdate, updatedEntity, PostUpdateDetailedEvent.class);
+            producePostUpdateEvent(eventProducer, entityBeforeUpdate, updatedEntity);
             return updatedEntity;
         } catch (DuplicateEntityException e) {
             getLog().warn("Update failed: entity is duplicated!");
@@ -140,10 +347,85 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
             getLog().warn("Update failed: entity to update not found!");
             throw e;
         } catch (Exception e1) {
+            //the persisted state is unknown after a failed update
+            cacheInvalidate(entity.getId());
+            throw new WaterRuntimeException(e1.getMessage());
+        }
+    }
+
+    /**
+     * Partially updates an existing entity: only the changed properties are validated
+     * (when the validator is a PropertyValidator) and written (when the repository is a PartialUpdateRepository).
+     * The persisted entity is used as the snapshot of the detailed events, while the updated entity is a copy of it
+     * carrying the changes: for AbstractEntity instances the changed properties are available to the post update
+     * listeners through getDirtyFields, also when the event is delivered asynchronously or coalesced,
+     * while the returned entity has no dirty field.
+     *
+     * @param id      id of the entity to update
+     * @param changes new values by property name
+     * @return entity updated, or the persisted one if no value changed
+     */
+    @Override
+    public T patch(long id, Map<String, Object> changes) {
+        return timed(EntityOperation.UPDATE, () -> patchEntity(id, changes));
+    }
+
+    private T patchEntity(long id, Map<String, Object> changes) {
+        getLog().debug("System Service Patching entity {} with id {}: {}", this.type.getSimpleName(), id, changes.keySet());
+        unitOfWorkFlush(id);
+        T entityBeforeUpdate = findEntity(id);
+        if (entityBeforeUpdate == null)
+            throw new EntityNotFound();
+        T entity = EntityPatcher.shallowCopy(entityBeforeUpdate);
+        Set<String> changedProperties = EntityPatcher.apply(entity, changes);
+        if (changedProperties.isEmpty())
+            return entityBeforeUpdate;
+        if (indexRootParent(entity))
+            changedProperties.add(RootParentIndexedResource.getRootParentIdFieldName());
+        //throws runtime exception if validation is not met
+        if (this.waterValidator instanceof PropertyValidator propertyValidator)
+            propertyValidator.validateProperties(entity, changedProperties);
+        else
+            this.validate(entity);
+        try {
+            produceEvent(entity, PreUpdateEvent.class);
+            produceDetailedEvent(entityBeforeUpdate, entity, PreUpdateDetailedEvent.class);
+            T updatedEntity = (this.getRepository() instanceof PartialUpdateRepository<?>) ?
+                    this.partialUpdateRepository().update(entity, changedProperties) : this.getRepository().update(entity);
+            //repositories may return a new instance, which must expose the changes to the listeners too
+            if (updatedEntity instanceof AbstractEntity updatedAbstractEntity && updatedEntity != entity) {
+                EntityPropertyIndex propertyIndex = EntityPropertyIndex.of(updatedEntity.getClass());
+                changedProperties.stream().filter(property -> propertyIndex.positionOf(property) >= 0).forEach(updatedAbstractEntity::markDirty);
+            }
+            cacheWritten(updatedEntity);
+            if (changedProperties.contains("categoryIds"))
+                manageAssetCategories(entity, AssetOperation.UPDATE);
+            if (changedProperties.contains("tagIds"))
+                manageAssetTags(entity, AssetOperation.UPDATE);
+            //coalesced post update events keep the changed properties, only the returned instance is cleared.
+            //The async dispatcher takes its own snapshot when the event is published
+            producePostUpdateEvent(findEventProducer(), entityBeforeUpdate, (this.updateEventCoalescer != null) ? EntityPatcher.snapshot(updatedEntity) : updatedEntity);
+            if (updatedEntity instanceof AbstractEntity updatedAbstractEntity)
+                updatedAbstractEntity.clearDirtyFields();
+            return updatedEntity;
+        } catch (DuplicateEntityException e) {
+            getLog().warn("Patch failed: entity is duplicated!");
+            throw e;
+        } catch (NoResultException e) {
+            getLog().warn("Patch failed: entity to update not found!");
+            throw e;
+        } catch (Exception e1) {
+            //the persisted state is unknown after a failed update
+            cacheInvalidate(id);
             throw new WaterRuntimeException(e1.getMessage());
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private PartialUpdateRepository<T> partialUpdateRepository() {
+        return (PartialUpdateRepository<T>) this.getRepository();
+    }
+
     /**
      * Remove an entity in database
      *
@@ -151,13 +433,21 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      */
     @Override
     public void remove(long id) {
+        timed(EntityOperation.REMOVE, () -> removeEntity(id));
+    }
+
+    private void removeEntity(long id) {
         getLog().debug(
                 "System Service Removing entity {} with id {}", this.type.getSimpleName(), id);
-        T entity = find(id);
+        T entity = findEntity(id);
         if (entity != null) {
+            //listeners receive the last update before the removal
+            flushUpdateEvents(id);
             produceEvent(entity, PreRemoveEvent.class);
             //removes the main entity and eventually the expansion entity
             this.getRepository().remove(id);
+            cacheInvalidate(id);
+            existenceFilterRemove(id);
             manageAssets(entity, AssetOperation.DELETE);
             produceEvent(entity, PostRemoveEvent.class);
             return;
@@ -165,13 +455,366 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
         throw new EntityNotFound();
     }
 
+    /**
+     * Saves a batch of entities.
+     * Entities are validated in bulk, then valid ones are persisted in chunks of batchChunkSize entities,
+     * one transaction per chunk when the repository is a TransactionalRepository.
+     * If a chunk fails its entities are retried one by one, so only the failing ones are reported.
+     *
+     * @param entities entities to save
+     * @return saved entities and failed items
+     */
+    @Override
+    public BatchResult<T> saveAll(Collection<T> entities) {
+        getLog().debug("System Service Saving {} entities {}", entities.size(), this.type.getSimpleName());
+        BatchResult<T> result = new BatchResult<>();
+        ApplicationEventProducer eventProducer = findEventProducer();
+        for (List<BatchItem<T>> chunk : chunks(validateBatch(entities, result)))
+            completeSavedItems(eventProducer, persistItems(eventProducer, chunk, result), result);
+        return result;
+    }
+
+    /**
+     * Saves entities read from a stream, see ingest(Iterator, IngestionOptions).
+     * The stream is closed when the ingestion ends.
+     */
+    public IngestionResult ingest(Stream<? extends T> entities, IngestionOptions options) {
+        try (entities) {
+            return ingest(entities.iterator(), options);
+        }
+    }
+
+    /**
+     * Saves entities emitted by a publisher, see ingest(Iterator, IngestionOptions).
+     * Up to chunkSize * queueCapacity entities are requested in advance and demand is renewed as the pipeline
+     * reads them from the iterator, so the publisher is slowed down by the bounded queues of the pipeline
+     * rather than by each persisted entity.
+     */
+    public IngestionResult ingest(Flow.Publisher<? extends T> entities, IngestionOptions options) {
+        try (PublisherIterator<T> iterator = new PublisherIterator<>(entities, options.getChunkSize() * options.getQueueCapacity())) {
+            return ingest(iterator, options);
+        }
+    }
+
+    /**
+     * Saves a source of entities which may not fit in memory, with the same semantics of saveAll.
+     * Validation and persistence run on options.parallelism threads, one transaction per chunk when the repository
+     * is a TransactionalRepository, while assets and events run on a single thread.
+     * Stages are connected by bounded queues, so the source is read only as fast as entities are persisted.
+     * The call blocks until the whole source has been ingested.
+     *
+     * @param entities entities to save
+     * @param options  chunk size, parallelism, queue capacity and progress listener
+     * @return final counters and failed items, indexed by their position in the source
+     */
+    public IngestionResult ingest(Iterator<? extends T> entities, IngestionOptions options) {
+        getLog().debug("System Service Ingesting {} with chunks of {} entities", this.type.getSimpleName(), options.getChunkSize());
+        ApplicationEventProducer eventProducer = findEventProducer();
+        IngestionPipeline<T> pipeline = new IngestionPipeline<>(options,
+                chunk -> {
+                    BatchResult<T> result = new BatchResult<>();
+                    persistItems(eventProducer, validateBatch(chunk, result), result).forEach(item -> result.addSucceeded(item.entity));
+                    return result;
+                },
+                persisted -> {
+                    BatchResult<T> result = new BatchResult<>();
+                    List<BatchItem<T>> items = new ArrayList<>(persisted.size());
+                    for (int i = 0; i < persisted.size(); i++)
+                        items.add(new BatchItem<>(i, persisted.get(i)));
+                    completeSavedItems(eventProducer, items, result);
+                    return result;
+                });
+        return pipeline.run(entities);
+    }
+
+    /**
+     * Produces pre save events and persists the accepted items
+     *
+     * @return persisted items
+     */
+    private List<BatchItem<T>> persistItems(ApplicationEventProducer eventProducer, List<BatchItem<T>> items, BatchResult<T> result) {
+        List<BatchItem<T>> accepted = produceBatchEvent(eventProducer, items, PreSaveEvent.class, result);
+        return executeChunk(accepted, item -> this.getRepository().persist(item.entity), true, result);
+    }
+
+    /**
+     * Updates caches and assets of persisted items and produces post save events
+     */
+    private void completeSavedItems(ApplicationEventProducer eventProducer, List<BatchItem<T>> persisted, BatchResult<T> result) {
+        Map<T, RuntimeException> assetFailures = manageAssets(persisted.stream().map(item -> item.entity).toList(), AssetOperation.ADD);
+        for (BatchItem<T> item : persisted) {
+            try {
+                cacheWritten(item.entity);
+                existenceFilterAdd(item.entity.getId());
+                throwIfFailed(assetFailures, item.entity);
+                produceEvent(eventProducer, item.entity, PostSaveEvent.class);
+                result.addSucceeded(item.entity);
+            } catch (RuntimeException e) {
+                result.addFailure(item.failure(e));
+            }
+        }
+    }
+
+    /**
+     * Updates a batch of entities, with the same chunking and failure semantics of saveAll.
+     *
+     * @param entities entities to update
+     * @return updated entities and failed items
+     */
+    @Override
+    public BatchResult<T> updateAll(Collection<T> entities) {
+        getLog().debug("System Service Updating {} entities {}", entities.size(), this.type.getSimpleName());
+        BatchResult<T> result = new BatchResult<>();
+        ApplicationEventProducer eventProducer = findEventProducer();
+        for (List<BatchItem<T>> chunk : chunks(validateBatch(entities, result))) {
+            List<BatchItem<T>> existing = new ArrayList<>(chunk.size());
+            for (BatchItem<T> item : chunk) {
+                unitOfWorkFlush(item.entity.getId());
+                item.before = findEntity(item.entity.getId());
+                if (item.before == null)
+                    result.addFailure(item.failure(new EntityNotFound()));
+                else
+                    existing.add(item);
+            }
+            List<BatchItem<T>> accepted = produceBatchEvent(eventProducer, existing, PreUpdateEvent.class, result);
+            accepted = produceBatchDetailedEvent(eventProducer, accepted, PreUpdateDetailedEvent.class, result);
+            List<BatchItem<T>> updated = executeChunk(accepted, item -> item.updated = this.getRepository().update(item.entity), false, result);
+            Map<T, RuntimeException> assetFailures = manageAssets(updated.stream().map(item -> item.entity).toList(), AssetOperation.UPDATE);
+            for (BatchItem<T> item : updated) {
+                try {
+                    cacheWritten(item.updated);
+                    throwIfFailed(assetFailures, item.entity);
+                    producePostUpdateEvent(eventProducer, item.before, item.updated);
+                    result.addSucceeded(item.updated);
+                } catch (RuntimeException e) {
+                    result.addFailure(item.failure(e));
+                }
+            }
+            //the persisted state of failed items is unknown
+            accepted.stream().filter(item -> item.updated == null).forEach(item -> cacheInvalidate(item.entity.getId()));
+        }
+        return result;
+    }
+
+    /**
+     * Removes a batch of entities, each chunk is removed through the repository removeAllByIds.
+     * If a chunk fails its entities are removed one by one, so only the failing ones are reported.
+     *
+     * @param ids ids of the entities to remove
+     * @return removed entities and failed items
+     */
+    @Override
+    public BatchResult<T> removeAllByIds(Collection<Long> ids) {
+        getLog().debug("System Service Removing {} entities {}", ids.size(), this.type.getSimpleName());
+        BatchResult<T> result = new BatchResult<>();
+        ApplicationEventProducer eventProducer = findEventProducer();
+        List<BatchItem<T>> items = new ArrayList<>(ids.size());
+        int index = 0;
+        for (Long id : ids) {
+            T entity = findEntity(id);
+            if (entity == null) {
+                result.addFailure(new BatchItemFailure(index, id, new EntityNotFound()));
+            } else {
+                flushUpdateEvents(id);
+                items.add(new BatchItem<>(index, entity));
+            }
+            index++;
+        }
+        for (List<BatchItem<T>> chunk : chunks(items)) {
+            List<BatchItem<T>> accepted = produceBatchEvent(eventProducer, chunk, PreRemoveEvent.class, result);
+            List<BatchItem<T>> removed = removeChunk(accepted, result);
+            Map<T, RuntimeException> assetFailures = manageAssets(removed.stream().map(item -> item.entity).toList(), AssetOperation.DELETE);
+            for (BatchItem<T> item : removed) {
+                try {
+                    cacheInvalidate(item.entity.getId());
+                    existenceFilterRemove(item.entity.getId());
+                    throwIfFailed(assetFailures, item.entity);
+                    produceEvent(eventProducer, item.entity, PostRemoveEvent.class);
+                    result.addSucceeded(item.entity);
+                } catch (RuntimeException e) {
+                    result.addFailure(item.failure(e));
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<BatchItem<T>> validateBatch(Collection<T> entities, BatchResult<T> result) {
+        List<BatchItem<T>> validItems = new ArrayList<>(entities.size());
+        ValidationExecutor executor = this.validationExecutor;
+        if (executor == null) {
+            int index = 0;
+            for (T entity : entities) {
+                BatchItem<T> item = new BatchItem<>(index++, entity);
+                RuntimeException failure = validateItem(entity);
+                if (failure == null)
+                    validItems.add(item);
+                else
+                    result.addFailure(item.failure(failure));
+            }
+            return validItems;
+        }
+        List<T> entityList = (entities instanceof List<T> list) ? list : new ArrayList<>(entities);
+        RuntimeException[] failures = executor.validate(entityList, this::validateItem);
+        for (int i = 0; i < failures.length; i++) {
+            BatchItem<T> item = new BatchItem<>(i, entityList.get(i));
+            if (failures[i] == null)
+                validItems.add(item);
+            else
+                result.addFailure(item.failure(failures[i]));
+        }
+        return validItems;
+    }
+
+    /**
+     * Validates an entity and its extension, so the failure reports the violations of both:
+     * the extension failure is added as suppressed exception of the entity one.
+     *
+     * @param entity entity to validate
+     * @return the validation failure or null if the entity is valid
+     */
+    private RuntimeException validateItem(T entity) {
+        RuntimeException failure = null;
+        try {
+            indexRootParent(entity);
+            this.validate(entity);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        try {
+            this.validateEntityExtension(entity);
+        } catch (RuntimeException e) {
+            if (failure == null)
+                failure = e;
+            else if (failure != e)
+                failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    private List<List<BatchItem<T>>> chunks(List<BatchItem<T>> items) {
+        int chunkSize = Math.max(1, this.batchChunkSize);
+        List<List<BatchItem<T>>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += chunkSize)
+            chunks.add(items.subList(i, Math.min(items.size(), i + chunkSize)));
+        return chunks;
+    }
+
+    /**
+     * Executes the operation on every item of the chunk, in a single transaction if supported by the repository.
+     * When the transaction fails the items are retried one by one.
+     *
+     * @param restoreOnRetry true if the operation changes the submitted entities, e.g. persist assigns ids,
+     *                       so they are restored as submitted before the retry
+     * @return items successfully processed
+     */
+    private List<BatchItem<T>> executeChunk(List<BatchItem<T>> chunk, Consumer<BatchItem<T>> operation, boolean restoreOnRetry, BatchResult<T> result) {
+        if (chunk.isEmpty())
+            return chunk;
+        if (this.getRepository() instanceof TransactionalRepository transactionalRepository) {
+            if (restoreOnRetry)
+                chunk.forEach(BatchItem::snapshot);
+            try {
+                transactionalRepository.runInTransaction(() -> chunk.forEach(operation));
+                return chunk;
+            } catch (RuntimeException e) {
+                getLog().debug("Batch chunk of {} entities failed, retrying one by one: {}", chunk.size(), e.getMessage());
+                chunk.forEach(BatchItem::reset);
+            }
+        }
+        List<BatchItem<T>> processed = new ArrayList<>(chunk.size());
+        for (BatchItem<T> item : chunk) {
+            try {
+                operation.accept(item);
+                processed.add(item);
+            } catch (RuntimeException e) {
+                result.addFailure(item.failure(e));
+            }
+        }
+        return processed;
+    }
+
+    private List<BatchItem<T>> removeChunk(List<BatchItem<T>> chunk, BatchResult<T> result) {
+        if (chunk.isEmpty())
+            return chunk;
+        try {
+            List<Long> ids = chunk.stream().map(item -> item.entity.getId()).toList();
+            this.getRepository().removeAllByIds(ids);
+            return chunk;
+        } catch (RuntimeException e) {
+            getLog().debug("Batch removal of {} entities failed, retrying one by one: {}", chunk.size(), e.getMessage());
+        }
+        return executeChunk(chunk, item -> this.getRepository().remove(item.entity.getId()), false, result);
+    }
+
+    /**
+     * Produces the event for each item, items whose event listeners throw an exception are vetoed
+     *
+     * @return items not vetoed
+     */
+    private <K extends Event> List<BatchItem<T>> produceBatchEvent(ApplicationEventProducer eventProducer, List<BatchItem<T>> items, Class<K> eventClass, BatchResult<T> result) {
+        if (!hasListeners(eventProducer, eventClass))
+            return items;
+        List<BatchItem<T>> accepted = new ArrayList<>(items.size());
+        for (BatchItem<T> item : items) {
+            try {
+                eventProducer.produceEvent(item.entity, eventClass);
+                accepted.add(item);
+            } catch (RuntimeException e) {
+                result.addFailure(item.failure(e));
+            }
+        }
+        return accepted;
+    }
+
+    private <K extends Event> List<BatchItem<T>> produceBatchDetailedEvent(ApplicationEventProducer eventProducer, List<BatchItem<T>> items, Class<K> eventClass, BatchResult<T> result) {
+        if (!hasListeners(eventProducer, eventClass))
+            return items;
+        List<BatchItem<T>> accepted = new ArrayList<>(items.size());
+        for (BatchItem<T> item : items) {
+            try {
+                eventProducer.produceDetailedEvent(item.before, item.entity, eventClass);
+                accepted.add(item);
+            } catch (RuntimeException e) {
+                result.addFailure(item.failure(e));
+            }
+        }
+        return accepted;
+    }
+
     /**
      * @param id
      * @return
      */
     @Override
     public T find(long id) {
-        return this.getRepository().find(id);
+        return timed(EntityOperation.FIND, () -> findEntity(id));
+    }
+
+    private T findEntity(long id) {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        T entity = (unitOfWork != null) ? unitOfWork.find(this.type, id) : null;
+        if (entity != null)
+            return entity;
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null && filter.isDefinitelyAbsent(id))
+            return null;
+        EntityCache<T> cache = this.entityCache;
+        entity = (cache != null) ? cache.get(id) : null;
+        if (entity == null) {
+            long cacheGeneration = (cache != null) ? cache.generation() : 0;
+            entity = this.getRepository().find(id);
+            //entities loaded through their setters start clean
+            if (entity instanceof AbstractEntity abstractEntity)
+                abstractEntity.clearDirtyFields();
+            if (cache != null)
+                cache.loaded(entity, cacheGeneration);
+            if (entity == null && filter != null)
+                filter.falsePositive();
+        }
+        if (unitOfWork != null)
+            unitOfWork.loaded(this.type, entity);
+        return entity;
     }
 
     /**
@@ -180,9 +823,18 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      */
     @Override
     public T find(Query filter) {
+        return timed(EntityOperation.FIND, () -> findEntity(filter));
+    }
+
+    private T findEntity(Query filter) {
         return this.getRepository().find(filter);
     }
 
+    @Override
+    public boolean isFindByIdCached() {
+        return this.entityCache != null;
+    }
+
     /**
      * @param filter
      * @param delta
@@ -193,10 +845,76 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
     @Override
     public PaginableResult<T> findAll(Query filter, int delta,
                                       int page, QueryOrder queryOrder) {
+        return timed(EntityOperation.FIND_ALL, () -> findAllEntities(filter, delta, page, queryOrder));
+    }
+
+    private PaginableResult<T> findAllEntities(Query filter, int delta, int page, QueryOrder queryOrder) {
         getLog().debug("System Service Finding All entities of {} with delta: {} num page:{} and with orderParameters", this.type.getSimpleName(), delta, page);
         return this.getRepository().findAll(delta, page, filter, queryOrder);
     }
 
+    /**
+     * Reads delta + 1 entities through an UncountedFindAllRepository: the extra entity only tells whether a next page exists.
+     * Repositories not implementing it are read through findAll, so the returned page knows its total.
+     *
+     * @param filter     filter, can be null
+     * @param delta      num of items per page
+     * @param page       page number, starting from 1
+     * @param queryOrder order, can be null
+     * @return page with hasNext
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PaginatedResult<T> findAllWithoutCount(Query filter, int delta, int page, QueryOrder queryOrder) {
+        getLog().debug("System Service Finding All entities of {} without count with delta: {} num page:{}", this.type.getSimpleName(), delta, page);
+        if (delta <= 0)
+            throw new IllegalArgumentException("Delta must be greater than 0");
+        int currentPage = Math.max(page, 1);
+        if (this.getRepository() instanceof UncountedFindAllRepository<?> uncountedFindAllRepository) {
+            List<T> results = new ArrayList<>(((UncountedFindAllRepository<T>) uncountedFindAllRepository).findRange((currentPage - 1) * delta, delta + 1, filter, queryOrder));
+            boolean hasNext = results.size() > delta;
+            if (hasNext)
+                results.remove(delta);
+            return PaginatedResult.withoutTotal(currentPage, delta, results, hasNext);
+        }
+        PaginableResult<T> result = this.getRepository().findAll(delta, currentPage, filter, queryOrder);
+        if (result instanceof PaginatedResult<T> paginatedResult)
+            return paginatedResult;
+        return new PaginatedResult<>(result.getNumPages(), result.getCurrentPage(), result.getNextPage(), result.getDelta(), result.getResults());
+    }
+
+    /**
+     * Streams the whole result set of findAll, fetching at most streamPageSize entities at once.
+     * Chunks are read through findAllWithoutCount, so walking the result set does not count it.
+     *
+     * @param filter     filter, can be null
+     * @param queryOrder order, can be null
+     * @return cold publisher, each subscriber walks the result set from the beginning
+     */
+    @Override
+    public Flow.Publisher<T> findAllPublisher(Query filter, QueryOrder queryOrder) {
+        getLog().debug("System Service Publishing All entities of {}", this.type.getSimpleName());
+        return new EntityPublisher<>(() -> new EntityCursor<>(this::findAllWithoutCount, this.getQueryBuilderInstance(), filter, queryOrder, this.streamPageSize));
+    }
+
+    /**
+     * Streams the whole result set of findAll, reading pages of streamPageSize entities
+     * on the default async executor up to prefetchDepth pages ahead of the consumer.
+     * As for findAllPublisher, pages are read through findAllWithoutCount.
+     *
+     * @param filter        filter, can be null
+     * @param queryOrder    order, can be null
+     * @param prefetchDepth pages read ahead, 0 to read pages on the consumer thread
+     * @return lazy sequential stream, closing it stops the background reads
+     */
+    @Override
+    public Stream<T> findAllStream(Query filter, QueryOrder queryOrder, int prefetchDepth) {
+        getLog().debug("System Service Streaming All entities of {} with prefetch depth {}", this.type.getSimpleName(), prefetchDepth);
+        EntityCursor<T> cursor = new EntityCursor<>(this::findAllWithoutCount, this.getQueryBuilderInstance(), filter, queryOrder, this.streamPageSize);
+        PrefetchingSpliterator<T> spliterator = new PrefetchingSpliterator<>(cursor, prefetchDepth, AsyncExecutors.defaultExecutor());
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
     /**
      *
      * @param entity
@@ -207,6 +925,79 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
         manageAssetTags(entity, operation);
     }
 
+    /**
+     * Applies the asset changes of many entities, with one bulk call per asset kind and resource name
+     * when the integration client supports it, otherwise entity by entity.
+     *
+     * @param entities  entities of the same chunk
+     * @param operation asset operation
+     * @return failures by entity, so that only the failing entities are reported
+     */
+    private Map<T, RuntimeException> manageAssets(List<T> entities, AssetOperation operation) {
+        Map<T, RuntimeException> failures = new IdentityHashMap<>();
+        if (entities.isEmpty())
+            return failures;
+        if (assetCategoryIntegrationClient instanceof BatchAssetCategoryIntegrationClient batchClient)
+            manageAssetsInBatch(entities, operation, BaseEntity::getCategoryIds, batchClient::findAssetCategories,
+                    batchClient::updateAssetCategories, entity -> manageAssetCategories(entity, retryOperation(operation)), failures);
+        else
+            manageAssetsOneByOne(entities, entity -> manageAssetCategories(entity, operation), failures);
+        if (assetTagIntegrationClient instanceof BatchAssetTagIntegrationClient batchClient)
+            manageAssetsInBatch(entities, operation, BaseEntity::getTagIds, batchClient::findAssetTags,
+                    batchClient::updateAssetTags, entity -> manageAssetTags(entity, retryOperation(operation)), failures);
+        else
+            manageAssetsOneByOne(entities, entity -> manageAssetTags(entity, operation), failures);
+        return failures;
+    }
+
+    private void manageAssetsInBatch(List<T> entities, AssetOperation operation, Function<T, long[]> desiredIds,
+                                     BiFunction<String, Collection<Long>, Map<Long, long[]>> finder,
+                                     BiConsumer<String, List<AssetMutation>> updater, Consumer<T> fallback, Map<T, RuntimeException> failures) {
+        Map<String, List<T>> entitiesByResourceName = new LinkedHashMap<>();
+        entities.forEach(entity -> entitiesByResourceName.computeIfAbsent(entity.getClass().getName(), name -> new ArrayList<>()).add(entity));
+        entitiesByResourceName.forEach((resourceName, resources) -> {
+            try {
+                Map<Long, long[]> currentIds = operation == AssetOperation.ADD ? Collections.emptyMap()
+                        : finder.apply(resourceName, resources.stream().map(BaseEntity::getId).toList());
+                List<AssetMutation> mutations = new ArrayList<>(resources.size());
+                for (T entity : resources) {
+                    AssetMutation mutation = AssetMutation.of(entity.getId(), currentIds.get(entity.getId()),
+                            operation == AssetOperation.DELETE ? null : desiredIds.apply(entity));
+                    if (mutation != null)
+                        mutations.add(mutation);
+                }
+                if (!mutations.isEmpty())
+                    updater.accept(resourceName, mutations);
+            } catch (RuntimeException e) {
+                getLog().warn("Bulk asset operation on {} failed, retrying one by one: {}", resourceName, e.getMessage());
+                manageAssetsOneByOne(resources, fallback, failures);
+            }
+        });
+    }
+
+    private void manageAssetsOneByOne(List<T> entities, Consumer<T> operation, Map<T, RuntimeException> failures) {
+        for (T entity : entities) {
+            try {
+                operation.accept(entity);
+            } catch (RuntimeException e) {
+                failures.putIfAbsent(entity, e);
+            }
+        }
+    }
+
+    /**
+     * A failed bulk operation may have been partially applied: additions are retried as delta updates, which are idempotent
+     */
+    private static AssetOperation retryOperation(AssetOperation operation) {
+        return operation == AssetOperation.ADD ? AssetOperation.UPDATE : operation;
+    }
+
+    private void throwIfFailed(Map<T, RuntimeException> failures, T entity) {
+        RuntimeException failure = failures.get(entity);
+        if (failure != null)
+            throw failure;
+    }
+
     /**
      *
      * @param entity
@@ -226,11 +1017,12 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
                             categoryIds);
                 break;
             case UPDATE:
-                long[] oldIds = assetCategoryIntegrationClient.findAssetCategories(resourceName, resourceId);
-                assetCategoryIntegrationClient.removeAssetCategories(resourceName, resourceId, oldIds);
-                if (categoryIds != null && categoryIds.length > 0)
-                    assetCategoryIntegrationClient.addAssetCategories(resourceName, resourceId,
-                            categoryIds);
+                //only the changed associations are written
+                AssetIdDelta delta = AssetIdDelta.of(assetCategoryIntegrationClient.findAssetCategories(resourceName, resourceId), categoryIds);
+                if (delta.getRemoved().length > 0)
+                    assetCategoryIntegrationClient.removeAssetCategories(resourceName, resourceId, delta.getRemoved());
+                if (delta.getAdded().length > 0)
+                    assetCategoryIntegrationClient.addAssetCategories(resourceName, resourceId, delta.getAdded());
                 break;
             case DELETE:
                 long[] ids = assetCategoryIntegrationClient.findAssetCategories(resourceName, resourceId);
@@ -258,11 +1050,12 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
                             tagIds);
                 break;
             case UPDATE:
-                long[] oldIds = assetTagIntegrationClient.findAssetTags(resourceName, resourceId);
-                assetTagIntegrationClient.removeAssetTags(resourceName, resourceId, oldIds);
-                if (tagIds != null && tagIds.length > 0)
-                    assetTagIntegrationClient.addAssetTags(resourceName, resourceId,
-                            tagIds);
+                //only the changed associations are written
+                AssetIdDelta delta = AssetIdDelta.of(assetTagIntegrationClient.findAssetTags(resourceName, resourceId), tagIds);
+                if (delta.getRemoved().length > 0)
+                    assetTagIntegrationClient.removeAssetTags(resourceName, resourceId, delta.getRemoved());
+                if (delta.getAdded().length > 0)
+                    assetTagIntegrationClient.addAssetTags(resourceName, resourceId, delta.getAdded());
                 break;
             case DELETE:
                 long[] ids = assetTagIntegrationClient.findAssetTags(resourceName, resourceId);
@@ -284,7 +1077,38 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      */
     @Override
     public long countAll(Query filter) {
-        return this.getRepository().countAll(filter);
+        return this.countAll(filter, false).getCount();
+    }
+
+    /**
+     * Counts through the count cache when enabled. When an approximate count is allowed and no cached count is available,
+     * the estimate of a CountEstimatingRepository is returned, otherwise the entities are counted exactly.
+     *
+     * @param filter           filter
+     * @param allowApproximate true to accept an estimate
+     * @return number of matching entities
+     */
+    @Override
+    public CountResult countAll(Query filter, boolean allowApproximate) {
+        return timed(EntityOperation.COUNT_ALL, () -> countEntities(filter, allowApproximate));
+    }
+
+    private CountResult countEntities(Query filter, boolean allowApproximate) {
+        CountCache cache = this.countCache;
+        CountResult cached = cache != null ? cache.get(filter) : null;
+        if (cached != null)
+            return cached;
+        if (allowApproximate && this.getRepository() instanceof CountEstimatingRepository countEstimatingRepository) {
+            long estimate = countEstimatingRepository.estimateCount(filter);
+            if (estimate >= 0)
+                return new CountResult(estimate, true, 0);
+        }
+        if (cache == null)
+            return CountResult.exact(this.getRepository().countAll(filter));
+        long generation = cache.generation();
+        long count = this.getRepository().countAll(filter);
+        cache.put(filter, generation, count);
+        return CountResult.exact(count);
     }
 
     /**
@@ -293,13 +1117,19 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      * @param <K>
      */
     private <K extends Event> void produceEvent(T entity, Class<K> eventClass) {
-        try {
-            ApplicationEventProducer eventProducer = this.componentRegistry.findComponent(ApplicationEventProducer.class, null);
-            if (eventProducer != null)
-                eventProducer.produceEvent(entity, eventClass); // execute pre actions after removing
-        } catch (NoComponentRegistryFoundException e) {
+        produceEvent(findEventProducer(), entity, eventClass);
+    }
+
+    private <K extends Event> void produceEvent(ApplicationEventProducer eventProducer, T entity, Class<K> eventClass) {
+        if (eventProducer != null && !hasListeners(eventProducer, eventClass))
+            return;
+        AsyncEventDispatcher dispatcher = this.asyncEventDispatcher;
+        if (eventProducer != null && dispatcher != null && isPostEvent(eventClass))
+            dispatcher.produceEvent(eventProducer, this.type, entity, eventClass);
+        else if (eventProducer != null)
+            eventProducer.produceEvent(entity, eventClass); // execute pre actions after removing
+        else
             log.debug("No Event Producer Found for this project, skipping producing event {}", eventClass);
-        }
     }
 
     /**
@@ -309,12 +1139,412 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
      * @param <K>
      */
     private <K extends Event> void produceDetailedEvent(T beforeUpdateEntity, T entity, Class<K> eventClass) {
-        try {
-            ApplicationEventProducer eventProducer = this.componentRegistry.findComponent(ApplicationEventProducer.class, null);
-            if (eventProducer != null)
-                eventProducer.produceDetailedEvent(beforeUpdateEntity, entity, eventClass); // execute pre actions after removing
-        } catch (NoComponentRegistryFoundException e) {
+        produceDetailedEvent(findEventProducer(), beforeUpdateEntity, entity, eventClass);
+    }
+
+    private <K extends Event> void produceDetailedEvent(ApplicationEventProducer eventProducer, T beforeUpdateEntity, T entity, Class<K> eventClass) {
+        if (eventProducer != null && !hasListeners(eventProducer, eventClass))
+            return;
+        AsyncEventDispatcher dispatcher = this.asyncEventDispatcher;
+        if (eventProducer != null && dispatcher != null && isPostEvent(eventClass))
+            dispatcher.produceDetailedEvent(eventProducer, this.type, beforeUpdateEntity, entity, eventClass);
+        else if (eventProducer != null)
+            eventProducer.produceDetailedEvent(beforeUpdateEntity, entity, eventClass); // execute pre actions after removing
+        else
             log.debug("No Event Producer Found for this project, skipping producing event {}", eventClass);
+    }
+
+    /**
+     * Post update events are held back by the coalescer, when enabled
+     */
+    private void producePostUpdateEvent(ApplicationEventProducer eventProducer, T entityBeforeUpdate, T updatedEntity) {
+        UpdateEventCoalescer<T> coalescer = this.updateEventCoalescer;
+        if (coalescer != null && hasListeners(eventProducer, PostUpdateDetailedEvent.class))
+            coalescer.add(entityBeforeUpdate, updatedEntity);
+        else
+            produceDetailedEvent(eventProducer, entityBeforeUpdate, updatedEntity, PostUpdateDetailedEvent.class);
+    }
+
+    private void flushUpdateEvents(long id) {
+        UpdateEventCoalescer<T> coalescer = this.updateEventCoalescer;
+        if (coalescer != null)
+            coalescer.flush(id);
+    }
+
+    /**
+     * @return false if there is no producer or it knows that nobody listens to the event for this entity type
+     */
+    private boolean hasListeners(ApplicationEventProducer eventProducer, Class<? extends Event> eventClass) {
+        if (eventProducer instanceof EventInterestRegistry eventInterestRegistry)
+            return eventInterestRegistry.hasListeners(this.type, eventClass);
+        return eventProducer != null;
+    }
+
+    /**
+     * The state before an update is read only for detailed update events
+     */
+    private boolean hasDetailedUpdateListeners(ApplicationEventProducer eventProducer) {
+        return hasListeners(eventProducer, PreUpdateDetailedEvent.class) || hasListeners(eventProducer, PostUpdateDetailedEvent.class);
+    }
+
+    /**
+     * Pre events stay synchronous since listeners can veto the operation by throwing
+     */
+    private static boolean isPostEvent(Class<? extends Event> eventClass) {
+        return eventClass == PostSaveEvent.class || eventClass == PostUpdateEvent.class
+                || eventClass == PostUpdateDetailedEvent.class || eventClass == PostRemoveEvent.class;
+    }
+
+    /**
+     * @return the registered event producer or null if none is available
+     */
+    private ApplicationEventProducer findEventProducer() {
+        return eventProducerLookup.get();
+    }
+
+    /**
+     * @param componentRegistry component registry, replacing it discards the resolved event producer
+     */
+    public void setComponentRegistry(ComponentRegistry componentRegistry) {
+        this.componentRegistry = componentRegistry;
+        this.eventProducerLookup.invalidate();
+    }
+
+    /**
+     * Delivers post save, update and remove events through the given dispatcher instead of the calling thread.
+     * Pre events are still produced synchronously. The dispatcher is owned by the caller and can be shared between services.
+     *
+     * @param dispatcher asynchronous event dispatcher
+     */
+    public void enableAsyncPostEvents(AsyncEventDispatcher dispatcher) {
+        getLog().debug("Enabling asynchronous post events for {}", this.type.getSimpleName());
+        this.asyncEventDispatcher = dispatcher;
+    }
+
+    /**
+     * Restores synchronous post events, the dispatcher is not closed
+     */
+    public void disableAsyncPostEvents() {
+        this.asyncEventDispatcher = null;
+    }
+
+    /**
+     * @return asynchronous event statistics or null if post events are synchronous
+     */
+    public AsyncEventStatistics getAsyncEventStatistics() {
+        AsyncEventDispatcher dispatcher = this.asyncEventDispatcher;
+        return dispatcher != null ? dispatcher.getStatistics() : null;
+    }
+
+    /**
+     * Merges the post update events of the same entity produced within windowMillis into one PostUpdateDetailedEvent,
+     * carrying the state before the first update and after the last one.
+     * Pending events are emitted when the window expires, after maxMergedEvents updates and before the entity is removed.
+     *
+     * @param windowMillis    maximum time a post update event is held back
+     * @param maxMergedEvents maximum number of updates merged into one event
+     */
+    public void enableUpdateEventCoalescing(long windowMillis, int maxMergedEvents) {
+        getLog().debug("Enabling update event coalescing for {} with window {}ms and max {} events", this.type.getSimpleName(), windowMillis, maxMergedEvents);
+        UpdateEventCoalescer<T> previous = this.updateEventCoalescer;
+        this.updateEventCoalescer = new UpdateEventCoalescer<>(windowMillis, maxMergedEvents,
+                (entityBeforeUpdate, updatedEntity) -> produceDetailedEvent(findEventProducer(), entityBeforeUpdate, updatedEntity, PostUpdateDetailedEvent.class));
+        if (previous != null)
+            previous.flushAll();
+    }
+
+    /**
+     * Disables update event coalescing, emitting the pending events
+     */
+    public void disableUpdateEventCoalescing() {
+        UpdateEventCoalescer<T> previous = this.updateEventCoalescer;
+        this.updateEventCoalescer = null;
+        if (previous != null)
+            previous.flushAll();
+    }
+
+    /**
+     * @return true if post update events are coalesced
+     */
+    public boolean isUpdateEventCoalescingEnabled() {
+        return this.updateEventCoalescer != null;
+    }
+
+    /**
+     * Enables the read-through cache on find by id for the current entity type.
+     * Cached entities are isolated from callers through serialization copies, so the entity type must be Serializable,
+     * otherwise use enableEntityCache(int, long, UnaryOperator) providing a copy function.
+     *
+     * @param maxSize   max number of cached entities
+     * @param ttlMillis entry time to live in milliseconds, 0 means no expiration
+     */
+    public void enableEntityCache(int maxSize, long ttlMillis) {
+        if (!Serializable.class.isAssignableFrom(this.type))
+            throw new WaterRuntimeException("Entity cache for " + this.type.getName() + " requires a copy function since entity is not Serializable");
+        this.enableEntityCache(maxSize, ttlMillis, this::serializationCopy);
+    }
+
+    /**
+     * Enables the read-through cache on find by id for the current entity type.
+     *
+     * @param maxSize   max number of cached entities
+     * @param ttlMillis entry time to live in milliseconds, 0 means no expiration
+     * @param copier    function returning a copy of the entity not sharing mutable state with the original one
+     */
+    public void enableEntityCache(int maxSize, long ttlMillis, UnaryOperator<T> copier) {
+        getLog().debug("Enabling entity cache for {} with size {} and ttl {}ms", this.type.getSimpleName(), maxSize, ttlMillis);
+        this.entityCache = new EntityCache<>(maxSize, ttlMillis, copier);
+    }
+
+    /**
+     * Disables the entity cache for the current entity type, discarding cached entities
+     */
+    public void disableEntityCache() {
+        this.entityCache = null;
+    }
+
+    /**
+     * @return true if find by id is served through the entity cache
+     */
+    public boolean isEntityCacheEnabled() {
+        return this.entityCache != null;
+    }
+
+    /**
+     * @return entity cache statistics or null if the cache is disabled
+     */
+    public EntityCacheStatistics getEntityCacheStatistics() {
+        EntityCache<T> cache = this.entityCache;
+        return cache != null ? cache.getStatistics() : null;
+    }
+
+    /**
+     * Enables the validation plans: constrained properties and their accessors are computed once per class,
+     * resources without constraints skip the validator.
+     *
+     * @param skipUnchangedProperties true to validate, on updates with a loaded snapshot, only the constrained properties
+     *                                which changed. Requires a PropertyValidator to validate single properties
+     */
+    public void enableValidationPlan(boolean skipUnchangedProperties) {
+        getLog().debug("Enabling validation plan for {}, skipping unchanged properties: {}", this.type.getSimpleName(), skipUnchangedProperties);
+        this.skipUnchangedProperties = skipUnchangedProperties;
+        this.validationPlanEnabled = true;
+    }
+
+    public void disableValidationPlan() {
+        this.validationPlanEnabled = false;
+        this.skipUnchangedProperties = false;
+    }
+
+    /**
+     * Enables the parallel validation of batches on the common fork join pool.
+     *
+     * @param parallelismThreshold min number of entities of a batch to validate them in parallel
+     */
+    public void enableParallelValidation(int parallelismThreshold) {
+        enableParallelValidation(ForkJoinPool.commonPool(), parallelismThreshold);
+    }
+
+    /**
+     * Enables the parallel validation of the batches of saveAll, updateAll and ingest.
+     * Validators and entity getters must be thread safe, since entities of a batch are validated concurrently.
+     *
+     * @param pool                 work-stealing pool running the validations
+     * @param parallelismThreshold min number of entities of a batch to validate them in parallel
+     */
+    public void enableParallelValidation(ForkJoinPool pool, int parallelismThreshold) {
+        getLog().debug("Enabling parallel validation for {} with parallelism {} from {} entities", this.type.getSimpleName(), pool.getParallelism(), parallelismThreshold);
+        this.validationExecutor = new ValidationExecutor(pool, parallelismThreshold);
+    }
+
+    public void disableParallelValidation() {
+        this.validationExecutor = null;
+    }
+
+    public boolean isParallelValidationEnabled() {
+        return this.validationExecutor != null;
+    }
+
+    /**
+     * Enables the operation metrics on the default in process registry.
+     */
+    public void enableMetrics() {
+        enableMetrics(InProcessMetricsRegistry.defaultRegistry());
+    }
+
+    /**
+     * Enables the metrics of save, update, remove, find, findAll and countAll:
+     * execution count, error count and latency histogram by entity type and operation.
+     *
+     * @param registry registry receiving the metrics
+     */
+    public void enableMetrics(EntityMetricsRegistry registry) {
+        getLog().debug("Enabling metrics for {} on {}", this.type.getSimpleName(), registry.getClass().getSimpleName());
+        this.serviceMetrics = new ServiceMetrics(registry, this.type, ServiceLayer.SYSTEM_SERVICE);
+    }
+
+    public void disableMetrics() {
+        this.serviceMetrics = null;
+    }
+
+    /**
+     * @return the registry receiving the metrics or null if metrics are disabled
+     */
+    public EntityMetricsRegistry getMetricsRegistry() {
+        ServiceMetrics metrics = this.serviceMetrics;
+        return metrics != null ? metrics.getRegistry() : null;
+    }
+
+    /**
+     * Enables the count cache: countAll results are reused for the same filter and values
+     * until the next write to the entity type through this service, for at most maxStalenessMillis.
+     *
+     * @param maxSize            max number of cached filters
+     * @param maxStalenessMillis max age of the counts served from the cache in milliseconds
+     */
+    public void enableCountCache(int maxSize, long maxStalenessMillis) {
+        getLog().debug("Enabling count cache for {} with size {} and staleness bound {}ms", this.type.getSimpleName(), maxSize, maxStalenessMillis);
+        this.countCache = new CountCache(maxSize, maxStalenessMillis);
+    }
+
+    public void disableCountCache() {
+        this.countCache = null;
+    }
+
+    /**
+     * @return count cache statistics or null if the cache is disabled
+     */
+    public CountCacheStatistics getCountCacheStatistics() {
+        CountCache cache = this.countCache;
+        return cache != null ? cache.getStatistics() : null;
+    }
+
+    /**
+     * Enables the negative lookup filter: find and remove on ids which definitely do not exist
+     * fail fast without reaching the repository.
+     * The filter is seeded reading all the ids from the repository, in pages of ids greater than the last one read:
+     * only the ids are read when the repository is an IdProjectionRepository, otherwise whole entities are read
+     * without counting them when the repository is an UncountedFindAllRepository.
+     * The filter is then maintained on save and remove,
+     * so it must be enabled only when every write of this entity type passes through this service.
+     *
+     * @param expectedInsertions expected number of entities
+     * @param falsePositiveRate  accepted false positive rate, ex. 0.01
+     */
+    public void enableExistenceFilter(long expectedInsertions, double falsePositiveRate) {
+        getLog().debug("Enabling existence filter for {} with {} expected insertions and fpp {}", this.type.getSimpleName(), expectedInsertions, falsePositiveRate);
+        ExistenceFilter filter = new ExistenceFilter(expectedInsertions, falsePositiveRate);
+        //published before seeding so that concurrent saves are tracked, lookups are answered only once ready
+        this.existenceFilter = filter;
+        //keyset paging: rows removed or added while seeding do not shift the following pages
+        long lastSeenId = 0;
+        long[] ids;
+        do {
+            ids = findExistenceFilterSeedIds(lastSeenId);
+            for (long id : ids) {
+                filter.add(id);
+                lastSeenId = Math.max(lastSeenId, id);
+            }
+        } while (ids.length >= EXISTENCE_FILTER_SEED_PAGE_SIZE);
+        filter.markReady();
+    }
+
+    /**
+     * @return first EXISTENCE_FILTER_SEED_PAGE_SIZE ids greater than lastSeenId, read through the cheapest query the repository allows
+     */
+    @SuppressWarnings("unchecked")
+    private long[] findExistenceFilterSeedIds(long lastSeenId) {
+        if (this.getRepository() instanceof IdProjectionRepository idProjectionRepository)
+            return idProjectionRepository.findIdsAfter(lastSeenId, EXISTENCE_FILTER_SEED_PAGE_SIZE);
+        Query filter = this.getRepository().getQueryBuilderInstance().field("id").greaterThan(lastSeenId);
+        QueryOrder idOrder = new DefaultQueryOrder().addOrderField("id", true);
+        Collection<T> page = (this.getRepository() instanceof UncountedFindAllRepository<?> uncountedFindAllRepository) ?
+                ((UncountedFindAllRepository<T>) uncountedFindAllRepository).findRange(0, EXISTENCE_FILTER_SEED_PAGE_SIZE, filter, idOrder) :
+                this.getRepository().findAll(EXISTENCE_FILTER_SEED_PAGE_SIZE, 1, filter, idOrder).getResults();
+        return page.stream().mapToLong(BaseEntity::getId).toArray();
+    }
+
+    /**
+     * Disables the negative lookup filter
+     */
+    public void disableExistenceFilter() {
+        this.existenceFilter = null;
+    }
+
+    /**
+     * @return existence filter metrics or null if the filter is disabled
+     */
+    public ExistenceFilterStatistics getExistenceFilterStatistics() {
+        ExistenceFilter filter = this.existenceFilter;
+        return filter != null ? filter.getStatistics() : null;
+    }
+
+    private void existenceFilterAdd(long id) {
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null)
+            filter.add(id);
+    }
+
+    private void existenceFilterRemove(long id) {
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null)
+            filter.remove(id);
+    }
+
+    private void cacheWritten(T entity) {
+        EntityCache<T> cache = this.entityCache;
+        if (cache != null)
+            cache.written(entity);
+        unitOfWorkFlush(entity.getId());
+        countCacheInvalidate();
+    }
+
+    /**
+     * Runs the operation recording its metrics, when enabled
+     */
+    private <R> R timed(EntityOperation operation, Supplier<R> body) {
+        return ServiceMetrics.timed(this.serviceMetrics, operation, body);
+    }
+
+    private void timed(EntityOperation operation, Runnable body) {
+        ServiceMetrics.timed(this.serviceMetrics, operation, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    private void countCacheInvalidate() {
+        CountCache cache = this.countCache;
+        if (cache != null)
+            cache.invalidateAll();
+    }
+
+    private void cacheInvalidate(long id) {
+        EntityCache<T> cache = this.entityCache;
+        if (cache != null)
+            cache.invalidate(id);
+        unitOfWorkFlush(id);
+        countCacheInvalidate();
+    }
+
+    private void unitOfWorkFlush(long id) {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null)
+            unitOfWork.written(this.type, id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T serializationCopy(T entity) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(entity);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (T) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new WaterRuntimeException("Impossible to copy entity " + this.type.getName() + ": " + e.getMessage());
         }
     }
 
@@ -334,8 +1564,70 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
     @Override
     protected void validate(Resource resource) {
         if (this.waterValidator != null) {
-            this.waterValidator.validate(resource);
+            if (this.validationPlanEnabled)
+                ValidationPlan.of(resource.getClass()).validate(this.waterValidator, resource, null);
+            else
+                this.waterValidator.validate(resource);
+        }
+    }
+
+    /**
+     * Validates an entity whose persisted state is known: when unchanged properties are skipped,
+     * only the constrained properties which differ from the persisted ones are validated.
+     *
+     * @param entity             entity to validate
+     * @param entityBeforeUpdate persisted state of the entity, can be null
+     */
+    private void validateChanges(T entity, T entityBeforeUpdate) {
+        if (this.waterValidator != null && this.validationPlanEnabled && this.skipUnchangedProperties && entityBeforeUpdate != null)
+            ValidationPlan.of(entity.getClass()).validate(this.waterValidator, entity, entityBeforeUpdate);
+        else
+            this.validate(entity);
+    }
+
+    /**
+     * Recomputes the denormalized root parent id of the RootParentIndexedResource entities matching the filter.
+     * Writes refresh the column of the written entity only, so when a node in the middle of a parent chain is moved
+     * the root parent id of its descendants becomes stale: this method must then be called, in the same transaction,
+     * with a filter selecting the descendants of this type, ex. "parent.id = movedNodeId".
+     * Entities whose root parent id is already correct are not written.
+     *
+     * @param subtreeFilter filter selecting the entities to reindex
+     * @return number of entities whose root parent id has been updated
+     */
+    public long reindexRootParents(Query subtreeFilter) {
+        if (!RootParentIndexedResource.class.isAssignableFrom(this.type))
+            return 0;
+        getLog().debug("System Service Reindexing root parents of {}", this.type.getSimpleName());
+        long reindexed = 0;
+        try (Stream<T> subtree = findAllStream(subtreeFilter, null, 0)) {
+            for (T entity : (Iterable<T>) subtree::iterator) {
+                if (indexRootParent(entity)) {
+                    cacheWritten(this.getRepository().update(entity));
+                    reindexed++;
+                }
+            }
         }
+        return reindexed;
+    }
+
+    /**
+     * Refreshes the denormalized root parent id of indexed child resources.
+     *
+     * @param entity entity being written
+     * @return true if the root parent id changed
+     */
+    private boolean indexRootParent(T entity) {
+        if (!(entity instanceof RootParentIndexedResource indexedResource))
+            return false;
+        OwnedResource rootParent = indexedResource.getRootParent();
+        Long rootParentId = rootParent != null ? rootParent.getId() : null;
+        if (Objects.equals(rootParentId, indexedResource.getRootParentId()))
+            return false;
+        indexedResource.setRootParentId(rootParentId);
+        if (entity instanceof AbstractEntity abstractEntity && EntityPropertyIndex.of(entity.getClass()).positionOf(RootParentIndexedResource.getRootParentIdFieldName()) >= 0)
+            abstractEntity.markDirty(RootParentIndexedResource.getRootParentIdFieldName());
+        return true;
     }
 
     /**
@@ -358,4 +1650,40 @@ public abstract class BaseEntitySystemServiceImpl<T extends BaseEntity>
     protected enum AssetOperation {
         ADD, DELETE, UPDATE;
     }
+
+    /**
+     * Entity inside a batch, with its position in the submitted batch
+     */
+    private static final class BatchItem<T extends BaseEntity> {
+        private final int index;
+        private final T entity;
+        private T before;
+        private T updated;
+        /**
+         * Copy of the submitted entity, taken before a transactional attempt which may change it
+         */
+        private T submitted;
+
+        private BatchItem(int index, T entity) {
+            this.index = index;
+            this.entity = entity;
+        }
+
+        private void snapshot() {
+            this.submitted = EntityPatcher.shallowCopy(entity);
+        }
+
+        private void reset() {
+            this.updated = null;
+            //the rolled back transaction may have assigned an id or a version to the entity
+            if (this.submitted != null) {
+                EntityPatcher.restore(entity, submitted);
+                this.submitted = null;
+            }
+        }
+
+        private BatchItemFailure failure(Throwable cause) {
+            return new BatchItemFailure(index, entity.getId(), cause);
+        }
+    }
 }
@@ -25,6 +25,7 @@ import it.water.core.api.model.BaseEntity;
 import it.water.core.api.repository.query.Query;
 import it.water.core.api.service.BaseEntitySystemApi;
 import it.water.core.api.service.integration.SharedEntityIntegrationClient;
+import it.water.repository.entity.model.RootParentIndexedResource;
 
 
 /**
@@ -39,9 +40,12 @@ public abstract class OwnedChildBaseEntityServiceImpl<T extends BaseEntity> exte
             SharedEntityIntegrationClient sharedEntityIntegrationClient = getSharedEntityIntegrationClient();
             if (sharedEntityIntegrationClient != null) {
                 Class<? extends OwnedResource> rootParentClass = getParentResourceClass();
-                Collection<Long> entityIds = sharedEntityIntegrationClient.fetchSharingUsersIds(rootParentClass.getName(), loggedUserId);
+                Query sharedSemiJoinFilter = createSharedEntitySemiJoinFilter(sharedEntityIntegrationClient, this.getSharedRootParentFieldPath(), rootParentClass.getName(), loggedUserId);
+                if (sharedSemiJoinFilter != null)
+                    return ownedResourceFilter.or(sharedSemiJoinFilter);
+                Collection<Long> entityIds = fetchSharedEntityIds(sharedEntityIntegrationClient, rootParentClass.getName(), loggedUserId);
                 if (entityIds != null && !entityIds.isEmpty()) {
-                    ownedResourceFilter = ownedResourceFilter.or(getSystemService().getQueryBuilderInstance().field(this.getRootParentFieldPath()).in(Arrays.asList(entityIds.toArray())));
+                    ownedResourceFilter = ownedResourceFilter.or(getSystemService().getQueryBuilderInstance().field(this.getSharedRootParentFieldPath()).in(Arrays.asList(entityIds.toArray())));
                 }
             }
         }
@@ -62,5 +66,15 @@ public abstract class OwnedChildBaseEntityServiceImpl<T extends BaseEntity> exte
 
     protected abstract String getRootParentFieldPath();
 
+    /**
+     * @return field matched against the shared root parent ids: the denormalized root parent id
+     * for RootParentIndexedResource entities, the root parent path otherwise
+     */
+    protected String getSharedRootParentFieldPath() {
+        if (RootParentIndexedResource.class.isAssignableFrom(this.getEntityType()))
+            return RootParentIndexedResource.getRootParentIdFieldName();
+        return this.getRootParentFieldPath();
+    }
+
     protected abstract Class<? extends OwnedResource> getParentResourceClass();
 }
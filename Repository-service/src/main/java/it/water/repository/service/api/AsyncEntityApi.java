@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.api;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Non blocking counterparts of the BaseEntityApi read methods.
+ * Permissions are checked when the method is called, the lookup runs asynchronously
+ * with the security context of the caller.
+ */
+public interface AsyncEntityApi<T extends BaseEntity> {
+    /**
+     * @param id entity id
+     * @return future completed with the entity, or exceptionally if not found
+     */
+    CompletableFuture<T> findAsync(long id);
+
+    /**
+     * @return future completed with the requested page
+     */
+    CompletableFuture<PaginableResult<T>> findAllAsync(Query filter, int delta, int page, QueryOrder queryOrder);
+
+    /**
+     * @return future completed with the number of entities matching the filter
+     */
+    CompletableFuture<Long> countAllAsync(Query filter);
+}
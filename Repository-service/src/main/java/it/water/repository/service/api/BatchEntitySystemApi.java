@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.api;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.repository.entity.model.BatchResult;
+
+import java.util.Collection;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Batch CRUD operations of the system layer, skipping permission checks.
+ * Items are validated in bulk, persisted in chunks and a failing item never aborts the whole batch.
+ */
+public interface BatchEntitySystemApi<T extends BaseEntity> {
+    /**
+     * @param entities entities to save
+     * @return saved entities and failed items
+     */
+    BatchResult<T> saveAll(Collection<T> entities);
+
+    /**
+     * @param entities entities to update
+     * @return updated entities and failed items
+     */
+    BatchResult<T> updateAll(Collection<T> entities);
+
+    /**
+     * @param ids ids of the entities to remove
+     * @return removed entities and failed items
+     */
+    BatchResult<T> removeAllByIds(Collection<Long> ids);
+}
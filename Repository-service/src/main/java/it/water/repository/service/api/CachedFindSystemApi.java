@@ -0,0 +1,30 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.api;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * System services telling whether find by id is served from a cache,
+ * so that callers prefer it to a query filtering on the id.
+ */
+public interface CachedFindSystemApi {
+    /**
+     * @return true if find by id reads through an entity cache
+     */
+    boolean isFindByIdCached();
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.api;
+
+import it.water.core.api.repository.query.Query;
+import it.water.repository.entity.model.CountResult;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Counts telling whether they are exact, cached or estimated.
+ */
+public interface CountEntityApi {
+    /**
+     * @param filter           filter
+     * @param allowApproximate true to accept an estimate when the repository can provide one
+     * @return number of matching entities, flagged as approximate when estimated
+     */
+    CountResult countAll(Query filter, boolean allowApproximate);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.api;
+
+import it.water.core.api.model.BaseEntity;
+
+import java.util.Map;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Partial updates: only the given properties are changed, validated and written.
+ */
+public interface PatchEntityApi<T extends BaseEntity> {
+    /**
+     * @param id      id of the entity to update
+     * @param changes new values by property name
+     * @return updated entity
+     */
+    T patch(long id, Map<String, Object> changes);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.api;
+
+import it.water.core.api.model.BaseEntity;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Update accepting the persisted state already loaded by the caller,
+ * so that the public and system service layers read the entity only once per update.
+ */
+public interface SnapshotUpdateSystemApi<T extends BaseEntity> {
+    /**
+     * @param entity             entity to update
+     * @param entityBeforeUpdate persisted state of the entity, loaded by the caller before any change,
+     *                           null to let the service load it only if needed
+     * @return updated entity
+     */
+    T update(T entity, T entityBeforeUpdate);
+
+    /**
+     * @return true if updates use the persisted state, ex. because there are detailed update listeners:
+     * callers not needing it themselves should load it only in that case
+     */
+    boolean isUpdateSnapshotNeeded();
+}
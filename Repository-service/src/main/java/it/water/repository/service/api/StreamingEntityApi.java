@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.api;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Streaming access to findAll result sets which are too large to be read page by page into memory.
+ */
+public interface StreamingEntityApi<T extends BaseEntity> {
+    /**
+     * @param filter     filter, can be null
+     * @param queryOrder order, can be null. Results ordered by id are walked by key and are stable under concurrent inserts
+     * @return publisher emitting every entity matching the filter, fetched according to the subscriber demand
+     */
+    Flow.Publisher<T> findAllPublisher(Query filter, QueryOrder queryOrder);
+
+    /**
+     * @param filter        filter, can be null
+     * @param queryOrder    order, can be null. Results ordered by id are walked by key and are stable under concurrent inserts
+     * @param prefetchDepth number of pages read in background ahead of the consumer, 0 to read pages on the consumer thread
+     * @return lazy stream over every entity matching the filter, to be closed to stop the background reads
+     */
+    Stream<T> findAllStream(Query filter, QueryOrder queryOrder, int prefetchDepth);
+}
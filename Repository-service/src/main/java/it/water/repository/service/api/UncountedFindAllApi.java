@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.api;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+import it.water.repository.entity.model.PaginatedResult;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Pages which only tell whether a next page exists, for clients which do not show the total, ex. infinite scroll.
+ */
+public interface UncountedFindAllApi<T extends BaseEntity> {
+    /**
+     * @param filter     filter, can be null
+     * @param delta      num of items per page
+     * @param page       page number, starting from 1
+     * @param queryOrder order, can be null
+     * @return page with hasNext and without the total number of pages
+     */
+    PaginatedResult<T> findAllWithoutCount(Query filter, int delta, int page, QueryOrder queryOrder);
+}
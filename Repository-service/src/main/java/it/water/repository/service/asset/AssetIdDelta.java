@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.asset;
+
+import java.util.Arrays;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Difference between the ids currently associated to a resource and the desired ones,
+ * computed with a merge of the two sorted id sets in linear time after sorting.
+ * Null arrays are empty sets and duplicated ids are ignored.
+ */
+public class AssetIdDelta {
+    private static final long[] NO_IDS = new long[0];
+
+    private final long[] added;
+    private final long[] removed;
+
+    private AssetIdDelta(long[] added, long[] removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * @param currentIds ids currently associated
+     * @param desiredIds ids which must be associated
+     * @return ids to add and to remove
+     */
+    public static AssetIdDelta of(long[] currentIds, long[] desiredIds) {
+        long[] current = sorted(currentIds);
+        long[] desired = sorted(desiredIds);
+        long[] added = new long[desired.length];
+        long[] removed = new long[current.length];
+        int addedCount = 0;
+        int removedCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.length || j < desired.length) {
+            if (j == desired.length || (i < current.length && current[i] < desired[j])) {
+                removed[removedCount++] = current[i++];
+            } else if (i == current.length || desired[j] < current[i]) {
+                added[addedCount++] = desired[j++];
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return new AssetIdDelta(trim(added, addedCount), trim(removed, removedCount));
+    }
+
+    public long[] getAdded() {
+        return added;
+    }
+
+    public long[] getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return true if the two id sets are equal
+     */
+    public boolean isEmpty() {
+        return added.length == 0 && removed.length == 0;
+    }
+
+    private static long[] sorted(long[] ids) {
+        if (ids == null || ids.length == 0)
+            return NO_IDS;
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int distinct = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[distinct - 1])
+                sorted[distinct++] = sorted[i];
+        }
+        return trim(sorted, distinct);
+    }
+
+    private static long[] trim(long[] ids, int length) {
+        if (length == 0)
+            return NO_IDS;
+        return length == ids.length ? ids : Arrays.copyOf(ids, length);
+    }
+}
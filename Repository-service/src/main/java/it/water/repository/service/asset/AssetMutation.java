@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.asset;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Asset ids to associate to and to dissociate from one resource, part of a bulk asset operation.
+ */
+public class AssetMutation {
+    private final long resourceId;
+    private final long[] addedIds;
+    private final long[] removedIds;
+
+    public AssetMutation(long resourceId, long[] addedIds, long[] removedIds) {
+        this.resourceId = resourceId;
+        this.addedIds = addedIds;
+        this.removedIds = removedIds;
+    }
+
+    /**
+     * @param resourceId resource id
+     * @param currentIds ids currently associated to the resource, null if none
+     * @param desiredIds ids which must be associated to the resource, null if none
+     * @return the mutation or null if the resource is already up to date
+     */
+    public static AssetMutation of(long resourceId, long[] currentIds, long[] desiredIds) {
+        AssetIdDelta delta = AssetIdDelta.of(currentIds, desiredIds);
+        return delta.isEmpty() ? null : new AssetMutation(resourceId, delta.getAdded(), delta.getRemoved());
+    }
+
+    public long getResourceId() {
+        return resourceId;
+    }
+
+    public long[] getAddedIds() {
+        return addedIds;
+    }
+
+    public long[] getRemovedIds() {
+        return removedIds;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.cache;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.registry.model.exception.NoComponentRegistryFoundException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Caches the resolution of an optional component from the component registry.
+ * A found component is cached for positiveTtlMillis, a missing one is cached as a negative result
+ * for negativeTtlMillis, so services do not query the registry on every call.
+ * <p>
+ * The registry does not notify lookups by itself, so the ttls bound how long a registration or an unregistration
+ * goes unnoticed: an unregistered component may still be returned for up to positiveTtlMillis.
+ * Component registration and unregistration callbacks, where available, can call invalidateAll
+ * with the class of the changed component to make it visible immediately.
+ */
+public class CachedComponentLookup<C> {
+    public static final long DEFAULT_POSITIVE_TTL_MILLIS = 30000;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5000;
+
+    private static final Set<CachedComponentLookup<?>> activeLookups = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final Class<C> componentClass;
+    private final Supplier<ComponentRegistry> registrySupplier;
+    private final long positiveTtlNanos;
+    private final long negativeTtlNanos;
+    private final Runnable onMissing;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder registryLookups = new LongAdder();
+    private volatile Resolution<C> resolution;
+
+    public CachedComponentLookup(Class<C> componentClass, Supplier<ComponentRegistry> registrySupplier) {
+        this(componentClass, registrySupplier, DEFAULT_NEGATIVE_TTL_MILLIS, null);
+    }
+
+    /**
+     * @param componentClass    class of the component to resolve
+     * @param registrySupplier  supplier of the registry, read on every lookup
+     * @param negativeTtlMillis how long a missing component is cached, 0 to never cache it
+     * @param onMissing         optional callback invoked when a registry lookup finds no component
+     */
+    public CachedComponentLookup(Class<C> componentClass, Supplier<ComponentRegistry> registrySupplier, long negativeTtlMillis, Runnable onMissing) {
+        this(componentClass, registrySupplier, DEFAULT_POSITIVE_TTL_MILLIS, negativeTtlMillis, onMissing);
+    }
+
+    /**
+     * @param componentClass    class of the component to resolve
+     * @param registrySupplier  supplier of the registry, read on every lookup
+     * @param positiveTtlMillis how long a found component is cached, 0 to never cache it
+     * @param negativeTtlMillis how long a missing component is cached, 0 to never cache it
+     * @param onMissing         optional callback invoked when a registry lookup finds no component
+     */
+    public CachedComponentLookup(Class<C> componentClass, Supplier<ComponentRegistry> registrySupplier, long positiveTtlMillis, long negativeTtlMillis, Runnable onMissing) {
+        if (positiveTtlMillis < 0)
+            throw new IllegalArgumentException("Positive ttl must be greater than or equal to 0");
+        if (negativeTtlMillis < 0)
+            throw new IllegalArgumentException("Negative ttl must be greater than or equal to 0");
+        this.componentClass = componentClass;
+        this.registrySupplier = registrySupplier;
+        this.positiveTtlNanos = positiveTtlMillis * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000L;
+        this.onMissing = onMissing;
+        activeLookups.add(this);
+    }
+
+    /**
+     * @return the cached component, resolving it from the registry when not cached, or null if none is registered
+     */
+    public C get() {
+        Resolution<C> current = this.resolution;
+        long currentGeneration = generation.get();
+        if (current != null && current.generation == currentGeneration
+                && System.nanoTime() - current.resolvedAt < (current.component != null ? positiveTtlNanos : negativeTtlNanos))
+            return current.component;
+        C component = lookup();
+        //a lookup started before an invalidation must not overwrite it
+        if (generation.get() == currentGeneration)
+            this.resolution = new Resolution<>(component, currentGeneration, System.nanoTime());
+        return component;
+    }
+
+    /**
+     * Discards the cached resolution, the next get queries the registry again
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        this.resolution = null;
+    }
+
+    public Class<C> getComponentClass() {
+        return componentClass;
+    }
+
+    /**
+     * @return number of lookups which reached the registry
+     */
+    public long getRegistryLookups() {
+        return registryLookups.sum();
+    }
+
+    /**
+     * Invalidates every live lookup of a component class assignable from the given one.
+     * Meant to be called from component registration and unregistration callbacks, without them changes are seen once the ttl expires.
+     *
+     * @param changedComponentClass class of the registered or unregistered component
+     */
+    public static void invalidateAll(Class<?> changedComponentClass) {
+        List<CachedComponentLookup<?>> toInvalidate = new ArrayList<>();
+        synchronized (activeLookups) {
+            for (CachedComponentLookup<?> lookup : activeLookups) {
+                if (lookup.componentClass.isAssignableFrom(changedComponentClass))
+                    toInvalidate.add(lookup);
+            }
+        }
+        toInvalidate.forEach(CachedComponentLookup::invalidate);
+    }
+
+    private C lookup() {
+        registryLookups.increment();
+        ComponentRegistry registry = registrySupplier.get();
+        C component = null;
+        if (registry != null) {
+            try {
+                component = registry.findComponent(componentClass, null);
+            } catch (NoComponentRegistryFoundException e) {
+                component = null;
+            }
+        }
+        if (component == null && onMissing != null)
+            onMissing.run();
+        return component;
+    }
+
+    private static class Resolution<C> {
+        private final C component;
+        private final long generation;
+        private final long resolvedAt;
+
+        private Resolution(C component, long generation, long resolvedAt) {
+            this.component = component;
+            this.generation = generation;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.cache;
+
+import it.water.core.api.repository.query.Query;
+import it.water.repository.entity.model.CountResult;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Cache of the counts of an entity type, keyed by the filter definition, which includes both the query shape and its values.
+ * Every write to the entity type invalidates all the counts, the staleness bound limits the age of the counts served
+ * when the entities are written elsewhere, ex. by another node.
+ * Counts computed while a write happens are not cached, since they may miss it.
+ */
+public class CountCache {
+    private static final String NO_FILTER = "";
+
+    private final int maxSize;
+    private final long maxStalenessNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize            max number of cached filters, further counts are not cached
+     * @param maxStalenessMillis max age of the counts served from the cache in milliseconds
+     */
+    public CountCache(int maxSize, long maxStalenessMillis) {
+        if (maxSize <= 0 || maxStalenessMillis <= 0)
+            throw new IllegalArgumentException("Count cache size and staleness bound must be greater than 0");
+        this.maxSize = maxSize;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+    }
+
+    /**
+     * @param filter count filter
+     * @return the cached count or null if missing, expired or the filter cannot be cached
+     */
+    public CountResult get(Query filter) {
+        String key = keyOf(filter);
+        if (key == null)
+            return null;
+        Entry entry = entries.get(key);
+        long age = entry != null ? System.nanoTime() - entry.computedAt : 0;
+        if (entry == null || age > maxStalenessNanos) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new CountResult(entry.count, false, TimeUnit.NANOSECONDS.toMillis(age));
+    }
+
+    /**
+     * @return the current write generation, to be read before counting and passed to put
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * @param filter           count filter
+     * @param countGeneration  write generation read before counting
+     * @param count            exact count
+     */
+    public void put(Query filter, long countGeneration, long count) {
+        String key = keyOf(filter);
+        if (key == null)
+            return;
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            long now = System.nanoTime();
+            entries.values().removeIf(entry -> now - entry.computedAt > maxStalenessNanos);
+            if (entries.size() >= maxSize)
+                return;
+        }
+        entries.put(key, new Entry(count));
+        //a write happened meanwhile: the count may not include it
+        if (generation.get() != countGeneration)
+            entries.remove(key);
+    }
+
+    /**
+     * Discards all the counts, to be called after each write to the entity type
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        if (!entries.isEmpty()) {
+            entries.clear();
+            invalidations.increment();
+        }
+    }
+
+    public CountCacheStatistics getStatistics() {
+        return new CountCacheStatistics(hits.sum(), misses.sum(), invalidations.sum(), entries.size());
+    }
+
+    private static String keyOf(Query filter) {
+        return filter == null ? NO_FILTER : filter.getDefinition();
+    }
+
+    private static class Entry {
+        private final long count;
+        private final long computedAt = System.nanoTime();
+
+        private Entry(long count) {
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.cache;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the count cache counters.
+ */
+public class CountCacheStatistics {
+    @Getter
+    private final long hits;
+    /**
+     * Counts which reached the repository, including expired ones
+     */
+    @Getter
+    private final long misses;
+    /**
+     * Writes which discarded cached counts
+     */
+    @Getter
+    private final long invalidations;
+    @Getter
+    private final int size;
+
+    public CountCacheStatistics(long hits, long misses, long invalidations, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.invalidations = invalidations;
+        this.size = size;
+    }
+
+    /**
+     * @return hits / all the requests, 0 when the cache has never been queried
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
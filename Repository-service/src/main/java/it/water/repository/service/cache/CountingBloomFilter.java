@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Counting Bloom filter on long ids, supporting removals.
+ * Counters are 4 bits wide, packed 8 per int and updated with CAS, so the filter is thread safe
+ * and uses half a byte per counter. Saturated counters are never decremented, which keeps the filter
+ * free of false negatives at the price of a slightly higher false positive rate.
+ */
+public class CountingBloomFilter {
+    private static final int COUNTERS_PER_INT = 8;
+    private static final int COUNTER_BITS = 4;
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicIntegerArray counters;
+    private final int numCounters;
+    private final int numHashFunctions;
+    private final LongAdder elements = new LongAdder();
+
+    /**
+     * @param expectedInsertions expected number of ids
+     * @param falsePositiveRate  desired false positive rate, between 0 and 1 excluded
+     */
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0)
+            throw new IllegalArgumentException("Expected insertions must be greater than 0");
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        long size = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.numCounters = (int) Math.min(Math.max(size, COUNTERS_PER_INT), (long) Integer.MAX_VALUE - COUNTERS_PER_INT);
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numCounters / expectedInsertions * Math.log(2)));
+        this.counters = new AtomicIntegerArray((numCounters + COUNTERS_PER_INT - 1) / COUNTERS_PER_INT);
+    }
+
+    /**
+     * @param id id to add
+     */
+    public void add(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < numHashFunctions; i++)
+            increment(index(h1, h2, i));
+        elements.increment();
+    }
+
+    /**
+     * @param id id to remove, it must have been added before
+     */
+    public void remove(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < numHashFunctions; i++)
+            decrement(index(h1, h2, i));
+        elements.decrement();
+    }
+
+    /**
+     * @param id id to check
+     * @return false if the id has definitely never been added, true if it may have been added
+     */
+    public boolean mightContain(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            if (count(index(h1, h2, i)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return approximate number of ids currently in the filter
+     */
+    public long getApproximateElementCount() {
+        return Math.max(0, elements.sum());
+    }
+
+    /**
+     * @return the theoretical false positive rate for the current number of elements
+     */
+    public double getExpectedFalsePositiveRate() {
+        double n = getApproximateElementCount();
+        return Math.pow(1 - Math.exp(-numHashFunctions * n / numCounters), numHashFunctions);
+    }
+
+    /**
+     * @return memory used by the counters, in bytes
+     */
+    public long getMemoryUsageBytes() {
+        return (long) counters.length() * Integer.BYTES;
+    }
+
+    public int getNumCounters() {
+        return numCounters;
+    }
+
+    public int getNumHashFunctions() {
+        return numHashFunctions;
+    }
+
+    private int index(long h1, long h2, int i) {
+        return (int) Long.remainderUnsigned(h1 + i * h2, numCounters);
+    }
+
+    private int count(int index) {
+        int shift = (index % COUNTERS_PER_INT) * COUNTER_BITS;
+        return (counters.get(index / COUNTERS_PER_INT) >>> shift) & MAX_COUNT;
+    }
+
+    private void increment(int index) {
+        int slot = index / COUNTERS_PER_INT;
+        int shift = (index % COUNTERS_PER_INT) * COUNTER_BITS;
+        int current;
+        do {
+            current = counters.get(slot);
+            if (((current >>> shift) & MAX_COUNT) == MAX_COUNT)
+                return;
+        } while (!counters.compareAndSet(slot, current, current + (1 << shift)));
+    }
+
+    private void decrement(int index) {
+        int slot = index / COUNTERS_PER_INT;
+        int shift = (index % COUNTERS_PER_INT) * COUNTER_BITS;
+        int current;
+        do {
+            current = counters.get(slot);
+            int count = (current >>> shift) & MAX_COUNT;
+            //saturated counters have lost their exact value, zero means the id was never added
+            if (count == MAX_COUNT || count == 0)
+                return;
+        } while (!counters.compareAndSet(slot, current, current - (1 << shift)));
+    }
+
+    /**
+     * Murmur3 64 bit finalizer, spreads sequential ids over the whole counter space
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
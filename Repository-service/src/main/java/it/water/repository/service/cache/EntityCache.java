@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.cache;
+
+import it.water.core.api.model.BaseEntity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * @param <T> cached entity type
+ * @Author Aristide Cittadino.
+ * Bounded, LRU, read-through cache of entities indexed by id.
+ * Entries are version-aware: a copy carrying an entityVersion older than the one already cached is never stored,
+ * so the cache never serves a copy older than one it has already seen.
+ * Invalidations drop the entry and bump a generation, loads started before an invalidation are not stored.
+ * Every entity is copied when entering and when leaving the cache, so callers mutating the returned instances
+ * never alter the cached state.
+ */
+public class EntityCache<T extends BaseEntity> {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final UnaryOperator<T> copier;
+    private final Map<Long, Entry<T>> entries;
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder staleRejections = new LongAdder();
+
+    /**
+     * @param maxSize   max number of cached entities
+     * @param ttlMillis entry time to live in milliseconds, values less or equal to 0 mean no expiration
+     * @param copier    function used to create isolated copies of the entities
+     */
+    public EntityCache(int maxSize, long ttlMillis, UnaryOperator<T> copier) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Entity cache size must be greater than 0");
+        if (copier == null)
+            throw new IllegalArgumentException("Entity cache requires an entity copier");
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : 0;
+        this.copier = copier;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest) {
+                boolean evict = size() > EntityCache.this.maxSize;
+                if (evict)
+                    evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * @param id entity id
+     * @return a copy of the cached entity or null if not present or expired
+     */
+    public T get(long id) {
+        T cached = null;
+        synchronized (this) {
+            Entry<T> entry = entries.get(id);
+            if (entry != null && entry.isExpired(ttlNanos)) {
+                entries.remove(id);
+                entry = null;
+            }
+            if (entry != null)
+                cached = entry.value;
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copier.apply(cached);
+    }
+
+    /**
+     * @return the current invalidation generation, to be read before loading an entity and passed to loaded
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Stores an entity just read from the repository.
+     * The entity is ignored if a newer version has already been cached or if an entity has been invalidated
+     * since the load started, because the loaded copy may predate the invalidation.
+     *
+     * @param entity         loaded entity
+     * @param loadGeneration invalidation generation read before loading the entity
+     */
+    public void loaded(T entity, long loadGeneration) {
+        store(entity, loadGeneration);
+    }
+
+    /**
+     * Stores an entity just written to the repository, it never replaces newer versions.
+     *
+     * @param entity saved or updated entity
+     */
+    public void written(T entity) {
+        store(entity, -1);
+    }
+
+    /**
+     * Drops the entry with the given id, concurrent loads started before the invalidation cannot put it back.
+     *
+     * @param id entity id
+     */
+    public synchronized void invalidate(long id) {
+        entries.remove(id);
+        generation++;
+    }
+
+    /**
+     * Empties the cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return current cache statistics
+     */
+    public EntityCacheStatistics getStatistics() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new EntityCacheStatistics(hits.sum(), misses.sum(), evictions.sum(), staleRejections.sum(), size, maxSize);
+    }
+
+    /**
+     * @param loadGeneration invalidation generation read before loading the entity, -1 for written entities
+     */
+    private void store(T entity, long loadGeneration) {
+        if (entity == null)
+            return;
+        long version = entity.getEntityVersion() != null ? entity.getEntityVersion() : Long.MIN_VALUE;
+        T copy = copier.apply(entity);
+        synchronized (this) {
+            Entry<T> current = entries.get(entity.getId());
+            boolean stale = (loadGeneration >= 0 && loadGeneration != generation)
+                    || (current != null && !current.isExpired(ttlNanos) && version < current.version);
+            if (stale) {
+                staleRejections.increment();
+                return;
+            }
+            entries.put(entity.getId(), new Entry<>(copy, version, System.nanoTime()));
+        }
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long version;
+        private final long createdAt;
+
+        private Entry(T value, long version, long createdAt) {
+            this.value = value;
+            this.version = version;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(long ttlNanos) {
+            return ttlNanos > 0 && System.nanoTime() - createdAt > ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.cache;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the entity cache counters.
+ */
+public class EntityCacheStatistics {
+    @Getter
+    private final long hits;
+    @Getter
+    private final long misses;
+    @Getter
+    private final long evictions;
+    /**
+     * Number of copies refused because older than the cached one
+     */
+    @Getter
+    private final long staleRejections;
+    @Getter
+    private final int size;
+    @Getter
+    private final int maxSize;
+
+    public EntityCacheStatistics(long hits, long misses, long evictions, long staleRejections, int size, int maxSize) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.staleRejections = staleRejections;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return hits / (hits + misses), 0 when the cache has never been queried
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Negative lookup cache for entity ids backed by a counting Bloom filter.
+ * The filter answers lookups only once seeded: before that every id may exist.
+ * Removals received while seeding are ignored, since the removed id may not have been added yet:
+ * this only leaves stale positives behind, never false negatives.
+ */
+public class ExistenceFilter {
+    private final CountingBloomFilter bloomFilter;
+    private volatile boolean ready;
+    private final LongAdder definiteMisses = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public ExistenceFilter(long expectedInsertions, double falsePositiveRate) {
+        this.bloomFilter = new CountingBloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    /**
+     * @param id id of an existing entity
+     */
+    public void add(long id) {
+        bloomFilter.add(id);
+    }
+
+    /**
+     * @param id id of a removed entity
+     */
+    public void remove(long id) {
+        if (ready)
+            bloomFilter.remove(id);
+    }
+
+    /**
+     * Marks the end of the seeding phase
+     */
+    public void markReady() {
+        this.ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @param id id to check
+     * @return true if the entity with the given id definitely does not exist
+     */
+    public boolean isDefinitelyAbsent(long id) {
+        if (!ready || bloomFilter.mightContain(id))
+            return false;
+        definiteMisses.increment();
+        return true;
+    }
+
+    /**
+     * Records a lookup let through by the filter for an id which does not exist
+     */
+    public void falsePositive() {
+        if (ready)
+            falsePositives.increment();
+    }
+
+    public ExistenceFilterStatistics getStatistics() {
+        return new ExistenceFilterStatistics(definiteMisses.sum(), falsePositives.sum(), bloomFilter.getApproximateElementCount(),
+                bloomFilter.getExpectedFalsePositiveRate(), bloomFilter.getMemoryUsageBytes());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.cache;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the existence filter metrics.
+ */
+public class ExistenceFilterStatistics {
+    /**
+     * Lookups rejected by the filter without reaching the repository
+     */
+    @Getter
+    private final long definiteMisses;
+    /**
+     * Lookups let through by the filter for ids the repository did not find
+     */
+    @Getter
+    private final long falsePositives;
+    @Getter
+    private final long approximateElementCount;
+    @Getter
+    private final double expectedFalsePositiveRate;
+    @Getter
+    private final long memoryUsageBytes;
+
+    public ExistenceFilterStatistics(long definiteMisses, long falsePositives, long approximateElementCount, double expectedFalsePositiveRate, long memoryUsageBytes) {
+        this.definiteMisses = definiteMisses;
+        this.falsePositives = falsePositives;
+        this.approximateElementCount = approximateElementCount;
+        this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+        this.memoryUsageBytes = memoryUsageBytes;
+    }
+
+    /**
+     * @return fraction of lookups on nonexistent ids which the filter failed to reject
+     */
+    public double getObservedFalsePositiveRate() {
+        long nonexistentLookups = definiteMisses + falsePositives;
+        return nonexistentLookups == 0 ? 0 : (double) falsePositives / nonexistentLookups;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Cache of the ids of the entities shared with a user, indexed by entity type and user id.
+ * Concurrent misses on the same key wait for a single lookup instead of repeating it.
+ * Entries expire after a time to live. Share and unshare operations are not notified to the cache,
+ * so unless their caller invokes invalidateAll the time to live is the only invalidation:
+ * a revoked share may keep granting visibility to the user for up to ttlMillis.
+ */
+public class SharedEntityIdCache {
+    private static final Set<SharedEntityIdCache> activeCaches = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalescedMisses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder totalHitAgeNanos = new LongAdder();
+    private final AtomicLong maxHitAgeNanos = new AtomicLong();
+
+    /**
+     * @param maxSize   max number of cached (entity type, user) pairs, further lookups are not cached
+     * @param ttlMillis entry time to live in milliseconds
+     */
+    public SharedEntityIdCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0 || ttlMillis <= 0)
+            throw new IllegalArgumentException("Shared entity id cache size and ttl must be greater than 0");
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        activeCaches.add(this);
+    }
+
+    /**
+     * @param entityType entity type name
+     * @param userId     user id
+     * @param loader     fetches the shared ids on a miss
+     * @return unmodifiable set of the ids of the entities of the given type shared with the user
+     */
+    public Set<Long> get(String entityType, long userId, Supplier<Collection<Long>> loader) {
+        Key key = new Key(entityType, userId);
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.future.isDone()) {
+                coalescedMisses.increment();
+                return await(entry.future);
+            }
+            if (entry != null && !entry.isExpired(ttlNanos)) {
+                hit(entry);
+                return entry.future.join();
+            }
+            if (entry != null && entries.remove(key, entry))
+                expirations.increment();
+            Entry created = new Entry();
+            if (!reserve(key, created))
+                continue;
+            misses.increment();
+            try {
+                Set<Long> ids = normalize(loader.get());
+                created.complete(ids);
+                return ids;
+            } catch (RuntimeException e) {
+                entries.remove(key, created);
+                created.future.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param entityType entity type name
+     * @param userId     user id
+     */
+    public void invalidate(String entityType, long userId) {
+        if (entries.remove(new Key(entityType, userId)) != null)
+            invalidations.increment();
+    }
+
+    /**
+     * @param entityType entity type name, all its users are invalidated
+     */
+    public void invalidate(String entityType) {
+        entries.keySet().removeIf(key -> {
+            boolean matches = key.entityType.equals(entityType);
+            if (matches)
+                invalidations.increment();
+            return matches;
+        });
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public SharedEntityIdCacheStatistics getStatistics() {
+        long hitCount = hits.sum();
+        return new SharedEntityIdCacheStatistics(hitCount, misses.sum(), coalescedMisses.sum(), invalidations.sum(), expirations.sum(),
+                entries.size(), hitCount == 0 ? 0 : (double) totalHitAgeNanos.sum() / hitCount / TimeUnit.MILLISECONDS.toNanos(1),
+                TimeUnit.NANOSECONDS.toMillis(maxHitAgeNanos.get()));
+    }
+
+    /**
+     * Invalidates the given user in every live cache, callers sharing or unsharing an entity
+     * can invoke it to make the change visible before the entry expires
+     *
+     * @param entityType entity type name
+     * @param userId     user id
+     */
+    public static void invalidateAll(String entityType, long userId) {
+        forEachCache(cache -> cache.invalidate(entityType, userId));
+    }
+
+    /**
+     * Invalidates all the users of the given entity type in every live cache,
+     * to be called when the affected users are unknown, ex. when a shared entity is removed
+     *
+     * @param entityType entity type name
+     */
+    public static void invalidateAll(String entityType) {
+        forEachCache(cache -> cache.invalidate(entityType));
+    }
+
+    private static void forEachCache(Consumer<SharedEntityIdCache> action) {
+        SharedEntityIdCache[] caches;
+        synchronized (activeCaches) {
+            caches = activeCaches.toArray(new SharedEntityIdCache[0]);
+        }
+        for (SharedEntityIdCache cache : caches)
+            action.accept(cache);
+    }
+
+    /**
+     * @return false if another thread started loading the key meanwhile
+     */
+    private boolean reserve(Key key, Entry created) {
+        if (entries.size() >= maxSize) {
+            entries.values().removeIf(entry -> entry.future.isDone() && entry.isExpired(ttlNanos));
+            //full of live entries: the lookup is performed without caching its result
+            if (entries.size() >= maxSize)
+                return true;
+        }
+        return entries.putIfAbsent(key, created) == null;
+    }
+
+    private void hit(Entry entry) {
+        hits.increment();
+        long age = System.nanoTime() - entry.loadedAt;
+        totalHitAgeNanos.add(age);
+        maxHitAgeNanos.accumulateAndGet(age, Math::max);
+    }
+
+    private static Set<Long> await(CompletableFuture<Set<Long>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    private static Set<Long> normalize(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty())
+            return Collections.emptySet();
+        Set<Long> normalized = new LinkedHashSet<>(ids);
+        normalized.remove(null);
+        return Collections.unmodifiableSet(normalized);
+    }
+
+    private static class Entry {
+        private final CompletableFuture<Set<Long>> future = new CompletableFuture<>();
+        private volatile long loadedAt;
+
+        private void complete(Set<Long> ids) {
+            this.loadedAt = System.nanoTime();
+            future.complete(ids);
+        }
+
+        private boolean isExpired(long ttlNanos) {
+            return System.nanoTime() - loadedAt > ttlNanos;
+        }
+    }
+
+    private static class Key {
+        private final String entityType;
+        private final long userId;
+
+        private Key(String entityType, long userId) {
+            this.entityType = entityType;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key key))
+                return false;
+            return userId == key.userId && entityType.equals(key.entityType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityType, userId);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.cache;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the shared entity id cache counters.
+ */
+public class SharedEntityIdCacheStatistics {
+    @Getter
+    private final long hits;
+    /**
+     * Lookups which reached the shared entity integration client
+     */
+    @Getter
+    private final long misses;
+    /**
+     * Misses which waited for a lookup already in progress for the same key
+     */
+    @Getter
+    private final long coalescedMisses;
+    @Getter
+    private final long invalidations;
+    @Getter
+    private final long expirations;
+    @Getter
+    private final int size;
+    /**
+     * Average age of the id sets served from the cache, an upper bound of how stale they may be
+     */
+    @Getter
+    private final double averageHitAgeMillis;
+    @Getter
+    private final long maxHitAgeMillis;
+
+    public SharedEntityIdCacheStatistics(long hits, long misses, long coalescedMisses, long invalidations, long expirations, int size, double averageHitAgeMillis, long maxHitAgeMillis) {
+        this.hits = hits;
+        this.misses = misses;
+        this.coalescedMisses = coalescedMisses;
+        this.invalidations = invalidations;
+        this.expirations = expirations;
+        this.size = size;
+        this.averageHitAgeMillis = averageHitAgeMillis;
+        this.maxHitAgeMillis = maxHitAgeMillis;
+    }
+
+    /**
+     * @return hits / all the requests, 0 when the cache has never been queried
+     */
+    public double getHitRatio() {
+        long requests = hits + misses + coalescedMisses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
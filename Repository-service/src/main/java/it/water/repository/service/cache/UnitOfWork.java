@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.cache;
+
+import it.water.core.api.model.BaseEntity;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Identity map bound to the current invocation: while a unit of work is open on the thread,
+ * system services return the same instance for repeated find by id of the same entity instead of reading it again.
+ * Entities are flushed from the map whenever they are written, so later reads see the persisted state.
+ * The unit of work also memoizes the permission decisions taken by services on single entities,
+ * by (user, entity type, id, action), dropped together with the entity when it is written.
+ * <p>
+ * Units of work are opt-in and nest: begin joins the unit of work already open on the thread,
+ * which is discarded when the outermost scope is closed.
+ * <pre>
+ * try (UnitOfWork unitOfWork = UnitOfWork.begin()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> currentUnitOfWork = new ThreadLocal<>();
+
+    private final Map<String, BaseEntity> identityMap = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, PermissionDecision>> permissionDecisions = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder decisionHits = new LongAdder();
+    private final Thread owner = Thread.currentThread();
+    /**
+     * Open scopes on the owner thread, other threads never change it
+     */
+    private int depth;
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Opens a unit of work on the current thread or joins the one already open.
+     * A unit of work propagated to another thread through callWithin is joined without opening a scope,
+     * so only its owner thread decides when it is discarded.
+     *
+     * @return the scope to close
+     */
+    public static UnitOfWork begin() {
+        UnitOfWork unitOfWork = currentUnitOfWork.get();
+        if (unitOfWork == null) {
+            unitOfWork = new UnitOfWork();
+            currentUnitOfWork.set(unitOfWork);
+        }
+        if (Thread.currentThread() == unitOfWork.owner)
+            unitOfWork.depth++;
+        return unitOfWork;
+    }
+
+    /**
+     * @return the unit of work open on the current thread, null if none
+     */
+    public static UnitOfWork current() {
+        return currentUnitOfWork.get();
+    }
+
+    /**
+     * Runs the operation on the current thread within the given unit of work, used to propagate it to async tasks.
+     *
+     * @param unitOfWork unit of work of the calling thread, can be null
+     * @param operation  operation to run
+     * @return the operation result
+     */
+    public static <R> R callWithin(UnitOfWork unitOfWork, Supplier<R> operation) {
+        UnitOfWork previous = currentUnitOfWork.get();
+        if (unitOfWork == previous)
+            return operation.get();
+        currentUnitOfWork.set(unitOfWork);
+        try {
+            return operation.get();
+        } finally {
+            if (previous != null)
+                currentUnitOfWork.set(previous);
+            else
+                currentUnitOfWork.remove();
+        }
+    }
+
+    /**
+     * @return the entity loaded in this unit of work, null if not loaded yet
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseEntity> T find(Class<T> type, long id) {
+        T entity = (T) identityMap.get(key(type, id));
+        if (entity != null)
+            hits.increment();
+        return entity;
+    }
+
+    /**
+     * @param type   entity type, entities are registered by service type since subclasses may be returned
+     * @param entity entity just loaded
+     */
+    public void loaded(Class<? extends BaseEntity> type, BaseEntity entity) {
+        if (entity != null)
+            identityMap.putIfAbsent(key(type, entity.getId()), entity);
+    }
+
+    /**
+     * Flushes the entity and the permission decisions taken on it after it has been written,
+     * since its owner may have changed
+     */
+    public void written(Class<? extends BaseEntity> type, long id) {
+        String key = key(type, id);
+        identityMap.remove(key);
+        permissionDecisions.remove(key);
+    }
+
+    /**
+     * Removes the entity from the map before a caller changes it, keeping the permission decisions taken on it
+     */
+    public void detach(Class<? extends BaseEntity> type, long id) {
+        identityMap.remove(key(type, id));
+    }
+
+    /**
+     * @return the decision taken in this unit of work, null if not taken yet
+     */
+    public PermissionDecision findPermissionDecision(long userId, Class<? extends BaseEntity> type, long id, String action) {
+        Map<String, PermissionDecision> decisions = permissionDecisions.get(key(type, id));
+        PermissionDecision decision = (decisions != null) ? decisions.get(decisionKey(userId, action)) : null;
+        if (decision != null)
+            decisionHits.increment();
+        return decision;
+    }
+
+    /**
+     * @param allowed     decision
+     * @param ownerUserId owner of the entity when the decision has been taken, null if not an OwnedResource
+     */
+    public void permissionDecided(long userId, Class<? extends BaseEntity> type, long id, String action, boolean allowed, Long ownerUserId) {
+        permissionDecisions.computeIfAbsent(key(type, id), key -> new ConcurrentHashMap<>())
+                .put(decisionKey(userId, action), new PermissionDecision(allowed, ownerUserId));
+    }
+
+    /**
+     * @return number of permission decisions served by the memo
+     */
+    public long getPermissionDecisionHits() {
+        return decisionHits.sum();
+    }
+
+    /**
+     * @return number of find by id served by the identity map
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public int size() {
+        return identityMap.size();
+    }
+
+    @Override
+    public void close() {
+        //closing a propagated unit of work from another thread must not discard it
+        if (Thread.currentThread() != owner || --depth > 0)
+            return;
+        identityMap.clear();
+        permissionDecisions.clear();
+        currentUnitOfWork.remove();
+    }
+
+    private static String key(Class<?> type, long id) {
+        return type.getName() + "#" + id;
+    }
+
+    private static String decisionKey(long userId, String action) {
+        return userId + "#" + action;
+    }
+
+    /**
+     * Permission decision taken on a single entity
+     */
+    public static final class PermissionDecision {
+        private final boolean allowed;
+        private final Long ownerUserId;
+
+        private PermissionDecision(boolean allowed, Long ownerUserId) {
+            this.allowed = allowed;
+            this.ownerUserId = ownerUserId;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        public Long getOwnerUserId() {
+            return ownerUserId;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Default executor for the async service methods.
+ * Uses one virtual thread per task when the runtime supports them (Java 21+),
+ * otherwise a shared cached pool of daemon threads, since async tasks mostly block on the repository.
+ */
+public class AsyncExecutors {
+    private static final Logger log = LoggerFactory.getLogger(AsyncExecutors.class);
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * @return the shared default executor, created on first use
+     */
+    public static ExecutorService defaultExecutor() {
+        return Holder.DEFAULT_EXECUTOR;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        try {
+            //looked up reflectively to keep running on Java 17
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.debug("Async service methods running on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            log.debug("Virtual threads not available, async service methods running on a cached thread pool");
+            AtomicInteger threadCounter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "water-async-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static final class Holder {
+        private static final ExecutorService DEFAULT_EXECUTOR = createDefaultExecutor();
+    }
+}
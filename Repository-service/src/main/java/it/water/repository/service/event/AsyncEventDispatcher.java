@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.model.events.Event;
+import it.water.repository.service.patch.EntityPatcher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Delivers events on dedicated dispatcher threads, so that slow listeners do not add to the latency of the caller.
+ * Each dispatcher thread drains its own pre-allocated ring buffer and every entity type is bound to one of them,
+ * so events of the same entity type are delivered in publication order.
+ * The only exception is the CALLER_RUNS overflow policy: an event published while the ring buffer is full
+ * is delivered on the publishing thread, before the events of the same type still queued.
+ * Events published after close are delivered on the publishing thread once the queued ones have been delivered.
+ * <p>
+ * Queued events carry a snapshot of their entities, taken when they are published, so listeners do not see
+ * the changes made by the caller afterwards. The snapshot is a shallow copy keeping the dirty fields of AbstractEntity instances:
+ * collections and referenced objects are still shared with the caller.
+ * Listeners run without the security context of the publishing thread.
+ * One dispatcher can be shared by the services of many entity types.
+ */
+public class AsyncEventDispatcher implements AutoCloseable {
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final EventRingBuffer[] ringBuffers;
+    private final Thread[] dispatcherThreads;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+
+    public AsyncEventDispatcher() {
+        this(new AsyncEventOptions());
+    }
+
+    public AsyncEventDispatcher(AsyncEventOptions options) {
+        if (options.getCapacity() <= 0 || options.getDispatcherThreads() <= 0)
+            throw new IllegalArgumentException("Capacity and dispatcher threads must be greater than 0");
+        int capacity = Integer.highestOneBit(Math.max(2, options.getCapacity() * 2 - 1));
+        this.overflowPolicy = options.getOverflowPolicy();
+        this.ringBuffers = new EventRingBuffer[options.getDispatcherThreads()];
+        this.dispatcherThreads = new Thread[ringBuffers.length];
+        for (int i = 0; i < ringBuffers.length; i++) {
+            ringBuffers[i] = new EventRingBuffer(capacity, options.getProducerType(), options.getWaitStrategy(), overflowPolicy);
+            dispatcherThreads[i] = new Thread(ringBuffers[i], "water-event-dispatcher-" + i);
+            dispatcherThreads[i].setDaemon(true);
+            dispatcherThreads[i].start();
+        }
+    }
+
+    /**
+     * @param eventProducer producer delivering the event to listeners
+     * @param entityType    entity type, selecting the ring buffer
+     * @param entity        entity the event refers to
+     * @param eventClass    event class
+     */
+    public void produceEvent(ApplicationEventProducer eventProducer, Class<?> entityType, BaseEntity entity, Class<? extends Event> eventClass) {
+        publish(eventProducer, entityType, null, entity, eventClass, false);
+    }
+
+    /**
+     * @param eventProducer producer delivering the event to listeners
+     * @param entityType    entity type, selecting the ring buffer
+     * @param entityBefore  entity before the change
+     * @param entity        entity after the change
+     * @param eventClass    event class
+     */
+    public void produceDetailedEvent(ApplicationEventProducer eventProducer, Class<?> entityType, BaseEntity entityBefore, BaseEntity entity, Class<? extends Event> eventClass) {
+        publish(eventProducer, entityType, entityBefore, entity, eventClass, true);
+    }
+
+    public AsyncEventStatistics getStatistics() {
+        long dispatched = 0;
+        long failed = 0;
+        long depth = 0;
+        long currentLag = 0;
+        long maxLag = 0;
+        long totalLag = 0;
+        for (EventRingBuffer ringBuffer : ringBuffers) {
+            dispatched += ringBuffer.getDispatched();
+            failed += ringBuffer.getFailed();
+            depth += ringBuffer.getDepth();
+            currentLag = Math.max(currentLag, ringBuffer.getCurrentLagNanos());
+            maxLag = Math.max(maxLag, ringBuffer.getMaxLagNanos());
+            totalLag += ringBuffer.getTotalLagNanos();
+        }
+        double averageLagMillis = dispatched == 0 ? 0 : (double) totalLag / dispatched / TimeUnit.MILLISECONDS.toNanos(1);
+        return new AsyncEventStatistics(published.sum(), dispatched, dropped.sum(), callerRuns.sum(), failed, depth,
+                TimeUnit.NANOSECONDS.toMillis(currentLag), TimeUnit.NANOSECONDS.toMillis(maxLag), averageLagMillis);
+    }
+
+    public boolean isClosed() {
+        return !ringBuffers[0].isRunning();
+    }
+
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Stops accepting events, which are then delivered on the publishing thread after the events already queued,
+     * and waits for the dispatcher threads to deliver the events already published.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if all published events have been delivered
+     */
+    public boolean close(long timeoutMillis) {
+        for (EventRingBuffer ringBuffer : ringBuffers)
+            ringBuffer.close();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (Thread dispatcherThread : dispatcherThreads) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0)
+                    dispatcherThread.join(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Thread dispatcherThread : dispatcherThreads) {
+            if (dispatcherThread.isAlive())
+                return false;
+        }
+        return true;
+    }
+
+    private void publish(ApplicationEventProducer eventProducer, Class<?> entityType, BaseEntity entityBefore, BaseEntity entity, Class<? extends Event> eventClass, boolean detailed) {
+        int index = Math.floorMod(entityType.getName().hashCode(), ringBuffers.length);
+        EventRingBuffer ringBuffer = ringBuffers[index];
+        if (ringBuffer.isRunning() && ringBuffer.publish(eventProducer, snapshot(entityBefore), snapshot(entity), eventClass, detailed)) {
+            published.increment();
+        } else if (ringBuffer.isRunning() && overflowPolicy == OverflowPolicy.DROP) {
+            dropped.increment();
+        } else {
+            //full with caller runs policy, which gives up ordering, or closed: events are never lost
+            if (!ringBuffer.isRunning())
+                awaitDrained(dispatcherThreads[index]);
+            callerRuns.increment();
+            EventSlot.dispatch(eventProducer, entityBefore, entity, eventClass, detailed);
+        }
+    }
+
+    private static BaseEntity snapshot(BaseEntity entity) {
+        return (entity != null) ? EntityPatcher.snapshot(entity) : null;
+    }
+
+    /**
+     * Events published after close wait for the queued ones of their ring buffer, keeping the publication order
+     */
+    private static void awaitDrained(Thread dispatcherThread) {
+        //listeners publishing from the dispatcher thread cannot wait for themselves
+        if (dispatcherThread == Thread.currentThread())
+            return;
+        try {
+            dispatcherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import lombok.Getter;
+import lombok.Setter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Tuning options of the asynchronous event dispatcher.
+ */
+@Getter
+@Setter
+public class AsyncEventOptions {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_DISPATCHER_THREADS = 2;
+
+    /**
+     * Slots of each ring buffer, rounded up to the next power of two
+     */
+    private int capacity = DEFAULT_CAPACITY;
+    /**
+     * Number of ring buffers, each one drained by its own dispatcher thread.
+     * Events of the same entity type always go through the same ring buffer.
+     */
+    private int dispatcherThreads = DEFAULT_DISPATCHER_THREADS;
+    private ProducerType producerType = ProducerType.MULTI;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    /**
+     * BLOCK keeps the order of the events of each entity type, CALLER_RUNS and DROP do not
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the asynchronous event dispatcher metrics.
+ */
+@Getter
+public class AsyncEventStatistics {
+    /**
+     * Events handed to the ring buffers
+     */
+    private final long published;
+    /**
+     * Events delivered by the dispatcher threads
+     */
+    private final long dispatched;
+    /**
+     * Events discarded because their ring buffer was full
+     */
+    private final long dropped;
+    /**
+     * Events delivered on the publishing thread because their ring buffer was full or the dispatcher closed
+     */
+    private final long callerRuns;
+    /**
+     * Events whose listeners threw an exception
+     */
+    private final long failed;
+    /**
+     * Events published and not yet delivered
+     */
+    private final long queueDepth;
+    /**
+     * Age of the oldest event not yet delivered
+     */
+    private final long currentLagMillis;
+    /**
+     * Highest time spent by an event in the ring buffer
+     */
+    private final long maxLagMillis;
+    private final double averageLagMillis;
+
+    public AsyncEventStatistics(long published, long dispatched, long dropped, long callerRuns, long failed, long queueDepth, long currentLagMillis, long maxLagMillis, double averageLagMillis) {
+        this.published = published;
+        this.dispatched = dispatched;
+        this.dropped = dropped;
+        this.callerRuns = callerRuns;
+        this.failed = failed;
+        this.queueDepth = queueDepth;
+        this.currentLagMillis = currentLagMillis;
+        this.maxLagMillis = maxLagMillis;
+        this.averageLagMillis = averageLagMillis;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import it.water.core.api.model.events.Event;
+import it.water.repository.service.spi.EventInterestRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Reference counted registry of listener interests, which event producers can delegate to.
+ * An interest registered for an entity type also covers its subtypes, so interests on a common
+ * super type or interface match every entity type implementing it.
+ * Answers are cached per entity and event type and recomputed after each registration change.
+ */
+public class EventInterests implements EventInterestRegistry {
+    private final Map<InterestKey, Integer> listeners = new ConcurrentHashMap<>();
+    //replaced on registration changes, so answers computed concurrently on the old map are discarded
+    private volatile Map<InterestKey, Boolean> answers = new ConcurrentHashMap<>();
+
+    /**
+     * @param entityType entity type, or a super type of the entity types the listener is interested in
+     * @param eventClass event class
+     */
+    public void register(Class<?> entityType, Class<? extends Event> eventClass) {
+        listeners.merge(new InterestKey(entityType, eventClass), 1, Integer::sum);
+        answers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param entityType entity type used on registration
+     * @param eventClass event class used on registration
+     */
+    public void unregister(Class<?> entityType, Class<? extends Event> eventClass) {
+        listeners.computeIfPresent(new InterestKey(entityType, eventClass), (key, count) -> count > 1 ? count - 1 : null);
+        answers = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public boolean hasListeners(Class<?> entityType, Class<? extends Event> eventClass) {
+        return answers.computeIfAbsent(new InterestKey(entityType, eventClass), this::matches);
+    }
+
+    private boolean matches(InterestKey requested) {
+        return listeners.keySet().stream().anyMatch(interest -> interest.eventClass.isAssignableFrom(requested.eventClass)
+                && interest.entityType.isAssignableFrom(requested.entityType));
+    }
+
+    private record InterestKey(Class<?> entityType, Class<? extends Event> eventClass) {
+    }
+}
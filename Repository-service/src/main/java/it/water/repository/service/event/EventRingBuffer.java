@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.model.events.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Bounded ring buffer of events drained in publication order by a single dispatcher thread.
+ * Publishers claim a sequence, fill the pre-allocated slot in its position and publish it by writing the sequence
+ * in the slot availability array, which is what the dispatcher thread waits on.
+ */
+class EventRingBuffer implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(EventRingBuffer.class);
+    private static final int SPIN_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCKING_TIMEOUT_MILLIS = 10;
+
+    private final EventSlot[] slots;
+    private final AtomicLongArray available;
+    private final int capacity;
+    private final int mask;
+    private final ProducerType producerType;
+    private final WaitStrategy waitStrategy;
+    private final boolean blockWhenFull;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicInteger activePublishers = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLagNanos = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean running = true;
+
+    EventRingBuffer(int capacity, ProducerType producerType, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.producerType = producerType;
+        this.waitStrategy = waitStrategy;
+        this.blockWhenFull = overflowPolicy == OverflowPolicy.BLOCK;
+        this.slots = new EventSlot[capacity];
+        this.available = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new EventSlot();
+            available.set(i, -1);
+        }
+    }
+
+    /**
+     * @return false if the event has not been accepted, because the buffer is full or closed
+     */
+    boolean publish(ApplicationEventProducer eventProducer, BaseEntity entityBefore, BaseEntity entity, Class<? extends Event> eventClass, boolean detailed) {
+        //counted before checking running, so that close waits for publishers which saw the buffer open
+        activePublishers.incrementAndGet();
+        try {
+            if (!running)
+                return false;
+            long sequence = claim();
+            if (sequence < 0)
+                return false;
+            int index = (int) sequence & mask;
+            slots[index].set(eventProducer, entityBefore, entity, eventClass, detailed);
+            available.set(index, sequence);
+            if (waitStrategy == WaitStrategy.BLOCKING)
+                signalDispatcher();
+            return true;
+        } finally {
+            activePublishers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void run() {
+        long next = 0;
+        int idleCount = 0;
+        try {
+            while (true) {
+                int index = (int) next & mask;
+                if (available.get(index) == next) {
+                    dispatch(slots[index]);
+                    next++;
+                    this.consumed = next;
+                    idleCount = 0;
+                } else if (!running && activePublishers.get() == 0 && claimed.get() == next) {
+                    return;
+                } else {
+                    idle(index, next, idleCount++);
+                }
+            }
+        } finally {
+            //a dead dispatcher closes the buffer, so publishers deliver their events on their own thread
+            if (running) {
+                this.running = false;
+                log.error("Asynchronous event dispatcher stopped unexpectedly, {} published events have not been delivered", Math.max(0, claimed.get() - next));
+            }
+        }
+    }
+
+    /**
+     * Stops accepting events, the dispatcher thread exits once the published ones have been delivered
+     */
+    void close() {
+        this.running = false;
+        signalDispatcher();
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    long getDepth() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+
+    /**
+     * @return age in nanoseconds of the oldest published event not yet delivered, 0 if none
+     */
+    long getCurrentLagNanos() {
+        long next = consumed;
+        int index = (int) next & mask;
+        if (available.get(index) != next)
+            return 0;
+        return Math.max(0, System.nanoTime() - slots[index].getPublishedAt());
+    }
+
+    long getDispatched() {
+        return dispatched.sum();
+    }
+
+    long getFailed() {
+        return failed.sum();
+    }
+
+    long getTotalLagNanos() {
+        return totalLagNanos.sum();
+    }
+
+    long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    /**
+     * @return the claimed sequence or -1 if the buffer is full and publishers must not wait
+     */
+    private long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                if (!blockWhenFull || !running)
+                    return -1;
+                LockSupport.parkNanos(1000);
+            } else if (producerType == ProducerType.SINGLE) {
+                //the only publisher thread owns the claim sequence
+                claimed.lazySet(sequence + 1);
+                return sequence;
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void dispatch(EventSlot slot) {
+        long lag = System.nanoTime() - slot.getPublishedAt();
+        totalLagNanos.add(lag);
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+        try {
+            slot.dispatch();
+        } catch (Throwable e) {
+            //listener failures, errors included, must not stop the dispatcher thread
+            failed.increment();
+            log.error("Error while dispatching asynchronous event", e);
+        } finally {
+            slot.clear();
+            dispatched.increment();
+        }
+    }
+
+    private void idle(int index, long next, int idleCount) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                break;
+            case YIELDING:
+                if (idleCount < SPIN_TRIES)
+                    Thread.onSpinWait();
+                else
+                    Thread.yield();
+                break;
+            case SLEEPING:
+                if (idleCount < SPIN_TRIES)
+                    Thread.onSpinWait();
+                else if (idleCount < SPIN_TRIES * 2)
+                    Thread.yield();
+                else
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                break;
+            default:
+                awaitPublication(index, next);
+        }
+    }
+
+    private void awaitPublication(int index, long next) {
+        lock.lock();
+        try {
+            //checked under the lock, publishers signal only after publishing
+            if (available.get(index) != next && running)
+                notEmpty.await(BLOCKING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.running = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalDispatcher() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
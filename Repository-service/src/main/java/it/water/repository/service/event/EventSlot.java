@@ -0,0 +1,70 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.model.events.Event;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Pre-allocated ring buffer slot, reused for every event published in its position.
+ */
+class EventSlot {
+    private ApplicationEventProducer eventProducer;
+    private BaseEntity entityBefore;
+    private BaseEntity entity;
+    private Class<? extends Event> eventClass;
+    private boolean detailed;
+    private long publishedAt;
+
+    void set(ApplicationEventProducer eventProducer, BaseEntity entityBefore, BaseEntity entity, Class<? extends Event> eventClass, boolean detailed) {
+        this.eventProducer = eventProducer;
+        this.entityBefore = entityBefore;
+        this.entity = entity;
+        this.eventClass = eventClass;
+        this.detailed = detailed;
+        this.publishedAt = System.nanoTime();
+    }
+
+    void dispatch() {
+        dispatch(eventProducer, entityBefore, entity, eventClass, detailed);
+    }
+
+    /**
+     * Releases the references held by the slot, so delivered entities can be garbage collected
+     */
+    void clear() {
+        this.eventProducer = null;
+        this.entityBefore = null;
+        this.entity = null;
+        this.eventClass = null;
+    }
+
+    long getPublishedAt() {
+        return publishedAt;
+    }
+
+    static void dispatch(ApplicationEventProducer eventProducer, BaseEntity entityBefore, BaseEntity entity, Class<? extends Event> eventClass, boolean detailed) {
+        if (detailed)
+            eventProducer.produceDetailedEvent(entityBefore, entity, eventClass);
+        else
+            eventProducer.produceEvent(entity, eventClass);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * What happens to an event published while its ring buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The publishing thread waits for a free slot, preserving delivery and ordering
+     */
+    BLOCK,
+    /**
+     * The event is discarded and counted as dropped
+     */
+    DROP,
+    /**
+     * The event is dispatched synchronously on the publishing thread,
+     * so it may be delivered before events of the same entity type still in the buffer:
+     * this policy gives up the per entity type ordering, choose BLOCK when listeners depend on it
+     */
+    CALLER_RUNS
+}
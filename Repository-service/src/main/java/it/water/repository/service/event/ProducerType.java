@@ -0,0 +1,34 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Sequencing used to claim slots of the event ring buffer.
+ */
+public enum ProducerType {
+    /**
+     * Slots are claimed without atomic operations: events must be published by one thread at a time
+     */
+    SINGLE,
+    /**
+     * Slots are claimed with compare and set, events can be published by any number of threads
+     */
+    MULTI
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.repository.entity.model.AbstractEntity;
+import it.water.repository.service.patch.EntityPatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Merges the post update events of the same entity produced within a time window into one event,
+ * carrying the state before the first update and the state after the last one.
+ * An entity is emitted when its window expires, when maxMergedEvents updates have been merged or when flushed explicitly,
+ * ex. before its removal. Dirty fields of merged AbstractEntity updates are reported on a copy of the last state.
+ * Events of different entities are not emitted in update order.
+ */
+public class UpdateEventCoalescer<T extends BaseEntity> {
+    private static final Logger log = LoggerFactory.getLogger(UpdateEventCoalescer.class);
+
+    private final long windowMillis;
+    private final int maxMergedEvents;
+    private final BiConsumer<T, T> emitter;
+    private final Map<Long, PendingUpdate<T>> pending = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder emitted = new LongAdder();
+
+    /**
+     * @param windowMillis    maximum time an update event is held back
+     * @param maxMergedEvents maximum number of update events merged into one
+     * @param emitter         receives the state before the first update and after the last one
+     */
+    public UpdateEventCoalescer(long windowMillis, int maxMergedEvents, BiConsumer<T, T> emitter) {
+        if (windowMillis <= 0 || maxMergedEvents <= 0)
+            throw new IllegalArgumentException("Window and max merged events must be greater than 0");
+        this.windowMillis = windowMillis;
+        this.maxMergedEvents = maxMergedEvents;
+        this.emitter = emitter;
+    }
+
+    /**
+     * @param before entity before the update
+     * @param after  entity after the update
+     */
+    public void add(T before, T after) {
+        received.increment();
+        long id = after.getId();
+        List<PendingUpdate<T>> completed = new ArrayList<>(1);
+        pending.compute(id, (key, current) -> {
+            PendingUpdate<T> update = current != null ? current : new PendingUpdate<>(before);
+            update.merge(after);
+            if (update.count >= maxMergedEvents) {
+                completed.add(update);
+                return null;
+            }
+            if (current == null)
+                Scheduler.INSTANCE.schedule(() -> flush(id, update), windowMillis, TimeUnit.MILLISECONDS);
+            return update;
+        });
+        completed.forEach(this::emit);
+    }
+
+    /**
+     * Emits the pending event of the given entity, if any
+     *
+     * @param id entity id
+     */
+    public void flush(long id) {
+        PendingUpdate<T> update = pending.remove(id);
+        if (update != null)
+            emit(update);
+    }
+
+    /**
+     * Emits all the pending events
+     */
+    public void flushAll() {
+        new ArrayList<>(pending.keySet()).forEach(this::flush);
+    }
+
+    /**
+     * @return number of update events received
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return number of merged events emitted
+     */
+    public long getEmitted() {
+        return emitted.sum();
+    }
+
+    /**
+     * @return number of entities with a pending event
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    private void flush(long id, PendingUpdate<T> update) {
+        //the window of a completed update may have been reopened by a later one
+        if (pending.remove(id, update))
+            emit(update);
+    }
+
+    private void emit(PendingUpdate<T> update) {
+        emitted.increment();
+        try {
+            emitter.accept(update.before, update.afterWithDirtyFields());
+        } catch (RuntimeException e) {
+            log.error("Error while emitting coalesced update event", e);
+        }
+    }
+
+    private static class PendingUpdate<T extends BaseEntity> {
+        private final T before;
+        private T after;
+        private int count;
+        private Set<String> dirtyFields;
+
+        private PendingUpdate(T before) {
+            this.before = before;
+        }
+
+        private void merge(T entity) {
+            this.after = entity;
+            this.count++;
+            if (entity instanceof AbstractEntity abstractEntity && !abstractEntity.getDirtyFields().isEmpty()) {
+                if (dirtyFields == null)
+                    dirtyFields = new HashSet<>();
+                dirtyFields.addAll(abstractEntity.getDirtyFields());
+            }
+        }
+
+        /**
+         * Dirty fields of the caller instance are cleared once it is updated, so they are marked on a copy
+         */
+        private T afterWithDirtyFields() {
+            if (dirtyFields == null)
+                return after;
+            try {
+                T copy = EntityPatcher.shallowCopy(after);
+                dirtyFields.forEach(((AbstractEntity) copy)::markDirty);
+                return copy;
+            } catch (RuntimeException e) {
+                log.warn("Cannot copy {}, coalesced update event emitted without dirty fields", after.getClass().getName());
+                return after;
+            }
+        }
+    }
+
+    /**
+     * Single daemon thread shared by all the coalescers, emitting the events whose window expired
+     */
+    private static class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "water-update-event-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+}
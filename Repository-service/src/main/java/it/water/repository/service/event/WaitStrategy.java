@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.event;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * How dispatcher threads wait for new events, from the lowest latency to the lowest cpu usage.
+ */
+public enum WaitStrategy {
+    /**
+     * Spins on the ring buffer, keeps one core busy per dispatcher thread
+     */
+    BUSY_SPIN,
+    /**
+     * Spins for a while then yields the cpu to other threads
+     */
+    YIELDING,
+    /**
+     * Spins, yields and finally parks for short intervals
+     */
+    SLEEPING,
+    /**
+     * Waits on a condition signalled by publishers, at the cost of a lock acquisition per published event
+     */
+    BLOCKING
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.ingestion;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.function.Consumer;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Tuning options of the ingestion pipeline.
+ * At most (queueCapacity * 2 + parallelism + 1) chunks are held in memory at any time,
+ * the source is not read further until the persist stage catches up.
+ */
+@Getter
+@Setter
+public class IngestionOptions {
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    public static final int DEFAULT_PARALLELISM = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+    public static final int DEFAULT_MAX_REPORTED_FAILURES = 10000;
+
+    /**
+     * Number of entities persisted in the same transaction
+     */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    /**
+     * Number of threads running validation and persistence
+     */
+    private int parallelism = DEFAULT_PARALLELISM;
+    /**
+     * Number of chunks buffered between two stages
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    /**
+     * Failures beyond this limit are only counted, so that failing loads do not exhaust memory
+     */
+    private int maxReportedFailures = DEFAULT_MAX_REPORTED_FAILURES;
+    /**
+     * Invoked after each completed chunk, from the pipeline thread
+     */
+    private Consumer<IngestionStatistics> progressListener;
+}
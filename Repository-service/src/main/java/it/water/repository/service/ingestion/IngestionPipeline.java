@@ -0,0 +1,266 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.ingestion;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.repository.entity.model.BatchItemFailure;
+import it.water.repository.entity.model.BatchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Staged bulk ingestion: the caller thread reads the source and groups entities in chunks,
+ * parallelism threads validate and persist them and a single thread runs the completion stage (assets and events).
+ * Stages are connected by bounded queues: when a stage falls behind the previous one blocks,
+ * down to the source which is read only as fast as entities are persisted.
+ * <p>
+ * Stages receive a chunk and return a BatchResult whose failures refer to positions in the chunk
+ * and whose succeeded entities keep the chunk order, so each failure can be traced back to the source position.
+ */
+public class IngestionPipeline<T extends BaseEntity> {
+    private static final Logger log = LoggerFactory.getLogger(IngestionPipeline.class);
+    private static final long POLL_MILLIS = 100;
+    private static final AtomicInteger pipelineCounter = new AtomicInteger();
+
+    private final IngestionOptions options;
+    private final Function<List<T>, BatchResult<T>> persistStage;
+    private final Function<List<T>, BatchResult<T>> completionStage;
+    private final BlockingQueue<Chunk<T>> persistQueue;
+    private final BlockingQueue<Chunk<T>> completionQueue;
+    private final LongAdder read = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final ConcurrentLinkedQueue<BatchItemFailure> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger reportedFailures = new AtomicInteger();
+    private final AtomicReference<Throwable> abortCause = new AtomicReference<>();
+    private long startNanos;
+
+    public IngestionPipeline(IngestionOptions options, Function<List<T>, BatchResult<T>> persistStage, Function<List<T>, BatchResult<T>> completionStage) {
+        if (options.getChunkSize() <= 0 || options.getParallelism() <= 0 || options.getQueueCapacity() <= 0)
+            throw new IllegalArgumentException("Chunk size, parallelism and queue capacity must be greater than 0");
+        this.options = options;
+        this.persistStage = persistStage;
+        this.completionStage = completionStage;
+        this.persistQueue = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        this.completionQueue = new ArrayBlockingQueue<>(options.getQueueCapacity());
+    }
+
+    /**
+     * Runs the pipeline until the source is exhausted, a pipeline can be run only once.
+     *
+     * @param source entities to ingest
+     * @return final statistics and failed items
+     */
+    public IngestionResult run(Iterator<? extends T> source) {
+        this.startNanos = System.nanoTime();
+        int pipelineId = pipelineCounter.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelism() + 1, runnable -> {
+            Thread thread = new Thread(runnable, "water-ingestion-" + pipelineId + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            AtomicInteger runningPersistWorkers = new AtomicInteger(options.getParallelism());
+            for (int i = 0; i < options.getParallelism(); i++)
+                executor.execute(() -> guarded(() -> runPersistWorker(runningPersistWorkers)));
+            executor.execute(() -> guarded(this::runCompletionWorker));
+            readSource(source);
+            executor.shutdown();
+            while (!executor.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.trace("Waiting for ingestion pipeline {} to complete", pipelineId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortCause.compareAndSet(null, e);
+        } catch (RuntimeException e) {
+            abortCause.compareAndSet(null, e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (abortCause.get() != null)
+            throw new WaterRuntimeException("Ingestion aborted after " + succeeded.sum() + " entities: " + abortCause.get().getMessage());
+        List<BatchItemFailure> sortedFailures = new ArrayList<>(failures);
+        sortedFailures.sort(Comparator.comparingInt(BatchItemFailure::getIndex));
+        return new IngestionResult(getStatistics(), sortedFailures);
+    }
+
+    /**
+     * @return current progress, can be called from any thread
+     */
+    public IngestionStatistics getStatistics() {
+        long elapsedMillis = startNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new IngestionStatistics(read.sum(), persisted.sum(), succeeded.sum(), failed.sum(), elapsedMillis, persistQueue.size(), completionQueue.size());
+    }
+
+    private void readSource(Iterator<? extends T> source) throws InterruptedException {
+        int offset = 0;
+        List<T> entities = new ArrayList<>(options.getChunkSize());
+        while (abortCause.get() == null && source.hasNext()) {
+            entities.add(source.next());
+            read.increment();
+            if (entities.size() == options.getChunkSize()) {
+                if (!enqueue(persistQueue, new Chunk<>(entities, offset, null)))
+                    return;
+                offset += entities.size();
+                entities = new ArrayList<>(options.getChunkSize());
+            }
+        }
+        if (!entities.isEmpty() && !enqueue(persistQueue, new Chunk<>(entities, offset, null)))
+            return;
+        for (int i = 0; i < options.getParallelism(); i++) {
+            if (!enqueue(persistQueue, Chunk.end()))
+                return;
+        }
+    }
+
+    private void runPersistWorker(AtomicInteger runningPersistWorkers) throws InterruptedException {
+        Chunk<T> chunk;
+        while ((chunk = dequeue(persistQueue)) != null && !chunk.isEnd()) {
+            BatchResult<T> result = persistStage.apply(chunk.entities);
+            int[] survivors = survivorPositions(chunk.entities.size(), result.getFailures());
+            recordFailures(chunk, null, result.getFailures());
+            persisted.add(result.getSucceededCount());
+            if (!result.getSucceeded().isEmpty() && !enqueue(completionQueue, new Chunk<>(result.getSucceeded(), chunk.offset, survivors)))
+                return;
+        }
+        //the last persist worker closes the completion queue
+        if (runningPersistWorkers.decrementAndGet() == 0)
+            enqueue(completionQueue, Chunk.end());
+    }
+
+    private void runCompletionWorker() throws InterruptedException {
+        Chunk<T> chunk;
+        while ((chunk = dequeue(completionQueue)) != null && !chunk.isEnd()) {
+            BatchResult<T> result = completionStage.apply(chunk.entities);
+            recordFailures(chunk, chunk.positions, result.getFailures());
+            succeeded.add(result.getSucceededCount());
+            if (options.getProgressListener() != null)
+                options.getProgressListener().accept(getStatistics());
+        }
+    }
+
+    private void recordFailures(Chunk<T> chunk, int[] positions, List<BatchItemFailure> chunkFailures) {
+        for (BatchItemFailure failure : chunkFailures) {
+            failed.increment();
+            if (reportedFailures.incrementAndGet() <= options.getMaxReportedFailures()) {
+                int position = (positions != null) ? positions[failure.getIndex()] : failure.getIndex();
+                failures.add(new BatchItemFailure(chunk.offset + position, failure.getEntityId(), failure.getCause()));
+            }
+        }
+    }
+
+    /**
+     * @return for each succeeded entity, its position in the chunk
+     */
+    private static int[] survivorPositions(int chunkSize, List<BatchItemFailure> chunkFailures) {
+        boolean[] failedPositions = new boolean[chunkSize];
+        chunkFailures.forEach(failure -> failedPositions[failure.getIndex()] = true);
+        int[] positions = new int[chunkSize - chunkFailures.size()];
+        int next = 0;
+        for (int i = 0; i < chunkSize && next < positions.length; i++) {
+            if (!failedPositions[i])
+                positions[next++] = i;
+        }
+        return next == positions.length ? positions : Arrays.copyOf(positions, next);
+    }
+
+    /**
+     * Blocks until the queue accepts the chunk, this is where backpressure is applied
+     *
+     * @return false if the pipeline has been aborted
+     */
+    private boolean enqueue(BlockingQueue<Chunk<T>> queue, Chunk<T> chunk) throws InterruptedException {
+        while (!queue.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (abortCause.get() != null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return next chunk or null if the pipeline has been aborted
+     */
+    private Chunk<T> dequeue(BlockingQueue<Chunk<T>> queue) throws InterruptedException {
+        Chunk<T> chunk;
+        while ((chunk = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            if (abortCause.get() != null)
+                return null;
+        }
+        return chunk;
+    }
+
+    private void guarded(StageWorker worker) {
+        try {
+            worker.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortCause.compareAndSet(null, e);
+        } catch (Throwable t) {
+            log.error("Ingestion stage failed", t);
+            abortCause.compareAndSet(null, t);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageWorker {
+        void run() throws InterruptedException;
+    }
+
+    private static final class Chunk<T> {
+        private static final Chunk<?> END = new Chunk<>(List.of(), -1, null);
+        private final List<T> entities;
+        private final int offset;
+        private final int[] positions;
+
+        private Chunk(List<T> entities, int offset, int[] positions) {
+            this.entities = entities;
+            this.offset = offset;
+            this.positions = positions;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Chunk<T> end() {
+            return (Chunk<T>) END;
+        }
+
+        private boolean isEnd() {
+            return this == END;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.ingestion;
+
+import it.water.repository.entity.model.BatchItemFailure;
+import lombok.Getter;
+
+import java.util.List;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Outcome of an ingestion: final statistics and failed items, ordered by position in the source.
+ * Persisted entities are not collected, since sources may not fit in memory.
+ */
+@Getter
+public class IngestionResult {
+    private final IngestionStatistics statistics;
+    private final List<BatchItemFailure> failures;
+
+    public IngestionResult(IngestionStatistics statistics, List<BatchItemFailure> failures) {
+        this.statistics = statistics;
+        this.failures = failures;
+    }
+
+    public boolean hasFailures() {
+        return statistics.getFailed() > 0;
+    }
+
+    /**
+     * @return failed items not reported in failures because of the maxReportedFailures limit
+     */
+    public long getUnreportedFailures() {
+        return statistics.getFailed() - failures.size();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.ingestion;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the ingestion pipeline progress.
+ */
+@Getter
+public class IngestionStatistics {
+    /**
+     * Entities read from the source
+     */
+    private final long read;
+    /**
+     * Entities validated and persisted, waiting for or gone through assets and events
+     */
+    private final long persisted;
+    /**
+     * Entities which completed the whole pipeline
+     */
+    private final long succeeded;
+    private final long failed;
+    private final long elapsedMillis;
+    /**
+     * Chunks waiting in the persist and completion queues
+     */
+    private final int persistQueueSize;
+    private final int completionQueueSize;
+
+    public IngestionStatistics(long read, long persisted, long succeeded, long failed, long elapsedMillis, int persistQueueSize, int completionQueueSize) {
+        this.read = read;
+        this.persisted = persisted;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+        this.persistQueueSize = persistQueueSize;
+        this.completionQueueSize = completionQueueSize;
+    }
+
+    /**
+     * @return entities completed per second since the pipeline started
+     */
+    public double getThroughput() {
+        return elapsedMillis == 0 ? 0 : succeeded * 1000d / elapsedMillis;
+    }
+}
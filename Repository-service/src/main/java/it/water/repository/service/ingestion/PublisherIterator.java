@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.ingestion;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+
+
+/**
+ * @param <T> item type
+ * @Author Aristide Cittadino.
+ * Blocking iterator over a Flow.Publisher.
+ * At most bufferSize items are requested in advance and demand is renewed as items are consumed,
+ * so a slow consumer slows down the publisher instead of buffering its whole output.
+ */
+public class PublisherIterator<T> implements Iterator<T>, Flow.Subscriber<T>, AutoCloseable {
+    private static final Object COMPLETE = new Object();
+
+    private final int bufferSize;
+    private final int refillThreshold;
+    //bounded by the requested demand
+    private final BlockingQueue<Object> buffer = new LinkedBlockingQueue<>();
+    private volatile Flow.Subscription subscription;
+    private Object next;
+    private int consumedSinceRequest;
+    private boolean done;
+
+    public PublisherIterator(Flow.Publisher<? extends T> publisher, int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        this.bufferSize = bufferSize;
+        this.refillThreshold = Math.max(1, bufferSize / 2);
+        publisher.subscribe(this);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(bufferSize);
+    }
+
+    @Override
+    public void onNext(T item) {
+        buffer.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        buffer.add(new Failure(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        buffer.add(COMPLETE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null)
+            return true;
+        if (done)
+            return false;
+        try {
+            next = buffer.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WaterRuntimeException("Interrupted while waiting for the publisher");
+        }
+        if (next == COMPLETE) {
+            done = true;
+            next = null;
+            return false;
+        }
+        if (next instanceof Failure failure) {
+            done = true;
+            next = null;
+            throw new WaterRuntimeException("Publisher failed: " + failure.cause.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        T item = (T) next;
+        next = null;
+        if (++consumedSinceRequest >= refillThreshold) {
+            subscription.request(consumedSinceRequest);
+            consumedSinceRequest = 0;
+        }
+        return item;
+    }
+
+    /**
+     * Cancels the subscription, pending items are discarded
+     */
+    @Override
+    public void close() {
+        done = true;
+        if (subscription != null)
+            subscription.cancel();
+        buffer.clear();
+    }
+
+    private static final class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.metrics;
+
+import it.water.repository.service.spi.EntityMetricsRegistry;
+import it.water.repository.service.spi.OperationRecorder;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Default metrics registry, keeping counters and latency histograms in memory.
+ * A single instance can be shared by the services of all the entity types.
+ */
+public class InProcessMetricsRegistry implements EntityMetricsRegistry {
+    private static final InProcessMetricsRegistry DEFAULT_REGISTRY = new InProcessMetricsRegistry();
+
+    private final Map<String, OperationMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by the services enabling metrics without a registry
+     */
+    public static InProcessMetricsRegistry defaultRegistry() {
+        return DEFAULT_REGISTRY;
+    }
+
+    @Override
+    public OperationRecorder recorder(Class<?> entityType, ServiceLayer layer, EntityOperation operation) {
+        return metrics.computeIfAbsent(keyOf(entityType.getName(), layer, operation), key -> new OperationMetrics(entityType.getName(), layer, operation));
+    }
+
+    /**
+     * @return the snapshot of the operation or null if it has never been enabled
+     */
+    public OperationMetricsSnapshot getSnapshot(Class<?> entityType, ServiceLayer layer, EntityOperation operation) {
+        OperationMetrics operationMetrics = metrics.get(keyOf(entityType.getName(), layer, operation));
+        return operationMetrics != null ? operationMetrics.getSnapshot() : null;
+    }
+
+    /**
+     * @return snapshots of all the operations, ordered by entity type, layer and operation
+     */
+    public List<OperationMetricsSnapshot> getSnapshots() {
+        return metrics.values().stream()
+                .sorted(Comparator.comparing(OperationMetrics::getEntityType).thenComparing(OperationMetrics::getLayer).thenComparing(OperationMetrics::getOperation))
+                .map(OperationMetrics::getSnapshot)
+                .toList();
+    }
+
+    /**
+     * Drops all the metrics, services keep recording on the recorders they resolved until metrics are enabled again
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    private static String keyOf(String entityType, ServiceLayer layer, EntityOperation operation) {
+        return entityType + '#' + layer + '#' + operation;
+    }
+}
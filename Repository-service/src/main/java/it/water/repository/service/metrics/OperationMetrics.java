@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.metrics;
+
+import it.water.repository.service.spi.OperationRecorder;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Counters and latency histogram of one operation on one entity type.
+ */
+public class OperationMetrics implements OperationRecorder {
+    @Getter
+    private final String entityType;
+    @Getter
+    private final ServiceLayer layer;
+    @Getter
+    private final EntityOperation operation;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    public OperationMetrics(String entityType, ServiceLayer layer, EntityOperation operation) {
+        this.entityType = entityType;
+        this.layer = layer;
+        this.operation = operation;
+    }
+
+    @Override
+    public void record(long durationNanos, boolean failed) {
+        count.increment();
+        if (failed)
+            errors.increment();
+        totalNanos.add(durationNanos);
+        maxNanos.accumulate(durationNanos);
+        latencies.record(durationNanos);
+    }
+
+    public OperationMetricsSnapshot getSnapshot() {
+        long[] percentiles = latencies.valuesAt(0.5, 0.99, 0.999);
+        long executions = count.sum();
+        return new OperationMetricsSnapshot(entityType, layer, operation, executions, errors.sum(),
+                executions == 0 ? 0 : totalNanos.sum() / executions, percentiles[0], percentiles[1], percentiles[2], maxNanos.get());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.metrics;
+
+import lombok.Getter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Snapshot of the metrics of one operation on one entity type, latencies in nanoseconds.
+ */
+public class OperationMetricsSnapshot {
+    @Getter
+    private final String entityType;
+    @Getter
+    private final ServiceLayer layer;
+    @Getter
+    private final EntityOperation operation;
+    @Getter
+    private final long count;
+    /**
+     * Executions which threw an exception
+     */
+    @Getter
+    private final long errors;
+    @Getter
+    private final long meanNanos;
+    @Getter
+    private final long p50Nanos;
+    @Getter
+    private final long p99Nanos;
+    @Getter
+    private final long p999Nanos;
+    @Getter
+    private final long maxNanos;
+
+    public OperationMetricsSnapshot(String entityType, ServiceLayer layer, EntityOperation operation, long count, long errors,
+                                    long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.entityType = entityType;
+        this.layer = layer;
+        this.operation = operation;
+        this.count = count;
+        this.errors = errors;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return errors / executions, 0 when the operation has never been executed
+     */
+    public double getErrorRatio() {
+        return count == 0 ? 0 : (double) errors / count;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.metrics;
+
+import it.water.repository.service.spi.EntityMetricsRegistry;
+import it.water.repository.service.spi.OperationRecorder;
+import lombok.Getter;
+
+import java.util.function.Supplier;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Recorders of all the operations of a service, resolved once from the registry
+ * so that recording an operation is an array access.
+ */
+public class ServiceMetrics {
+    private static final EntityOperation[] OPERATIONS = EntityOperation.values();
+
+    @Getter
+    private final EntityMetricsRegistry registry;
+    private final OperationRecorder[] recorders = new OperationRecorder[OPERATIONS.length];
+
+    public ServiceMetrics(EntityMetricsRegistry registry, Class<?> entityType, ServiceLayer layer) {
+        this.registry = registry;
+        for (EntityOperation operation : OPERATIONS)
+            recorders[operation.ordinal()] = registry.recorder(entityType, layer, operation);
+    }
+
+    /**
+     * @param operation     operation
+     * @param durationNanos execution time in nanoseconds
+     * @param failed        true if the operation threw an exception
+     */
+    public void record(EntityOperation operation, long durationNanos, boolean failed) {
+        recorders[operation.ordinal()].record(durationNanos, failed);
+    }
+
+    /**
+     * Runs an operation recording its execution time and outcome.
+     *
+     * @param metrics   recorders, null when metrics are disabled: the operation is then just run
+     * @param operation operation
+     * @param body      operation body
+     * @return result of the body
+     */
+    public static <R> R timed(ServiceMetrics metrics, EntityOperation operation, Supplier<R> body) {
+        if (metrics == null)
+            return body.get();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            R result = body.get();
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(operation, System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.patch;
+
+import it.water.core.api.entity.owned.OwnedResource;
+import it.water.core.api.model.BaseEntity;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.repository.entity.model.AbstractEntity;
+import it.water.repository.entity.model.EntityPropertyIndex;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Applies partial changes to entities through their setters.
+ * Bean metadata is introspected once per entity class.
+ */
+public class EntityPatcher {
+    /**
+     * Properties managed by the persistence layer, never patchable.
+     * The owner of OwnedResource entities is not patchable either, ownership changes go through update.
+     */
+    private static final Set<String> READ_ONLY_PROPERTIES = Set.of("id", "entityCreateDate", "entityModifyDate", "entityVersion");
+
+    private static final ClassValue<Map<String, PropertyDescriptor>> properties = new ClassValue<>() {
+        @Override
+        protected Map<String, PropertyDescriptor> computeValue(Class<?> type) {
+            try {
+                Map<String, PropertyDescriptor> descriptors = new HashMap<>();
+                for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                    if (descriptor.getWriteMethod() != null && descriptor.getReadMethod() != null)
+                        descriptors.put(descriptor.getName(), descriptor);
+                }
+                return descriptors;
+            } catch (IntrospectionException e) {
+                throw new WaterRuntimeException("Cannot introspect " + type.getName() + ": " + e.getMessage());
+            }
+        }
+    };
+
+    private static final ClassValue<List<Field>> copyableFields = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+                        continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return fields;
+        }
+    };
+
+    private EntityPatcher() {
+    }
+
+    /**
+     * Applies the changes to the entity, values equal to the current ones are skipped.
+     * Changed properties are marked dirty on AbstractEntity instances.
+     *
+     * @param entity  entity to change
+     * @param changes new values by property name
+     * @return names of the properties actually changed
+     */
+    public static Set<String> apply(BaseEntity entity, Map<String, Object> changes) {
+        Map<String, PropertyDescriptor> descriptors = properties.get(entity.getClass());
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String propertyName = change.getKey();
+            PropertyDescriptor descriptor = descriptors.get(propertyName);
+            if (descriptor == null || isReadOnly(entity, propertyName))
+                throw new WaterRuntimeException("Property " + propertyName + " cannot be patched on " + entity.getClass().getSimpleName());
+            Object value = convert(change.getValue(), descriptor.getPropertyType(), propertyName);
+            if (Objects.deepEquals(invoke(descriptor.getReadMethod(), entity), value))
+                continue;
+            invoke(descriptor.getWriteMethod(), entity, value);
+            changed.add(propertyName);
+            //bean properties not backed by a field cannot be tracked
+            if (entity instanceof AbstractEntity abstractEntity && EntityPropertyIndex.of(entity.getClass()).positionOf(propertyName) >= 0)
+                abstractEntity.markDirty(propertyName);
+        }
+        return changed;
+    }
+
+    /**
+     * @param entity entity to copy
+     * @return a new instance sharing the persistent field values of the entity
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends BaseEntity> T shallowCopy(T entity) {
+        try {
+            Constructor<?> constructor = entity.getClass().getDeclaredConstructor();
+            constructor.setAccessible(true);
+            T copy = (T) constructor.newInstance();
+            for (Field field : copyableFields.get(entity.getClass()))
+                field.set(copy, field.get(entity));
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new WaterRuntimeException("Cannot copy " + entity.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param entity entity to copy
+     * @return a shallow copy of the entity which keeps the dirty fields of AbstractEntity instances,
+     * they are not affected when the entity is cleared afterwards
+     */
+    public static <T extends BaseEntity> T snapshot(T entity) {
+        T copy = shallowCopy(entity);
+        if (entity instanceof AbstractEntity abstractEntity && copy instanceof AbstractEntity abstractCopy)
+            abstractEntity.getDirtyFields().forEach(abstractCopy::markDirty);
+        return copy;
+    }
+
+    /**
+     * @param entity entity to restore
+     * @param state  copy of the entity, as returned by shallowCopy, whose persistent field values are set back on the entity
+     */
+    public static <T extends BaseEntity> void restore(T entity, T state) {
+        try {
+            for (Field field : copyableFields.get(entity.getClass()))
+                field.set(entity, field.get(state));
+        } catch (ReflectiveOperationException e) {
+            throw new WaterRuntimeException("Cannot restore " + entity.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isReadOnly(BaseEntity entity, String propertyName) {
+        return READ_ONLY_PROPERTIES.contains(propertyName) || (entity instanceof OwnedResource && OwnedResource.getOwnerUserIdFieldName().equals(propertyName));
+    }
+
+    private static Object convert(Object value, Class<?> type, String propertyName) {
+        if (value == null) {
+            if (type.isPrimitive())
+                throw new WaterRuntimeException("Property " + propertyName + " cannot be null");
+            return null;
+        }
+        if (value instanceof Number number) {
+            if (type == long.class || type == Long.class)
+                return number.longValue();
+            if (type == int.class || type == Integer.class)
+                return number.intValue();
+            if (type == double.class || type == Double.class)
+                return number.doubleValue();
+            if (type == float.class || type == Float.class)
+                return number.floatValue();
+            if (type == short.class || type == Short.class)
+                return number.shortValue();
+        }
+        return value;
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new WaterRuntimeException(cause.getMessage());
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new WaterRuntimeException("Cannot access property through " + method.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.spi;
+
+import it.water.repository.service.asset.AssetMutation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional AssetCategoryIntegrationClient capability: reads and changes the categories of many resources at once.
+ * Batch operations of the system services flush the category changes of each chunk with one call,
+ * clients which do not implement it are called once per entity.
+ */
+public interface BatchAssetCategoryIntegrationClient {
+    /**
+     * @param resourceName resource class name
+     * @param resourceIds  resource ids
+     * @return category ids by resource id, resources without categories may be missing
+     */
+    Map<Long, long[]> findAssetCategories(String resourceName, Collection<Long> resourceIds);
+
+    /**
+     * @param resourceName resource class name
+     * @param mutations    categories to add and remove, at most one mutation per resource
+     */
+    void updateAssetCategories(String resourceName, List<AssetMutation> mutations);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.spi;
+
+import it.water.repository.service.metrics.EntityOperation;
+import it.water.repository.service.metrics.ServiceLayer;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Metrics of the entity operations, ex. backed by an external monitoring system.
+ * Services resolve their recorders once, when metrics are enabled, and then only call OperationRecorder.record.
+ * InProcessMetricsRegistry is the default in process implementation.
+ */
+public interface EntityMetricsRegistry {
+    /**
+     * @param entityType entity class
+     * @param layer      service layer executing the operation
+     * @param operation  operation
+     * @return recorder of the operation, shared by all the services of the same entity type and layer
+     */
+    OperationRecorder recorder(Class<?> entityType, ServiceLayer layer, EntityOperation operation);
+}
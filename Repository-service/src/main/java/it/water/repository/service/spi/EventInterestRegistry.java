@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.spi;
+
+import it.water.core.api.model.events.Event;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional event producer capability: tells whether any listener is interested in an event.
+ * Services skip the events nobody listens to, and the read of the state before an update
+ * when no listener is interested in detailed update events.
+ * Producers which do not implement it are assumed to have listeners for every event.
+ */
+public interface EventInterestRegistry {
+    /**
+     * @param entityType entity type the event refers to
+     * @param eventClass event class
+     * @return true if at least one listener is interested in the event for the given entity type
+     */
+    boolean hasListeners(Class<?> entityType, Class<? extends Event> eventClass);
+}
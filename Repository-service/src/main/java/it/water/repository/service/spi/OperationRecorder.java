@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.spi;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Records the executions of one operation on one entity type.
+ * It is called on every execution, so implementations should be lock free and should not allocate.
+ */
+public interface OperationRecorder {
+    /**
+     * @param durationNanos execution time in nanoseconds
+     * @param failed        true if the operation threw an exception
+     */
+    void record(long durationNanos, boolean failed);
+}
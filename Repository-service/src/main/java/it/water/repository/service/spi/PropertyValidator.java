@@ -0,0 +1,35 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.spi;
+
+import it.water.core.api.model.Resource;
+
+import java.util.Set;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional validator capability: validates only some properties of a resource.
+ * Partial updates validate the whole resource when the validator does not implement it.
+ */
+public interface PropertyValidator {
+    /**
+     * @param resource      resource to validate
+     * @param propertyNames properties to validate
+     */
+    void validateProperties(Resource resource, Set<String> propertyNames);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.spi;
+
+import it.water.repository.query.SubQueryDescriptor;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Optional SharedEntityIntegrationClient capability: describes the ids shared with a user as a sub query,
+ * so that the shared entity filter is computed by the database instead of loading the ids.
+ * Only usable when the share table lives in the same persistence unit as the filtered entities.
+ */
+public interface SharedEntitySubQueryProvider {
+    /**
+     * @param resourceName shared entity type name
+     * @param userId       user id
+     * @return sub query selecting the ids of the entities of the given type shared with the user, or null when not available
+     */
+    SubQueryDescriptor sharedEntityIdsSubQuery(String resourceName, long userId);
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.stream;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryBuilder;
+import it.water.core.api.repository.query.QueryOrder;
+import it.water.core.api.repository.query.QueryOrderParameter;
+import it.water.repository.entity.model.PaginatedResult;
+import it.water.repository.query.order.DefaultQueryOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Walks the whole result set of a findAll in consecutive chunks.
+ * When results are unordered or ordered by id only, the cursor uses keyset pagination (id greater than the last id read):
+ * chunks can have any size and entities inserted while walking neither shift nor duplicate the results.
+ * With any other order it falls back to page pagination with a fixed page size.
+ * Page fetchers returning a PaginatedResult, ex. findAllWithoutCount, tell whether a next page exists,
+ * so the cursor does not need the total number of pages.
+ */
+public class EntityCursor<T extends BaseEntity> {
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    private static final String ID_FIELD = "id";
+
+    private final PageFetcher<T> pageFetcher;
+    private final QueryBuilder queryBuilder;
+    private final Query filter;
+    private final QueryOrder queryOrder;
+    private final int pageSize;
+    private final boolean keyset;
+    private final boolean ascending;
+    private long lastId;
+    private boolean started;
+    private int nextPage = 1;
+    private boolean exhausted;
+
+    public EntityCursor(PageFetcher<T> pageFetcher, QueryBuilder queryBuilder, Query filter, QueryOrder queryOrder, int pageSize) {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        this.pageFetcher = pageFetcher;
+        this.queryBuilder = queryBuilder;
+        this.filter = filter;
+        this.pageSize = pageSize;
+        List<QueryOrderParameter> orderParameters = (queryOrder != null) ? queryOrder.getParametersList() : Collections.emptyList();
+        this.keyset = orderParameters.isEmpty() || (orderParameters.size() == 1 && ID_FIELD.equals(orderParameters.get(0).getName()));
+        this.ascending = orderParameters.isEmpty() || orderParameters.get(0).isAsc();
+        this.queryOrder = (keyset && orderParameters.isEmpty()) ? new DefaultQueryOrder().addOrderField(ID_FIELD, true) : queryOrder;
+    }
+
+    /**
+     * @param maxResults maximum number of entities to read, capped to the page size
+     * @return next entities, empty when the cursor is exhausted
+     */
+    public List<T> next(int maxResults) {
+        if (exhausted)
+            return Collections.emptyList();
+        return keyset ? nextByKey(Math.max(1, Math.min(maxResults, pageSize))) : nextByPage();
+    }
+
+    /**
+     * @return next page of entities, empty when the cursor is exhausted
+     */
+    public List<T> next() {
+        return next(pageSize);
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public boolean isKeyset() {
+        return keyset;
+    }
+
+    private List<T> nextByKey(int delta) {
+        Query chunkFilter = filter;
+        if (started) {
+            Query afterLastId = queryBuilder.createQueryFilter(ID_FIELD + (ascending ? ">" : "<") + lastId);
+            chunkFilter = (filter != null) ? filter.and(afterLastId) : afterLastId;
+        }
+        PaginableResult<T> page = pageFetcher.fetch(chunkFilter, delta, 1, queryOrder);
+        List<T> chunk = results(page);
+        if (chunk.size() < delta || !hasNext(page))
+            exhausted = true;
+        if (!chunk.isEmpty()) {
+            started = true;
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+        return chunk;
+    }
+
+    private List<T> nextByPage() {
+        PaginableResult<T> page = pageFetcher.fetch(filter, pageSize, nextPage, queryOrder);
+        List<T> chunk = results(page);
+        nextPage++;
+        if (chunk.isEmpty() || !hasNext(page))
+            exhausted = true;
+        return chunk;
+    }
+
+    private static <T extends BaseEntity> boolean hasNext(PaginableResult<T> page) {
+        if (page instanceof PaginatedResult<T> paginatedResult)
+            return paginatedResult.isHasNext();
+        return page != null && page.getCurrentPage() < page.getNumPages();
+    }
+
+    private static <T extends BaseEntity> List<T> results(PaginableResult<T> page) {
+        if (page == null || page.getResults() == null)
+            return Collections.emptyList();
+        return new ArrayList<>(page.getResults());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.stream;
+
+import it.water.core.api.model.BaseEntity;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Cold publisher over a findAll result set: every subscriber walks its own cursor.
+ * Entities are fetched only when requested, in chunks no larger than the outstanding demand,
+ * and released as soon as they are emitted, so memory is bounded by demand rather than by the result size.
+ * Fetching and emission happen on the thread calling request.
+ */
+public class EntityPublisher<T extends BaseEntity> implements Flow.Publisher<T> {
+    private final Supplier<EntityCursor<T>> cursorFactory;
+
+    public EntityPublisher(Supplier<EntityCursor<T>> cursorFactory) {
+        this.cursorFactory = cursorFactory;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        EntitySubscription<T> subscription = new EntitySubscription<>(subscriber, cursorFactory);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private static final class EntitySubscription<T extends BaseEntity> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Supplier<EntityCursor<T>> cursorFactory;
+        private final AtomicLong demand = new AtomicLong();
+        //serializes drain loops, request calls made while draining only add demand
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private final AtomicBoolean terminated = new AtomicBoolean();
+        private final Deque<T> buffer = new ArrayDeque<>();
+        private EntityCursor<T> cursor;
+
+        private EntitySubscription(Flow.Subscriber<? super T> subscriber, Supplier<EntityCursor<T>> cursorFactory) {
+            this.subscriber = subscriber;
+            this.cursorFactory = cursorFactory;
+        }
+
+        @Override
+        public void request(long n) {
+            if (terminated.get())
+                return;
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested items must be greater than 0"));
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> (current + added < 0) ? Long.MAX_VALUE : current + added);
+            if (pendingDrains.getAndIncrement() == 0)
+                drain();
+        }
+
+        @Override
+        public void cancel() {
+            terminated.set(true);
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    emitRequested();
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+            if (terminated.get())
+                buffer.clear();
+        }
+
+        private void emitRequested() {
+            while (!terminated.get() && demand.get() > 0) {
+                if (buffer.isEmpty()) {
+                    if (cursor == null)
+                        cursor = cursorFactory.get();
+                    buffer.addAll(cursor.next((int) Math.min(demand.get(), Integer.MAX_VALUE)));
+                    if (buffer.isEmpty()) {
+                        if (terminated.compareAndSet(false, true))
+                            subscriber.onComplete();
+                        return;
+                    }
+                }
+                demand.decrementAndGet();
+                subscriber.onNext(buffer.poll());
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (terminated.compareAndSet(false, true))
+                subscriber.onError(t);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.stream;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Page source for entity cursors, usually a findAll method of a service.
+ */
+@FunctionalInterface
+public interface PageFetcher<T extends BaseEntity> {
+    PaginableResult<T> fetch(Query filter, int delta, int page, QueryOrder queryOrder);
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service.stream;
+
+import it.water.core.api.model.BaseEntity;
+import it.water.core.model.exceptions.WaterRuntimeException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * @param <T> entity type
+ * @Author Aristide Cittadino.
+ * Sequential spliterator over an entity cursor.
+ * With a prefetch depth greater than 0, pages are read on the executor up to prefetchDepth pages ahead of the consumer,
+ * so the next round trip overlaps with the processing of the current page.
+ * With depth 0 pages are read on the consumer thread when needed.
+ * Fetching starts on the first advance and stops on close.
+ */
+public class PrefetchingSpliterator<T extends BaseEntity> implements Spliterator<T>, AutoCloseable {
+    private static final long POLL_MILLIS = 100;
+    private static final Object END = new Object();
+
+    private final EntityCursor<T> cursor;
+    private final int prefetchDepth;
+    private final Executor executor;
+    private final BlockingQueue<Object> pages;
+    private Iterator<T> currentPage = Collections.emptyIterator();
+    private boolean started;
+    private boolean finished;
+    private volatile boolean closed;
+
+    public PrefetchingSpliterator(EntityCursor<T> cursor, int prefetchDepth, Executor executor) {
+        if (prefetchDepth < 0)
+            throw new IllegalArgumentException("Prefetch depth must not be negative");
+        this.cursor = cursor;
+        this.prefetchDepth = prefetchDepth;
+        this.executor = executor;
+        this.pages = new ArrayBlockingQueue<>(Math.max(1, prefetchDepth));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!currentPage.hasNext()) {
+            if (finished || closed)
+                return false;
+            List<T> page = nextPage();
+            if (page == null) {
+                finished = true;
+                return false;
+            }
+            currentPage = page.iterator();
+        }
+        action.accept(currentPage.next());
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Stops the background fetching and releases the prefetched pages
+     */
+    @Override
+    public void close() {
+        //a fetch in progress completes, then the fetcher notices the flag and stops
+        closed = true;
+        pages.clear();
+        currentPage = Collections.emptyIterator();
+    }
+
+    /**
+     * @return next non empty page, null at the end of the results
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> nextPage() {
+        if (prefetchDepth == 0) {
+            List<T> page = cursor.next();
+            return page.isEmpty() ? null : page;
+        }
+        if (!started) {
+            started = true;
+            executor.execute(this::prefetch);
+        }
+        Object page;
+        try {
+            page = pages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new WaterRuntimeException("Interrupted while waiting for the next page");
+        }
+        if (page == END)
+            return null;
+        if (page instanceof RuntimeException e)
+            throw e;
+        return (List<T>) page;
+    }
+
+    private void prefetch() {
+        try {
+            while (!closed) {
+                List<T> page = cursor.next();
+                if (page.isEmpty() || !enqueue(page) || cursor.isExhausted())
+                    break;
+            }
+            enqueue(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            //the consumer must be released whatever happens to the fetcher
+            enqueueQuietly((t instanceof RuntimeException) ? t : new WaterRuntimeException("Page prefetch failed: " + t.getMessage()));
+        }
+    }
+
+    /**
+     * @return false if the spliterator has been closed while waiting for room
+     */
+    private boolean enqueue(Object page) throws InterruptedException {
+        while (!pages.offer(page, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (closed)
+                return false;
+        }
+        return true;
+    }
+
+    private void enqueueQuietly(Object page) {
+        try {
+            enqueue(page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.validation;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Validates batches of items on a work-stealing pool.
+ * Batches smaller than the parallelism threshold are validated on the calling thread.
+ * Failures are returned by item position, so they can be reported in input order whatever thread validated them.
+ */
+public class ValidationExecutor {
+    public static final int DEFAULT_PARALLELISM_THRESHOLD = 256;
+    /**
+     * Items validated by a single task once the batch has been split
+     */
+    private static final int MIN_ITEMS_PER_TASK = 16;
+
+    private final ForkJoinPool pool;
+    private final int parallelismThreshold;
+
+    /**
+     * @param pool                 work-stealing pool running the validations
+     * @param parallelismThreshold min number of items validated in parallel
+     */
+    public ValidationExecutor(ForkJoinPool pool, int parallelismThreshold) {
+        if (pool == null)
+            throw new IllegalArgumentException("Validation pool cannot be null");
+        if (parallelismThreshold <= 0)
+            throw new IllegalArgumentException("Parallelism threshold must be greater than 0");
+        this.pool = pool;
+        this.parallelismThreshold = parallelismThreshold;
+    }
+
+    /**
+     * @param parallelismThreshold min number of items validated in parallel
+     * @return executor on the common pool
+     */
+    public static ValidationExecutor onCommonPool(int parallelismThreshold) {
+        return new ValidationExecutor(ForkJoinPool.commonPool(), parallelismThreshold);
+    }
+
+    /**
+     * @param items      items to validate
+     * @param validation validation of a single item, returning its failure or null if valid
+     * @return failures by item position, null for valid items
+     */
+    public <E> RuntimeException[] validate(List<E> items, Function<? super E, RuntimeException> validation) {
+        RuntimeException[] failures = new RuntimeException[items.size()];
+        if (items.size() < parallelismThreshold || pool.getParallelism() <= 1) {
+            for (int i = 0; i < items.size(); i++)
+                failures[i] = validation.apply(items.get(i));
+            return failures;
+        }
+        int itemsPerTask = Math.max(MIN_ITEMS_PER_TASK, items.size() / (pool.getParallelism() * 4));
+        ValidationTask<E> task = new ValidationTask<>(items, validation, failures, 0, items.size(), itemsPerTask);
+        if (ForkJoinPool.getPool() == pool)
+            task.invoke();
+        else
+            pool.invoke(task);
+        return failures;
+    }
+
+    public int getParallelismThreshold() {
+        return parallelismThreshold;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    private static final class ValidationTask<E> extends RecursiveAction {
+        private final transient List<E> items;
+        private final transient Function<? super E, RuntimeException> validation;
+        private final RuntimeException[] failures;
+        private final int from;
+        private final int to;
+        private final int itemsPerTask;
+
+        private ValidationTask(List<E> items, Function<? super E, RuntimeException> validation, RuntimeException[] failures, int from, int to, int itemsPerTask) {
+            this.items = items;
+            this.validation = validation;
+            this.failures = failures;
+            this.from = from;
+            this.to = to;
+            this.itemsPerTask = itemsPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= itemsPerTask) {
+                for (int i = from; i < to; i++)
+                    failures[i] = validation.apply(items.get(i));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ValidationTask<>(items, validation, failures, from, middle, itemsPerTask),
+                    new ValidationTask<>(items, validation, failures, middle, to, itemsPerTask));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.validation;
+
+import it.water.core.api.model.Resource;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.spi.PropertyValidator;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AnnotatedArrayType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.AnnotatedParameterizedType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Validation plan of a resource class, computed once per class: the properties carrying constraints
+ * (on fields, getters or type arguments, cascaded ones included) with a compiled accessor each.
+ * Classes without constraints are never handed to the validator, changed properties are found by comparing the
+ * constrained values only and, with a PropertyValidator, only those properties are validated.
+ * Cascaded properties are always considered changed, since their nested values may change in place.
+ * Classes with class level constraints are always validated as a whole.
+ */
+public class ValidationPlan {
+    private static final Set<String> CONSTRAINT_MARKERS = Set.of("jakarta.validation.Constraint", "javax.validation.Constraint");
+    private static final Set<String> CASCADE_ANNOTATIONS = Set.of("jakarta.validation.Valid", "javax.validation.Valid");
+
+    private static final ClassValue<ValidationPlan> plans = new ClassValue<>() {
+        @Override
+        protected ValidationPlan computeValue(Class<?> type) {
+            return new ValidationPlan(type);
+        }
+    };
+
+    private static final ClassValue<Boolean> constraintTypes = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> annotationType) {
+            return isConstraintType(annotationType);
+        }
+    };
+
+    private final boolean classConstrained;
+    private final String[] propertyNames;
+    private final MethodHandle[] accessors;
+    private final boolean[] cascaded;
+    private final Set<String> constrainedProperties;
+
+    private ValidationPlan(Class<?> type) {
+        Map<String, MethodHandle> properties = new LinkedHashMap<>();
+        Set<String> cascadedProperties = new HashSet<>();
+        boolean constrainedType = false;
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass())
+            hierarchy.add(0, current);
+        for (Class<?> current : hierarchy) {
+            constrainedType |= hasConstraints(current);
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic() && (hasConstraints(field) || hasConstraints(field.getAnnotatedType()))) {
+                    properties.putIfAbsent(field.getName(), accessorOf(field));
+                    if (isCascaded(field) || isCascaded(field.getAnnotatedType()))
+                        cascadedProperties.add(field.getName());
+                }
+            }
+            for (Method method : current.getDeclaredMethods()) {
+                String propertyName = propertyNameOf(method);
+                if (propertyName != null && (hasConstraints(method) || hasConstraints(method.getAnnotatedReturnType()))) {
+                    properties.putIfAbsent(propertyName, accessorOf(method));
+                    if (isCascaded(method) || isCascaded(method.getAnnotatedReturnType()))
+                        cascadedProperties.add(propertyName);
+                }
+            }
+        }
+        this.classConstrained = constrainedType;
+        this.propertyNames = properties.keySet().toArray(new String[0]);
+        this.accessors = properties.values().toArray(new MethodHandle[0]);
+        this.cascaded = new boolean[propertyNames.length];
+        for (int i = 0; i < propertyNames.length; i++)
+            this.cascaded[i] = cascadedProperties.contains(propertyNames[i]);
+        this.constrainedProperties = Collections.unmodifiableSet(new LinkedHashSet<>(properties.keySet()));
+    }
+
+    /**
+     * @param type resource class
+     * @return the shared plan of the class
+     */
+    public static ValidationPlan of(Class<?> type) {
+        return plans.get(type);
+    }
+
+    /**
+     * @return false if resources of this class never need validation
+     */
+    public boolean hasConstraints() {
+        return classConstrained || propertyNames.length > 0;
+    }
+
+    public boolean isClassConstrained() {
+        return classConstrained;
+    }
+
+    public Set<String> getConstrainedProperties() {
+        return constrainedProperties;
+    }
+
+    /**
+     * @param validator validator
+     * @param resource  resource to validate
+     * @param loaded    persisted state of the resource, null or the resource itself to validate all the constrained properties
+     */
+    public void validate(WaterValidator validator, Resource resource, Resource loaded) {
+        if (!hasConstraints())
+            return;
+        //a resource changed in place has no persisted state to compare with
+        if (classConstrained || loaded == null || loaded == resource || loaded.getClass() != resource.getClass()) {
+            validator.validate(resource);
+            return;
+        }
+        Set<String> changedProperties = changedProperties(resource, loaded);
+        if (changedProperties.isEmpty())
+            return;
+        if (validator instanceof PropertyValidator propertyValidator)
+            propertyValidator.validateProperties(resource, changedProperties);
+        else
+            validator.validate(resource);
+    }
+
+    /**
+     * @param resource resource
+     * @param loaded   persisted state of the resource
+     * @return constrained properties whose value differs from the persisted one, cascaded properties included,
+     * all of them when the persisted state is the resource itself
+     */
+    public Set<String> changedProperties(Resource resource, Resource loaded) {
+        if (resource == loaded)
+            return constrainedProperties;
+        Set<String> changedProperties = null;
+        for (int i = 0; i < accessors.length; i++) {
+            if (cascaded[i] || accessors[i] == null || !Objects.deepEquals(valueOf(accessors[i], resource), valueOf(accessors[i], loaded))) {
+                if (changedProperties == null)
+                    changedProperties = new LinkedHashSet<>();
+                changedProperties.add(propertyNames[i]);
+            }
+        }
+        return changedProperties != null ? changedProperties : Collections.emptySet();
+    }
+
+    private static Object valueOf(MethodHandle accessor, Resource resource) {
+        try {
+            return accessor.invoke(resource);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static MethodHandle accessorOf(Field field) {
+        try {
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (RuntimeException | IllegalAccessException e) {
+            //values which cannot be read are always considered changed
+            return null;
+        }
+    }
+
+    private static MethodHandle accessorOf(Method method) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (RuntimeException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static String propertyNameOf(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || method.isSynthetic() || method.isBridge() || method.getParameterCount() > 0 || method.getReturnType() == void.class)
+            return null;
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3)
+            return decapitalize(name.substring(3));
+        if (name.startsWith("is") && name.length() > 2 && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class))
+            return decapitalize(name.substring(2));
+        return null;
+    }
+
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)))
+            return name;
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static boolean hasConstraints(AnnotatedElement element) {
+        for (Annotation annotation : element.getDeclaredAnnotations()) {
+            if (CASCADE_ANNOTATIONS.contains(annotation.annotationType().getName()) || constraintTypes.get(annotation.annotationType()))
+                return true;
+        }
+        if (element instanceof AnnotatedParameterizedType parameterizedType)
+            return Arrays.stream(parameterizedType.getAnnotatedActualTypeArguments()).anyMatch(ValidationPlan::hasConstraints);
+        if (element instanceof AnnotatedArrayType arrayType)
+            return hasConstraints(arrayType.getAnnotatedGenericComponentType());
+        return false;
+    }
+
+    /**
+     * @return true if the element, or one of its type arguments, is annotated with Valid
+     */
+    private static boolean isCascaded(AnnotatedElement element) {
+        for (Annotation annotation : element.getDeclaredAnnotations()) {
+            if (CASCADE_ANNOTATIONS.contains(annotation.annotationType().getName()))
+                return true;
+        }
+        if (element instanceof AnnotatedParameterizedType parameterizedType)
+            return Arrays.stream(parameterizedType.getAnnotatedActualTypeArguments()).anyMatch(ValidationPlan::isCascaded);
+        if (element instanceof AnnotatedArrayType arrayType)
+            return isCascaded(arrayType.getAnnotatedGenericComponentType());
+        return false;
+    }
+
+    /**
+     * @param annotationType annotation type
+     * @return true for constraints and for containers of repeated constraints, ex. Pattern.List
+     */
+    private static boolean isConstraintType(Class<?> annotationType) {
+        for (Annotation meta : annotationType.getDeclaredAnnotations()) {
+            if (CONSTRAINT_MARKERS.contains(meta.annotationType().getName()))
+                return true;
+        }
+        try {
+            Class<?> valueType = annotationType.getMethod("value").getReturnType();
+            return valueType.isArray() && valueType.getComponentType().isAnnotation() && valueType.getComponentType() != annotationType
+                    && constraintTypes.get(valueType.getComponentType());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.AssetCategoryIntegrationClient;
+import it.water.core.api.service.integration.AssetTagIntegrationClient;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.entity.model.BatchResult;
+import it.water.repository.service.asset.AssetIdDelta;
+import it.water.repository.service.asset.AssetMutation;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.spi.BatchAssetCategoryIntegrationClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Tests for the synchronization of asset categories and tags.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AssetSyncTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private AssetCategoryIntegrationClient assetCategoryClient;
+    @Mock
+    private AssetTagIntegrationClient assetTagClient;
+
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        systemService.setAssetCategoryIntegrationClient(assetCategoryClient);
+        systemService.setAssetTagIntegrationClient(assetTagClient);
+    }
+
+    @Test
+    void testDeltaOfUnsortedIds() {
+        AssetIdDelta delta = AssetIdDelta.of(new long[]{9, 3, 5, 3, 1}, new long[]{7, 1, 5, 7, 2});
+        Assertions.assertArrayEquals(new long[]{2, 7}, delta.getAdded());
+        Assertions.assertArrayEquals(new long[]{3, 9}, delta.getRemoved());
+        Assertions.assertTrue(AssetIdDelta.of(new long[]{2, 1}, new long[]{1, 2}).isEmpty());
+        Assertions.assertArrayEquals(new long[]{4}, AssetIdDelta.of(new long[]{4}, null).getRemoved());
+    }
+
+    @Test
+    void testUnchangedAssetsAreNotWritten() {
+        Mockito.when(assetCategoryClient.findAssetCategories(any(), anyLong())).thenReturn(new long[]{2, 1});
+        Mockito.when(assetTagClient.findAssetTags(any(), anyLong())).thenReturn(new long[]{10});
+        systemService.update(entity(new long[]{1, 2}, new long[]{10}));
+        Mockito.verify(assetCategoryClient, Mockito.never()).addAssetCategories(any(), anyLong(), any());
+        Mockito.verify(assetCategoryClient, Mockito.never()).removeAssetCategories(any(), anyLong(), any());
+        Mockito.verify(assetTagClient, Mockito.never()).addAssetTags(any(), anyLong(), any());
+        Mockito.verify(assetTagClient, Mockito.never()).removeAssetTags(any(), anyLong(), any());
+    }
+
+    @Test
+    void testOnlyChangedAssetsAreWritten() {
+        Mockito.when(assetCategoryClient.findAssetCategories(any(), anyLong())).thenReturn(new long[]{1, 2, 3});
+        Mockito.when(assetTagClient.findAssetTags(any(), anyLong())).thenReturn(new long[]{10});
+        systemService.update(entity(new long[]{2, 3, 4}, new long[]{10, 11}));
+        Mockito.verify(assetCategoryClient).removeAssetCategories(any(), eq(1L), aryEq(new long[]{1}));
+        Mockito.verify(assetCategoryClient).addAssetCategories(any(), eq(1L), aryEq(new long[]{4}));
+        Mockito.verify(assetTagClient, Mockito.never()).removeAssetTags(any(), anyLong(), any());
+        Mockito.verify(assetTagClient).addAssetTags(any(), eq(1L), aryEq(new long[]{11}));
+    }
+
+    @Test
+    void testBatchClientReceivesOneBulkCallPerChunk() {
+        AssetCategoryIntegrationClient batchCategoryClient = Mockito.mock(AssetCategoryIntegrationClient.class,
+                Mockito.withSettings().extraInterfaces(BatchAssetCategoryIntegrationClient.class));
+        systemService.setAssetCategoryIntegrationClient(batchCategoryClient);
+        BatchResult<TestEntity> result = systemService.saveAll(List.of(entity(1L, new long[]{1}, null), entity(2L, new long[]{1, 2}, null), entity(3L, null, null)));
+        Assertions.assertEquals(3, result.getSucceededCount());
+        ArgumentCaptor<List<AssetMutation>> mutations = ArgumentCaptor.forClass(List.class);
+        Mockito.verify((BatchAssetCategoryIntegrationClient) batchCategoryClient).updateAssetCategories(eq(TestEntity.class.getName()), mutations.capture());
+        Assertions.assertEquals(List.of(1L, 2L), mutations.getValue().stream().map(AssetMutation::getResourceId).toList());
+        Assertions.assertArrayEquals(new long[]{1, 2}, mutations.getValue().get(1).getAddedIds());
+        Mockito.verify(batchCategoryClient, Mockito.never()).addAssetCategories(any(), anyLong(), any());
+    }
+
+    @Test
+    void testFailedBulkCallFallsBackToSingleEntities() {
+        AssetCategoryIntegrationClient batchCategoryClient = Mockito.mock(AssetCategoryIntegrationClient.class,
+                Mockito.withSettings().extraInterfaces(BatchAssetCategoryIntegrationClient.class));
+        Mockito.doThrow(new IllegalStateException("bulk failure")).when((BatchAssetCategoryIntegrationClient) batchCategoryClient).updateAssetCategories(any(), any());
+        Mockito.doThrow(new IllegalStateException("single failure")).when(batchCategoryClient).addAssetCategories(any(), eq(2L), any());
+        systemService.setAssetCategoryIntegrationClient(batchCategoryClient);
+        BatchResult<TestEntity> result = systemService.saveAll(List.of(entity(1L, new long[]{1}, null), entity(2L, new long[]{2}, null)));
+        Assertions.assertEquals(1, result.getSucceededCount());
+        Assertions.assertEquals(1, result.getFailedCount());
+        Mockito.verify(batchCategoryClient).addAssetCategories(any(), eq(1L), aryEq(new long[]{1}));
+    }
+
+    private static TestEntity entity(long[] categoryIds, long[] tagIds) {
+        return entity(1L, categoryIds, tagIds);
+    }
+
+    private static TestEntity entity(long id, long[] categoryIds, long[] tagIds) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setCategoryIds(categoryIds);
+        entity.setTagIds(tagIds);
+        return entity;
+    }
+}
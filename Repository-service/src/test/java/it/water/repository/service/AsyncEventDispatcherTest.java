@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service;
+
+import it.water.core.api.entity.events.PostSaveEvent;
+import it.water.core.api.entity.events.PreSaveEvent;
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.event.AsyncEventDispatcher;
+import it.water.repository.service.event.AsyncEventOptions;
+import it.water.repository.service.event.AsyncEventStatistics;
+import it.water.repository.service.event.OverflowPolicy;
+import it.water.repository.service.event.WaitStrategy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the asynchronous dispatch of post events.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AsyncEventDispatcherTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private ApplicationEventProducer eventProducer;
+
+    @Test
+    void testPostEventsDispatchedAsynchronously() throws InterruptedException {
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> preEventThreads = Collections.synchronizedList(new ArrayList<>());
+        Mockito.doAnswer(i -> preEventThreads.add(Thread.currentThread())).when(eventProducer).produceEvent(any(), eq(PreSaveEvent.class));
+        Mockito.doAnswer(i -> release.await(5, TimeUnit.SECONDS)).when(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        BaseEntitySystemServiceImpl<TestEntity> systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher();
+        systemService.enableAsyncPostEvents(dispatcher);
+
+        //the listener is blocked, save must not wait for it
+        systemService.save(new TestEntity());
+        Assertions.assertEquals(List.of(Thread.currentThread()), preEventThreads);
+        release.countDown();
+        Assertions.assertTrue(dispatcher.close(5000));
+        Mockito.verify(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        AsyncEventStatistics statistics = systemService.getAsyncEventStatistics();
+        Assertions.assertEquals(1, statistics.getPublished());
+        Assertions.assertEquals(1, statistics.getDispatched());
+        Assertions.assertEquals(0, statistics.getQueueDepth());
+    }
+
+    @Test
+    void testListenerErrorsDoNotStopTheDispatcher() {
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        Mockito.doThrow(new StackOverflowError()).doNothing().when(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        BaseEntitySystemServiceImpl<TestEntity> systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher();
+        systemService.enableAsyncPostEvents(dispatcher);
+
+        systemService.save(new TestEntity());
+        systemService.save(new TestEntity());
+        Assertions.assertTrue(dispatcher.close(5000));
+        AsyncEventStatistics statistics = systemService.getAsyncEventStatistics();
+        Assertions.assertEquals(2, statistics.getDispatched());
+        Assertions.assertEquals(1, statistics.getFailed());
+        Assertions.assertEquals(0, statistics.getCallerRuns());
+    }
+
+    @Test
+    void testEventsOfSameTypeKeepPublicationOrder() throws InterruptedException {
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        Mockito.doAnswer(i -> delivered.add(((BaseEntity) i.getArgument(0)).getId())).when(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        AsyncEventOptions options = new AsyncEventOptions();
+        options.setCapacity(16);
+        options.setDispatcherThreads(3);
+        options.setWaitStrategy(WaitStrategy.YIELDING);
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(options);
+        int publishers = 4;
+        int eventsPerPublisher = 500;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            long base = p * 10000L;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < eventsPerPublisher; i++) {
+                    TestEntity entity = new TestEntity();
+                    entity.setId(base + i);
+                    dispatcher.produceEvent(eventProducer, TestEntity.class, entity, PostSaveEvent.class);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Assertions.assertTrue(dispatcher.close(5000));
+        Assertions.assertEquals(publishers * eventsPerPublisher, delivered.size());
+        long[] last = new long[publishers];
+        Arrays.fill(last, -1);
+        for (long id : delivered) {
+            int publisher = (int) (id / 10000);
+            Assertions.assertTrue(id % 10000 > last[publisher]);
+            last[publisher] = id % 10000;
+        }
+    }
+
+    @Test
+    void testDropWhenFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(i -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }).when(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        AsyncEventOptions options = new AsyncEventOptions();
+        options.setCapacity(2);
+        options.setDispatcherThreads(1);
+        options.setOverflowPolicy(OverflowPolicy.DROP);
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(options);
+        dispatcher.produceEvent(eventProducer, TestEntity.class, new TestEntity(), PostSaveEvent.class);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 9; i++)
+            dispatcher.produceEvent(eventProducer, TestEntity.class, new TestEntity(), PostSaveEvent.class);
+        AsyncEventStatistics statistics = dispatcher.getStatistics();
+        Assertions.assertEquals(2, statistics.getPublished());
+        Assertions.assertEquals(8, statistics.getDropped());
+        Assertions.assertEquals(2, statistics.getQueueDepth());
+        release.countDown();
+        Assertions.assertTrue(dispatcher.close(5000));
+        Assertions.assertEquals(2, dispatcher.getStatistics().getDispatched());
+    }
+
+    @Test
+    void testQueuedEventsCarryEntitySnapshot() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> deliveredFields = Collections.synchronizedList(new ArrayList<>());
+        Mockito.doAnswer(i -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return deliveredFields.add(((TestEntity) i.getArgument(0)).getEntityField());
+        }).when(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher();
+        TestEntity entity = new TestEntity();
+        entity.setEntityField("published");
+        dispatcher.produceEvent(eventProducer, TestEntity.class, entity, PostSaveEvent.class);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        //the caller keeps changing its instance after the event has been published
+        entity.setEntityField("changed by caller");
+        release.countDown();
+        Assertions.assertTrue(dispatcher.close(5000));
+        Assertions.assertEquals(List.of("published"), deliveredFields);
+    }
+
+    @Test
+    void testEventsPublishedAfterCloseKeepOrder() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        Mockito.doAnswer(i -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return delivered.add(((BaseEntity) i.getArgument(0)).getId());
+        }).when(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+        AsyncEventOptions options = new AsyncEventOptions();
+        options.setDispatcherThreads(1);
+        AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(options);
+        dispatcher.produceEvent(eventProducer, TestEntity.class, entity(1L), PostSaveEvent.class);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread closer = new Thread(() -> dispatcher.close(5000));
+        closer.start();
+        while (!dispatcher.isClosed())
+            Thread.onSpinWait();
+        //published on the caller after close, it must wait for the queued event
+        Thread latePublisher = new Thread(() -> dispatcher.produceEvent(eventProducer, TestEntity.class, entity(2L), PostSaveEvent.class));
+        latePublisher.start();
+        Thread.sleep(100);
+        release.countDown();
+        latePublisher.join(5000);
+        closer.join(5000);
+        Assertions.assertEquals(List.of(1L, 2L), delivered);
+        Assertions.assertEquals(1, dispatcher.getStatistics().getCallerRuns());
+    }
+
+    private static TestEntity entity(long id) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        return entity;
+    }
+}
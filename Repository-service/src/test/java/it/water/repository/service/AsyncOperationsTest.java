@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * Tests for the async read methods of BaseEntityServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AsyncOperationsTest {
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private BaseEntitySystemApi<TestEntity> systemService;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private SecurityContext adminContext;
+
+    private final ThreadLocal<SecurityContext> currentContext = new ThreadLocal<>();
+    private BaseEntityServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(runtime.getSecurityContext()).thenAnswer(i -> currentContext.get());
+        Mockito.doAnswer(i -> {
+            currentContext.set(i.getArgument(0));
+            return null;
+        }).when(runtime).fillSecurityContext(any());
+        Mockito.when(adminContext.isAdmin()).thenReturn(true);
+        service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+    }
+
+    @Test
+    void testSecurityContextIsPropagated() {
+        AtomicReference<SecurityContext> seenContext = new AtomicReference<>();
+        AtomicReference<Thread> seenThread = new AtomicReference<>();
+        Mockito.when(systemService.countAll(any())).thenAnswer(i -> {
+            seenContext.set(runtime.getSecurityContext());
+            seenThread.set(Thread.currentThread());
+            return 42L;
+        });
+        currentContext.set(adminContext);
+        Assertions.assertEquals(42L, service.countAllAsync(null).join());
+        Assertions.assertSame(adminContext, seenContext.get());
+        Assertions.assertNotSame(Thread.currentThread(), seenThread.get());
+    }
+
+    @Test
+    void testMissingSecurityContextFailsTheFuture() {
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> service.findAllAsync(null, 10, 1, null).join());
+        Assertions.assertTrue(e.getCause() instanceof UnauthorizedException);
+    }
+
+    @Test
+    void testCustomExecutorAndContextRestored() {
+        AtomicInteger executions = new AtomicInteger();
+        Executor callerRuns = task -> {
+            executions.incrementAndGet();
+            task.run();
+        };
+        service.setAsyncExecutor(callerRuns);
+        Mockito.when(systemService.countAll(any())).thenReturn(1L);
+        currentContext.set(adminContext);
+        service.countAllAsync(null).join();
+        Assertions.assertEquals(1, executions.get());
+        Assertions.assertSame(adminContext, currentContext.get());
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.PermissionManager;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.validation.WaterValidator;
+import it.water.core.model.exceptions.ValidationException;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import it.water.repository.entity.model.BatchResult;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.spi.TransactionalRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+
+/**
+ * Tests for the batch operations of the service layers.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BatchOperationsTest {
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private SecurityContext securityContext;
+    @Mock
+    private PermissionManager permissionManager;
+
+    private TestEntityRepository repository;
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        repository = Mockito.mock(TestEntityRepository.class, Mockito.withSettings().extraInterfaces(TransactionalRepository.class));
+        Mockito.doAnswer(i -> {
+            ((Runnable) i.getArgument(0)).run();
+            return null;
+        }).when((TransactionalRepository) repository).runInTransaction(any());
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0), "persisted", 1L));
+        Mockito.when(runtime.getSecurityContext()).thenReturn(securityContext);
+        Mockito.when(securityContext.getLoggedUsername()).thenReturn("user");
+        Mockito.when(componentRegistry.findComponent(PermissionManager.class, null)).thenReturn(permissionManager);
+        Mockito.when(permissionManager.checkPermission(anyString(), any(TestEntity.class), anyString())).thenReturn(true);
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        systemService.setBatchChunkSize(2);
+    }
+
+    @Test
+    void testInvalidItemsDoNotAbortTheBatch() {
+        Mockito.doThrow(new ValidationException()).when(waterValidator).validate(argThat(resource -> resource instanceof TestEntity testEntity && "invalid".equals(testEntity.getEntityField())));
+        BatchResult<TestEntity> result = systemService.saveAll(List.of(entity(1, "a", 1L), entity(2, "invalid", 1L), entity(3, "c", 1L)));
+        Assertions.assertEquals(2, result.getSucceededCount());
+        Assertions.assertEquals(1, result.getFailedCount());
+        Assertions.assertEquals(1, result.getFailures().get(0).getIndex());
+        Mockito.verify(repository, Mockito.times(2)).persist(any());
+    }
+
+    @Test
+    void testFailedChunkIsRetriedOneByOne() {
+        Mockito.when(repository.persist(argThat(entity -> entity != null && entity.getId() == 2)))
+                .thenThrow(new IllegalStateException("constraint violation"));
+        BatchResult<TestEntity> result = systemService.saveAll(List.of(entity(1, "a", 1L), entity(2, "b", 1L), entity(3, "c", 1L)));
+        //two chunks: [1, 2] in a failed transaction, then retried one by one, and [3]
+        Mockito.verify((TransactionalRepository) repository, Mockito.times(2)).runInTransaction(any());
+        Assertions.assertEquals(2, result.getSucceededCount());
+        Assertions.assertEquals(1, result.getFailures().get(0).getIndex());
+        Assertions.assertEquals(2, result.getFailures().get(0).getEntityId());
+    }
+
+    @Test
+    void testRemoveUsesRepositoryBulkRemoval() {
+        Mockito.when(repository.find(3L)).thenReturn(null);
+        BatchResult<TestEntity> result = systemService.removeAllByIds(List.of(1L, 2L, 3L));
+        Mockito.verify(repository).removeAllByIds(List.of(1L, 2L));
+        Mockito.verify(repository, Mockito.never()).remove(anyLong());
+        Assertions.assertEquals(2, result.getSucceededCount());
+        Assertions.assertEquals(2, result.getFailures().get(0).getIndex());
+    }
+
+    @Test
+    void testServiceUpdatesOnlyOwnedEntities() {
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(1L);
+        Mockito.when(repository.find(2L)).thenReturn(entity(2, "persisted", 2L));
+        BaseEntityServiceImpl<TestEntity> service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+        BatchResult<TestEntity> result = service.updateAll(List.of(entity(1, "mine", 5L), entity(2, "not mine", 1L)));
+        Assertions.assertEquals(1, result.getSucceededCount());
+        //the owner is always restored from the persisted entity
+        Assertions.assertEquals(1L, result.getSucceeded().get(0).getOwnerUserId());
+        Assertions.assertEquals(1, result.getFailures().get(0).getIndex());
+        Assertions.assertTrue(result.getFailures().get(0).getCause() instanceof UnauthorizedException);
+        Mockito.verify(repository, Mockito.times(1)).update(any());
+    }
+
+    @Test
+    void testRolledBackChunkIsRetriedWithTheSubmittedEntities() {
+        List<Long> persistedIds = new ArrayList<>();
+        Mockito.when(repository.persist(any())).thenAnswer(i -> {
+            TestEntity entity = i.getArgument(0);
+            persistedIds.add(entity.getId());
+            if ("invalid".equals(entity.getEntityField()))
+                throw new IllegalStateException("constraint violation");
+            entity.setId(100L + persistedIds.size());
+            return entity;
+        });
+        BatchResult<TestEntity> result = systemService.saveAll(List.of(entity(0, "a", 1L), entity(0, "invalid", 1L)));
+        //the id assigned by the rolled back transaction is not persisted again
+        Assertions.assertEquals(List.of(0L, 0L, 0L, 0L), persistedIds);
+        Assertions.assertEquals(1, result.getSucceededCount());
+        Assertions.assertEquals(103L, result.getSucceeded().get(0).getId());
+    }
+
+    @Test
+    void testServiceChecksTheEntityPermissionOfEachItem() {
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(1L);
+        Mockito.when(permissionManager.checkPermission(anyString(), argThat((TestEntity entity) -> entity != null && entity.getId() == 2), anyString())).thenReturn(false);
+        BaseEntityServiceImpl<TestEntity> service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+        //both entities are owned by the user, but the permission on the second one is refused
+        BatchResult<TestEntity> result = service.removeAllByIds(List.of(1L, 2L));
+        Assertions.assertEquals(1, result.getSucceededCount());
+        Assertions.assertEquals(2L, result.getFailures().get(0).getEntityId());
+        Assertions.assertTrue(result.getFailures().get(0).getCause() instanceof UnauthorizedException);
+        Mockito.verify(repository).removeAllByIds(List.of(1L));
+
+        //without a permission manager only admins are allowed
+        Mockito.when(componentRegistry.findComponent(PermissionManager.class, null)).thenReturn(null);
+        BaseEntityServiceImpl<TestEntity> serviceWithoutPermissionManager = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        serviceWithoutPermissionManager.setRuntime(runtime);
+        Assertions.assertEquals(1, serviceWithoutPermissionManager.updateAll(List.of(entity(1, "mine", 1L))).getFailedCount());
+        Mockito.when(securityContext.isAdmin()).thenReturn(true);
+        Assertions.assertEquals(1, serviceWithoutPermissionManager.updateAll(List.of(entity(1, "mine", 1L))).getSucceededCount());
+    }
+
+    private static TestEntity entity(long id, String field, Long ownerUserId) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField(field);
+        entity.setEntityVersion(1);
+        entity.setOwnerUserId(ownerUserId);
+        return entity;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service;
+
+import it.water.core.api.entity.events.PostSaveEvent;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.service.integration.SharedEntityIntegrationClient;
+import it.water.core.api.validation.WaterValidator;
+import it.water.core.registry.model.exception.NoComponentRegistryFoundException;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.cache.CachedComponentLookup;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the cached resolution of the event producer and of the shared entity integration client.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ComponentLookupCacheTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private ApplicationEventProducer eventProducer;
+
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+    }
+
+    @Test
+    void testEventProducerResolvedOnce() {
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        for (int i = 0; i < 3; i++)
+            systemService.save(new TestEntity());
+        Mockito.verify(componentRegistry, Mockito.times(1)).findComponent(eq(ApplicationEventProducer.class), isNull());
+        Mockito.verify(eventProducer, Mockito.times(3)).produceEvent(any(), eq(PostSaveEvent.class));
+    }
+
+    @Test
+    void testMissingEventProducerCachedUntilRegistration() {
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenThrow(NoComponentRegistryFoundException.class);
+        systemService.save(new TestEntity());
+        systemService.save(new TestEntity());
+        Mockito.verify(componentRegistry, Mockito.times(1)).findComponent(eq(ApplicationEventProducer.class), isNull());
+
+        Mockito.doReturn(eventProducer).when(componentRegistry).findComponent(eq(ApplicationEventProducer.class), isNull());
+        CachedComponentLookup.invalidateAll(eventProducer.getClass());
+        systemService.save(new TestEntity());
+        Mockito.verify(eventProducer).produceEvent(any(), eq(PostSaveEvent.class));
+    }
+
+    @Test
+    void testSharedEntityIntegrationClientResolvedOnce() {
+        SharedEntityIntegrationClient client = Mockito.mock(SharedEntityIntegrationClient.class);
+        Mockito.when(componentRegistry.findComponent(eq(SharedEntityIntegrationClient.class), isNull())).thenReturn(client);
+        BaseEntityServiceImpl<TestEntity> service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        Assertions.assertSame(client, service.getSharedEntityIntegrationClient());
+        Assertions.assertSame(client, service.getSharedEntityIntegrationClient());
+        Mockito.verify(componentRegistry, Mockito.times(1)).findComponent(eq(SharedEntityIntegrationClient.class), isNull());
+
+        CachedComponentLookup.invalidateAll(SharedEntityIntegrationClient.class);
+        service.getSharedEntityIntegrationClient();
+        Mockito.verify(componentRegistry, Mockito.times(2)).findComponent(eq(SharedEntityIntegrationClient.class), isNull());
+    }
+
+    @Test
+    void testFoundComponentExpiresAfterTtl() throws InterruptedException {
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        CachedComponentLookup<ApplicationEventProducer> lookup = new CachedComponentLookup<>(ApplicationEventProducer.class, () -> componentRegistry, 50, 0, null);
+        Assertions.assertSame(eventProducer, lookup.get());
+        Assertions.assertSame(eventProducer, lookup.get());
+        Assertions.assertEquals(1, lookup.getRegistryLookups());
+
+        //the producer is unregistered without notifying the lookup
+        Mockito.doThrow(NoComponentRegistryFoundException.class).when(componentRegistry).findComponent(eq(ApplicationEventProducer.class), isNull());
+        Thread.sleep(100);
+        Assertions.assertNull(lookup.get());
+        Assertions.assertEquals(2, lookup.getRegistryLookups());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.entity.model.CountResult;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.cache.CountCache;
+import it.water.repository.service.cache.CountCacheStatistics;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.spi.CountEstimatingRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * Tests for the count cache and the approximate counts of BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CountCacheTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.countAll(any())).thenReturn(42L);
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        service = systemService(repository);
+    }
+
+    @Test
+    void testCountIsServedFromCacheByFilter() {
+        service.enableCountCache(10, 60000);
+        Query activeFilter = filter("active = true");
+        Query inactiveFilter = filter("active = false");
+        Assertions.assertEquals(42L, service.countAll(activeFilter));
+        Assertions.assertEquals(42L, service.countAll(filter("active = true")));
+        Assertions.assertEquals(42L, service.countAll(inactiveFilter));
+        Mockito.verify(repository, Mockito.times(1)).countAll(activeFilter);
+        Mockito.verify(repository, Mockito.times(1)).countAll(inactiveFilter);
+        CountCacheStatistics statistics = service.getCountCacheStatistics();
+        Assertions.assertEquals(1, statistics.getHits());
+        Assertions.assertEquals(2, statistics.getMisses());
+        Assertions.assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    void testWritesInvalidateCounts() {
+        service.enableCountCache(10, 60000);
+        service.countAll(null);
+        TestEntity entity = new TestEntity();
+        entity.setId(1L);
+        service.update(entity);
+        service.countAll(null);
+        Mockito.verify(repository, Mockito.times(2)).countAll(null);
+        Assertions.assertEquals(1, service.getCountCacheStatistics().getInvalidations());
+        service.disableCountCache();
+        Assertions.assertNull(service.getCountCacheStatistics());
+    }
+
+    @Test
+    void testStalenessBoundAndWritesDuringCount() throws InterruptedException {
+        CountCache cache = new CountCache(10, 20);
+        cache.put(null, cache.generation(), 5);
+        Assertions.assertEquals(5L, cache.get(null).getCount());
+        Thread.sleep(40);
+        Assertions.assertNull(cache.get(null));
+
+        long generation = cache.generation();
+        cache.invalidateAll();
+        cache.put(null, generation, 6);
+        Assertions.assertNull(cache.get(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CountCache(10, 0));
+    }
+
+    @Test
+    void testApproximateCountIsFlagged() {
+        TestEntityRepository estimatingRepository = Mockito.mock(TestEntityRepository.class, Mockito.withSettings().extraInterfaces(CountEstimatingRepository.class));
+        Mockito.when(((CountEstimatingRepository) estimatingRepository).estimateCount(any())).thenReturn(1000L);
+        Mockito.when(estimatingRepository.countAll(any())).thenReturn(998L);
+        BaseEntitySystemServiceImpl<TestEntity> estimatingService = systemService(estimatingRepository);
+
+        CountResult estimate = estimatingService.countAll(null, true);
+        Assertions.assertTrue(estimate.isApproximate());
+        Assertions.assertEquals(1000L, estimate.getCount());
+        CountResult exact = estimatingService.countAll(null, false);
+        Assertions.assertFalse(exact.isApproximate());
+        Assertions.assertEquals(998L, exact.getCount());
+
+        //without estimates the count is exact
+        Assertions.assertFalse(service.countAll(null, true).isApproximate());
+    }
+
+    private BaseEntitySystemServiceImpl<TestEntity> systemService(TestEntityRepository testEntityRepository) {
+        BaseEntitySystemServiceImpl<TestEntity> systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return testEntityRepository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        return systemService;
+    }
+
+    private static Query filter(String definition) {
+        Query query = Mockito.mock(Query.class);
+        Mockito.when(query.getDefinition()).thenReturn(definition);
+        return query;
+    }
+}
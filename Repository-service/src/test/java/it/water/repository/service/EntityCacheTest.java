@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.validation.WaterValidator;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.cache.EntityCache;
+import it.water.repository.service.cache.EntityCacheStatistics;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+
+/**
+ * Tests for the read-through entity cache of BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EntityCacheTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private SecurityContext securityContext;
+
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0), "persisted", 1));
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+        service.setWaterValidator(waterValidator);
+        service.enableEntityCache(10, 0, EntityCacheTest::copy);
+    }
+
+    @Test
+    void testFindIsServedFromCache() {
+        Assertions.assertEquals("persisted", service.find(1L).getEntityField());
+        Assertions.assertEquals("persisted", service.find(1L).getEntityField());
+        Mockito.verify(repository, Mockito.times(1)).find(1L);
+        EntityCacheStatistics statistics = service.getEntityCacheStatistics();
+        Assertions.assertEquals(1, statistics.getHits());
+        Assertions.assertEquals(1, statistics.getMisses());
+        Assertions.assertEquals(0.5, statistics.getHitRatio());
+    }
+
+    @Test
+    void testPublicFindIsServedFromCacheWithOwnershipCheck() {
+        TestEntity owned = entity(5L, "owned", 1);
+        owned.setOwnerUserId(7L);
+        Mockito.when(repository.find(5L)).thenReturn(owned);
+        Mockito.when(runtime.getSecurityContext()).thenReturn(securityContext);
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(7L);
+        BaseEntityServiceImpl<TestEntity> publicService = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return service;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        publicService.setRuntime(runtime);
+        Assertions.assertEquals("owned", publicService.find(5L).getEntityField());
+        Assertions.assertEquals("owned", publicService.find(5L).getEntityField());
+        Mockito.verify(repository, Mockito.times(1)).find(5L);
+        Mockito.verify(repository, Mockito.never()).find(any(Query.class));
+        Assertions.assertEquals(1, service.getEntityCacheStatistics().getHits());
+    }
+
+    @Test
+    void testCachedEntityIsIsolatedFromCallers() {
+        service.find(1L).setEntityField("changed by caller");
+        Assertions.assertEquals("persisted", service.find(1L).getEntityField());
+    }
+
+    @Test
+    void testCacheRefreshedOnUpdateAndInvalidatedOnRemove() {
+        service.find(1L);
+        service.update(entity(1L, "updated", 2));
+        Assertions.assertEquals("updated", service.find(1L).getEntityField());
+        service.remove(1L);
+        Mockito.when(repository.find(1L)).thenReturn(null);
+        Assertions.assertNull(service.find(1L));
+    }
+
+    @Test
+    void testRemovedIdsCanBeCachedAgain() {
+        service.remove(1L);
+        service.find(1L);
+        service.find(1L);
+        //one load by the removal and one after it, the removal does not block later reloads
+        Mockito.verify(repository, Mockito.times(2)).find(1L);
+
+        EntityCache<TestEntity> cache = new EntityCache<>(10, 0, EntityCacheTest::copy);
+        long loadGeneration = cache.generation();
+        cache.invalidate(3L);
+        //a load started before the invalidation may return the removed entity
+        cache.loaded(entity(3L, "removed", 1), loadGeneration);
+        Assertions.assertNull(cache.get(3L));
+        cache.loaded(entity(3L, "reloaded", 1), cache.generation());
+        Assertions.assertEquals("reloaded", cache.get(3L).getEntityField());
+    }
+
+    @Test
+    void testOlderVersionIsNeverCached() {
+        service.save(entity(2L, "version 3", 3));
+        Mockito.when(repository.update(any())).thenReturn(entity(2L, "version 2", 2));
+        service.update(entity(2L, "version 2", 2));
+        Assertions.assertEquals("version 3", service.find(2L).getEntityField());
+        Assertions.assertEquals(1, service.getEntityCacheStatistics().getStaleRejections());
+    }
+
+    @Test
+    void testCacheBoundedAndDisabled() {
+        for (long id = 1; id <= 20; id++)
+            service.find(id);
+        Assertions.assertEquals(10, service.getEntityCacheStatistics().getSize());
+        Assertions.assertEquals(10, service.getEntityCacheStatistics().getEvictions());
+        service.disableEntityCache();
+        Assertions.assertFalse(service.isEntityCacheEnabled());
+        Assertions.assertNull(service.getEntityCacheStatistics());
+        service.find(20L);
+        Mockito.verify(repository, Mockito.times(2)).find(20L);
+    }
+
+    @Test
+    void testNotSerializableEntityRequiresCopier() {
+        Assertions.assertThrows(WaterRuntimeException.class, () -> service.enableEntityCache(10, 0));
+    }
+
+    private static TestEntity entity(long id, String field, int version) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField(field);
+        entity.setEntityVersion(version);
+        return entity;
+    }
+
+    private static TestEntity copy(TestEntity source) {
+        TestEntity copy = entity(source.getId(), source.getEntityField(), source.getEntityVersion());
+        copy.setOwnerUserId(source.getOwnerUserId());
+        return copy;
+    }
+}
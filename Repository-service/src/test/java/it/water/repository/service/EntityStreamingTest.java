@@ -0,0 +1,261 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryBuilder;
+import it.water.repository.entity.model.PaginatedResult;
+import it.water.repository.query.order.DefaultQueryOrder;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.spi.UncountedFindAllRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Tests for the publisher and stream reads of BaseEntitySystemServiceImpl.
+ * The repository mock keeps entities ordered by id and understands "id>N" keyset filters.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EntityStreamingTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private QueryBuilder queryBuilder;
+
+    private final NavigableMap<Long, TestEntity> table = new ConcurrentSkipListMap<>();
+    private final List<Integer> fetchedDeltas = new CopyOnWriteArrayList<>();
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        for (long id = 1; id <= 10; id++)
+            table.put(id, entity(id));
+        Mockito.when(repository.getQueryBuilderInstance()).thenReturn(queryBuilder);
+        Mockito.when(queryBuilder.createQueryFilter(anyString())).thenAnswer(i -> query(i.getArgument(0)));
+        Mockito.when(repository.findAll(anyInt(), anyInt(), any(), any())).thenAnswer(i -> page(i.getArgument(0), i.getArgument(1), i.getArgument(2)));
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+    }
+
+    @Test
+    void testPublisherFetchesOnDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.findAllPublisher(null, null).subscribe(subscriber);
+        Assertions.assertTrue(fetchedDeltas.isEmpty());
+        subscriber.subscription.request(3);
+        Assertions.assertEquals(List.of(1L, 2L, 3L), subscriber.ids);
+        subscriber.subscription.request(2);
+        Assertions.assertEquals(List.of(3, 2), fetchedDeltas);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assertions.assertEquals(10, subscriber.ids.size());
+        Assertions.assertTrue(subscriber.completed);
+        Mockito.verify(queryBuilder).createQueryFilter("id>3");
+    }
+
+    @Test
+    void testPublisherWithCustomOrderUsesPages() {
+        service.setStreamPageSize(4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.findAllPublisher(null, new DefaultQueryOrder().addOrderField("entityField", true)).subscribe(subscriber);
+        subscriber.subscription.request(100);
+        Assertions.assertEquals(10, subscriber.ids.size());
+        Assertions.assertTrue(subscriber.completed);
+        Mockito.verify(repository).findAll(eq(4), eq(3), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublisherDoesNotCount() {
+        TestEntityRepository uncountedRepository = uncountedRepository();
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return uncountedRepository;
+            }
+        };
+        service.setStreamPageSize(4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.findAllPublisher(null, null).subscribe(subscriber);
+        subscriber.subscription.request(100);
+        Assertions.assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), subscriber.ids);
+        Assertions.assertTrue(subscriber.completed);
+        Mockito.verify(uncountedRepository, Mockito.never()).findAll(anyInt(), anyInt(), any(), any());
+        //the last chunk is known to be the last one without an empty read
+        Mockito.verify((UncountedFindAllRepository<TestEntity>) uncountedRepository, Mockito.times(3)).findRange(eq(0), eq(5), any(), any());
+    }
+
+    @Test
+    void testInvalidRequestFailsSubscription() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.findAllPublisher(null, null).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        Assertions.assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void testStreamWalksAllPagesWithPrefetch() {
+        service.setStreamPageSize(3);
+        try (Stream<TestEntity> stream = service.findAllStream(null, null, 2)) {
+            Assertions.assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), stream.map(TestEntity::getId).toList());
+        }
+    }
+
+    @Test
+    void testStreamDoesNotCount() {
+        TestEntityRepository uncountedRepository = uncountedRepository();
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return uncountedRepository;
+            }
+        };
+        service.setStreamPageSize(3);
+        try (Stream<TestEntity> stream = service.findAllStream(null, new DefaultQueryOrder().addOrderField("entityField", true), 1)) {
+            Assertions.assertEquals(10, stream.count());
+        }
+        Mockito.verify(uncountedRepository, Mockito.never()).findAll(anyInt(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testStreamConsistentUnderConcurrentInserts() {
+        service.setStreamPageSize(3);
+        List<Long> ids = new ArrayList<>();
+        try (Stream<TestEntity> stream = service.findAllStream(null, new DefaultQueryOrder().addOrderField("id", true), 1)) {
+            stream.forEach(entity -> {
+                ids.add(entity.getId());
+                //inserts shift every later offset page, but not the keyset cursor
+                if (entity.getId() <= 5)
+                    table.put(100 + entity.getId(), entity(100 + entity.getId()));
+            });
+        }
+        Assertions.assertEquals(ids.stream().sorted().distinct().toList(), ids);
+        Assertions.assertTrue(ids.containsAll(LongStream.rangeClosed(1, 10).boxed().toList()));
+    }
+
+    @Test
+    void testClosingStreamStopsPrefetch() throws InterruptedException {
+        service.setStreamPageSize(2);
+        Stream<TestEntity> stream = service.findAllStream(null, null, 1);
+        Assertions.assertEquals(1L, stream.iterator().next().getId());
+        stream.close();
+        Thread.sleep(300);
+        int fetches = fetchedDeltas.size();
+        Thread.sleep(300);
+        Assertions.assertEquals(fetches, fetchedDeltas.size());
+        Assertions.assertTrue(fetches < 5);
+    }
+
+    private PaginableResult<TestEntity> page(int delta, int page, Query filter) {
+        fetchedDeltas.add(delta);
+        NavigableMap<Long, TestEntity> rows = table;
+        if (filter != null && filter.getDefinition().startsWith("id>"))
+            rows = table.tailMap(Long.parseLong(filter.getDefinition().substring(3)), false);
+        List<TestEntity> results = rows.values().stream().skip((long) (page - 1) * delta).limit(delta).toList();
+        int numPages = (rows.size() + delta - 1) / delta;
+        return new PaginatedResult<>(numPages, page, page < numPages ? page + 1 : 1, delta, results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TestEntityRepository uncountedRepository() {
+        TestEntityRepository uncountedRepository = Mockito.mock(TestEntityRepository.class, Mockito.withSettings().extraInterfaces(UncountedFindAllRepository.class));
+        Mockito.when(uncountedRepository.getQueryBuilderInstance()).thenReturn(queryBuilder);
+        Mockito.when(((UncountedFindAllRepository<TestEntity>) uncountedRepository).findRange(anyInt(), anyInt(), any(), any()))
+                .thenAnswer(i -> range(i.getArgument(0), i.getArgument(1), i.getArgument(2)));
+        return uncountedRepository;
+    }
+
+    private List<TestEntity> range(int firstResult, int maxResults, Query filter) {
+        fetchedDeltas.add(maxResults);
+        NavigableMap<Long, TestEntity> rows = table;
+        if (filter != null && filter.getDefinition().startsWith("id>"))
+            rows = table.tailMap(Long.parseLong(filter.getDefinition().substring(3)), false);
+        return rows.values().stream().skip(firstResult).limit(maxResults).toList();
+    }
+
+    private static Query query(String definition) {
+        Query query = Mockito.mock(Query.class);
+        Mockito.when(query.getDefinition()).thenReturn(definition);
+        return query;
+    }
+
+    static TestEntity entity(long id) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField("entity " + id);
+        return entity;
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<TestEntity> {
+        private final List<Long> ids = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(TestEntity item) {
+            ids.add(item.getId());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
+}
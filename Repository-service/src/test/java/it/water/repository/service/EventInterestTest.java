@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service;
+
+import it.water.core.api.entity.events.PostUpdateDetailedEvent;
+import it.water.core.api.entity.events.PreUpdateDetailedEvent;
+import it.water.core.api.entity.events.PreUpdateEvent;
+import it.water.core.api.model.BaseEntity;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.event.EventInterests;
+import it.water.repository.service.spi.EventInterestRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for skipping events and the pre-update read when no listener is interested.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EventInterestTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+
+    private ApplicationEventProducer eventProducer;
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        eventProducer = Mockito.mock(ApplicationEventProducer.class, Mockito.withSettings().extraInterfaces(EventInterestRegistry.class));
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> {
+            TestEntity entity = new TestEntity();
+            entity.setId(i.getArgument(0));
+            entity.setEntityField("persisted");
+            return entity;
+        });
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+    }
+
+    @Test
+    void testUpdateSkipsReadWithoutDetailedListeners() {
+        Mockito.when(((EventInterestRegistry) eventProducer).hasListeners(TestEntity.class, PreUpdateEvent.class)).thenReturn(true);
+        systemService.update(entity(1L));
+        Mockito.verify(repository, Mockito.never()).find(anyLong());
+        Mockito.verify(eventProducer).produceEvent(any(), eq(PreUpdateEvent.class));
+        Mockito.verify(eventProducer, Mockito.never()).produceDetailedEvent(any(), any(), any());
+    }
+
+    @Test
+    void testUpdateReadsSnapshotForDetailedListeners() {
+        Mockito.when(((EventInterestRegistry) eventProducer).hasListeners(TestEntity.class, PostUpdateDetailedEvent.class)).thenReturn(true);
+        systemService.update(entity(1L));
+        Mockito.verify(repository, Mockito.times(1)).find(1L);
+        ArgumentCaptor<TestEntity> before = ArgumentCaptor.forClass(TestEntity.class);
+        Mockito.verify(eventProducer).produceDetailedEvent(before.capture(), any(), eq(PostUpdateDetailedEvent.class));
+        Assertions.assertEquals("persisted", before.getValue().getEntityField());
+        Mockito.verify(eventProducer, Mockito.never()).produceDetailedEvent(any(), any(), eq(PreUpdateDetailedEvent.class));
+    }
+
+    @Test
+    void testEventInterestsMatchSuperTypes() {
+        EventInterests interests = new EventInterests();
+        interests.register(BaseEntity.class, PostUpdateDetailedEvent.class);
+        Assertions.assertTrue(interests.hasListeners(TestEntity.class, PostUpdateDetailedEvent.class));
+        Assertions.assertFalse(interests.hasListeners(TestEntity.class, PreUpdateDetailedEvent.class));
+        interests.unregister(BaseEntity.class, PostUpdateDetailedEvent.class);
+        Assertions.assertFalse(interests.hasListeners(TestEntity.class, PostUpdateDetailedEvent.class));
+    }
+
+    private static TestEntity entity(long id) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField("changed");
+        return entity;
+    }
+}
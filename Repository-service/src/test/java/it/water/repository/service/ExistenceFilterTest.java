@@ -0,0 +1,185 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.entity.model.PaginatedResult;
+import it.water.repository.entity.model.exceptions.EntityNotFound;
+import it.water.repository.query.DefaultQueryBuilder;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.cache.CountingBloomFilter;
+import it.water.repository.service.cache.ExistenceFilterStatistics;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.spi.IdProjectionRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Tests for the negative lookup filter of BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ExistenceFilterTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+
+    private TreeSet<Long> rows;
+
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0)));
+        Mockito.when(repository.getQueryBuilderInstance()).thenReturn(new DefaultQueryBuilder());
+        rows = new TreeSet<>(List.of(1L, 2L, 3L));
+        Mockito.when(repository.findAll(anyInt(), eq(1), any(), any())).thenAnswer(i -> seedPage(i.getArgument(0), i.getArgument(2)));
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+        service.setWaterValidator(waterValidator);
+        service.enableExistenceFilter(1000, 0.01);
+    }
+
+    @Test
+    void testSeedingIsNotShiftedByRowsRemovedBetweenPages() {
+        rows = new TreeSet<>();
+        for (long id = 1; id <= 1500; id++)
+            rows.add(id);
+        //the first 100 rows are removed right after the first page is read
+        Mockito.when(repository.findAll(anyInt(), eq(1), any(), any())).thenAnswer(i -> {
+            PaginatedResult<TestEntity> page = seedPage(i.getArgument(0), i.getArgument(2));
+            rows.removeIf(id -> id <= 100);
+            return page;
+        });
+        Mockito.clearInvocations(repository);
+        service.enableExistenceFilter(2000, 0.01);
+        for (long id = 1001; id <= 1500; id++)
+            Assertions.assertNotNull(service.find(id));
+        Assertions.assertEquals(0, service.getExistenceFilterStatistics().getDefiniteMisses());
+        Mockito.verify(repository, Mockito.times(2)).findAll(anyInt(), eq(1), any(), any());
+    }
+
+    @Test
+    void testSeedingReadsIdsOnlyWhenRepositoryProjectsThem() {
+        TestEntityRepository idRepository = Mockito.mock(TestEntityRepository.class, Mockito.withSettings().extraInterfaces(IdProjectionRepository.class));
+        Mockito.when(idRepository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0)));
+        Mockito.when(((IdProjectionRepository) idRepository).findIdsAfter(anyLong(), anyInt()))
+                .thenAnswer(i -> rows.tailSet(i.getArgument(0), false).stream().limit((int) i.getArgument(1)).mapToLong(Long::longValue).toArray());
+        BaseEntitySystemServiceImpl<TestEntity> idService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return idRepository;
+            }
+        };
+        idService.enableExistenceFilter(1000, 0.01);
+        Assertions.assertNull(idService.find(99L));
+        Assertions.assertEquals(3L, idService.find(3L).getId());
+        Mockito.verify((IdProjectionRepository) idRepository).findIdsAfter(eq(0L), anyInt());
+        Mockito.verify(idRepository, Mockito.never()).findAll(anyInt(), anyInt(), any(), any());
+        Mockito.verify(idRepository, Mockito.never()).find(99L);
+    }
+
+    @Test
+    void testDefiniteMissesSkipRepository() {
+        Assertions.assertNull(service.find(99L));
+        Assertions.assertThrows(EntityNotFound.class, () -> service.remove(99L));
+        Mockito.verify(repository, Mockito.never()).find(99L);
+        Assertions.assertEquals(3L, service.find(3L).getId());
+        Assertions.assertEquals(2, service.getExistenceFilterStatistics().getDefiniteMisses());
+    }
+
+    @Test
+    void testFilterMaintainedOnSaveAndRemove() {
+        service.save(entity(10));
+        Assertions.assertEquals(10L, service.find(10L).getId());
+        service.remove(2L);
+        Assertions.assertNull(service.find(2L));
+        Mockito.verify(repository, Mockito.times(1)).find(2L);
+    }
+
+    @Test
+    void testFalsePositivesAreReported() {
+        Mockito.when(repository.find(1L)).thenReturn(null);
+        Assertions.assertNull(service.find(1L));
+        ExistenceFilterStatistics statistics = service.getExistenceFilterStatistics();
+        Assertions.assertEquals(1, statistics.getFalsePositives());
+        Assertions.assertEquals(3, statistics.getApproximateElementCount());
+        Assertions.assertTrue(statistics.getMemoryUsageBytes() > 0);
+        service.disableExistenceFilter();
+        Assertions.assertNull(service.getExistenceFilterStatistics());
+    }
+
+    @Test
+    void testCountingBloomFilterHasNoFalseNegatives() {
+        CountingBloomFilter filter = new CountingBloomFilter(10000, 0.01);
+        for (long id = 0; id < 10000; id++)
+            filter.add(id);
+        for (long id = 0; id < 5000; id++)
+            filter.remove(id);
+        int falsePositives = 0;
+        for (long id = 5000; id < 10000; id++)
+            Assertions.assertTrue(filter.mightContain(id));
+        for (long id = 100000; id < 110000; id++) {
+            if (filter.mightContain(id))
+                falsePositives++;
+        }
+        Assertions.assertTrue(falsePositives < 200, "Too many false positives: " + falsePositives);
+        Assertions.assertEquals(5000, filter.getApproximateElementCount());
+    }
+
+    /**
+     * Reads the rows with id greater than the one in the filter, as a keyset page
+     */
+    private PaginatedResult<TestEntity> seedPage(int pageSize, Query filter) {
+        long lastSeenId = Long.parseLong(filter.getDefinition().replace("id > ", "").trim());
+        List<TestEntity> page = rows.tailSet(lastSeenId, false).stream().limit(pageSize).map(ExistenceFilterTest::entity).toList();
+        return new PaginatedResult<>(1, 1, 1, pageSize, page);
+    }
+
+    private static TestEntity entity(long id) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        return entity;
+    }
+}
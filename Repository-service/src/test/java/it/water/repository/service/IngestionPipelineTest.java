@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.validation.WaterValidator;
+import it.water.core.model.exceptions.ValidationException;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.ingestion.IngestionOptions;
+import it.water.repository.service.ingestion.IngestionResult;
+import it.water.repository.service.ingestion.IngestionStatistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+
+/**
+ * Tests for the streaming ingestion pipeline of BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class IngestionPipelineTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+        service.setWaterValidator(waterValidator);
+    }
+
+    @Test
+    void testStreamIngestionReportsFailuresBySourcePosition() {
+        Mockito.doThrow(new ValidationException()).when(waterValidator).validate(argThat(resource -> resource instanceof TestEntity testEntity && testEntity.getId() % 100 == 0));
+        List<IngestionStatistics> progress = new CopyOnWriteArrayList<>();
+        IngestionOptions options = options(50, 4, 2);
+        options.setProgressListener(progress::add);
+        IngestionResult result = service.ingest(LongStream.range(0, 1000).mapToObj(IngestionPipelineTest::entity), options);
+        Assertions.assertEquals(1000, result.getStatistics().getRead());
+        Assertions.assertEquals(990, result.getStatistics().getSucceeded());
+        Assertions.assertEquals(10, result.getStatistics().getFailed());
+        for (int i = 0; i < 10; i++)
+            Assertions.assertEquals(i * 100, result.getFailures().get(i).getIndex());
+        Assertions.assertFalse(progress.isEmpty());
+        Mockito.verify(repository, Mockito.times(990)).persist(any());
+    }
+
+    @Test
+    void testPublisherIngestion() {
+        IngestionOptions options = options(10, 2, 2);
+        IngestionResult result;
+        try (SubmissionPublisher<TestEntity> publisher = new SubmissionPublisher<>()) {
+            Thread producer = new Thread(() -> {
+                //items submitted before the ingestion subscribes would be discarded
+                while (publisher.getNumberOfSubscribers() == 0)
+                    Thread.onSpinWait();
+                LongStream.range(1, 501).forEach(id -> publisher.submit(entity(id)));
+                publisher.close();
+            });
+            producer.start();
+            result = service.ingest(publisher, options);
+        }
+        Assertions.assertEquals(500, result.getStatistics().getSucceeded());
+        Assertions.assertFalse(result.hasFailures());
+    }
+
+    @Test
+    void testSourceIsThrottledBySlowPersistence() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(repository.persist(any())).thenAnswer(i -> {
+            release.await(5, TimeUnit.SECONDS);
+            return i.getArgument(0);
+        });
+        AtomicLong pulled = new AtomicLong();
+        Iterator<TestEntity> source = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return pulled.get() < 10000;
+            }
+
+            @Override
+            public TestEntity next() {
+                return entity(pulled.incrementAndGet());
+            }
+        };
+        IngestionOptions options = options(10, 2, 2);
+        Thread ingestion = new Thread(() -> service.ingest(source, options));
+        ingestion.start();
+        Thread.sleep(300);
+        //queued chunks, chunks held by the persist workers and the chunk being filled
+        Assertions.assertTrue(pulled.get() <= (2 + 2 + 1) * 10L, "Source read too far ahead: " + pulled.get());
+        release.countDown();
+        ingestion.join(10000);
+        Assertions.assertEquals(10000, pulled.get());
+    }
+
+    private static IngestionOptions options(int chunkSize, int parallelism, int queueCapacity) {
+        IngestionOptions options = new IngestionOptions();
+        options.setChunkSize(chunkSize);
+        options.setParallelism(parallelism);
+        options.setQueueCapacity(queueCapacity);
+        return options;
+    }
+
+    private static TestEntity entity(long id) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField("entity " + id);
+        return entity;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.metrics.EntityOperation;
+import it.water.repository.service.metrics.InProcessMetricsRegistry;
+import it.water.repository.service.metrics.LatencyHistogram;
+import it.water.repository.service.metrics.OperationMetricsSnapshot;
+import it.water.repository.service.metrics.ServiceLayer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+
+/**
+ * Tests for the operation metrics of the service layers.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OperationMetricsTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private SecurityContext securityContext;
+
+    private InProcessMetricsRegistry registry;
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new InProcessMetricsRegistry();
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0)));
+        Mockito.when(repository.countAll(any())).thenReturn(3L);
+        Mockito.when(runtime.getSecurityContext()).thenReturn(securityContext);
+        Mockito.when(securityContext.isAdmin()).thenReturn(true);
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.enableMetrics(registry);
+    }
+
+    @Test
+    void testOperationsAndErrorsAreCounted() {
+        systemService.save(entity(1L));
+        systemService.find(1L);
+        systemService.find(2L);
+        systemService.countAll(null);
+        Mockito.when(repository.persist(any())).thenThrow(new IllegalStateException("unavailable"));
+        Assertions.assertThrows(RuntimeException.class, () -> systemService.save(entity(3L)));
+
+        OperationMetricsSnapshot saves = registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.SAVE);
+        Assertions.assertEquals(2, saves.getCount());
+        Assertions.assertEquals(1, saves.getErrors());
+        Assertions.assertEquals(0.5, saves.getErrorRatio());
+        Assertions.assertTrue(saves.getMaxNanos() > 0);
+        Assertions.assertEquals(2, registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.FIND).getCount());
+        Assertions.assertEquals(1, registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.COUNT_ALL).getCount());
+        Assertions.assertEquals(0, registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.REMOVE).getCount());
+        Assertions.assertEquals(EntityOperation.values().length, registry.getSnapshots().size());
+
+        systemService.disableMetrics();
+        Assertions.assertNull(systemService.getMetricsRegistry());
+        systemService.find(1L);
+        Assertions.assertEquals(2, registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.FIND).getCount());
+    }
+
+    @Test
+    void testPatchIsRecordedAsUpdate() {
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        systemService.patch(1L, Map.of("entityField", "patched"));
+        Assertions.assertThrows(RuntimeException.class, () -> systemService.patch(1L, Map.of("id", 2L)));
+        OperationMetricsSnapshot updates = registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.UPDATE);
+        Assertions.assertEquals(2, updates.getCount());
+        Assertions.assertEquals(1, updates.getErrors());
+    }
+
+    @Test
+    void testLayersAreMeasuredSeparately() {
+        BaseEntityServiceImpl<TestEntity> service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+        service.enableMetrics(registry);
+        Assertions.assertSame(registry, service.getMetricsRegistry());
+        service.countAll(null);
+        service.countAll(null, false);
+        Assertions.assertEquals(2, registry.getSnapshot(TestEntity.class, ServiceLayer.SERVICE, EntityOperation.COUNT_ALL).getCount());
+        Assertions.assertEquals(2, registry.getSnapshot(TestEntity.class, ServiceLayer.SYSTEM_SERVICE, EntityOperation.COUNT_ALL).getCount());
+    }
+
+    @Test
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertArrayEquals(new long[]{0, 0}, histogram.valuesAt(0.5, 0.99));
+        for (long i = 1; i <= 100_000; i++)
+            histogram.record(i * 1000);
+        long[] values = histogram.valuesAt(0.5, 0.99, 0.999, 1);
+        assertWithin(50_000_000L, values[0]);
+        assertWithin(99_000_000L, values[1]);
+        assertWithin(99_900_000L, values[2]);
+        assertWithin(100_000_000L, values[3]);
+        //values out of range are clamped
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+        assertWithin(LatencyHistogram.MAX_TRACKABLE_NANOS, histogram.valuesAt(1)[0]);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assertions.assertTrue(Math.abs(actual - expected) <= expected * 0.016, "expected about " + expected + " but was " + actual);
+    }
+
+    private static TestEntity entity(long id) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        return entity;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.validation.WaterValidator;
+import it.water.core.model.exceptions.ValidationException;
+import it.water.repository.entity.model.BatchItemFailure;
+import it.water.repository.entity.model.BatchResult;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.entity.TestEntityExtension;
+import it.water.repository.service.validation.ValidationExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * Tests for the parallel validation of batches.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ParallelValidationTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    private ForkJoinPool pool;
+    private Set<String> validationThreads;
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+        validationThreads = ConcurrentHashMap.newKeySet();
+        Mockito.when(repository.persist(any())).thenAnswer(i -> i.getArgument(0));
+        WaterValidator validator = Mockito.mock(WaterValidator.class);
+        Mockito.doAnswer(i -> {
+            Object resource = i.getArgument(0);
+            validationThreads.add(Thread.currentThread().getName());
+            if (resource instanceof TestEntity testEntity && testEntity.getEntityField().startsWith("invalid"))
+                throw new ValidationException();
+            if (resource instanceof TestEntityExtension extension && "invalid".equals(extension.getEntityField()))
+                throw new IllegalArgumentException("invalid extension");
+            return null;
+        }).when(validator).validate(any());
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+        service.setWaterValidator(validator);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testFailuresAreReportedInInputOrder() {
+        service.enableParallelValidation(pool, 100);
+        Assertions.assertTrue(service.isParallelValidationEnabled());
+        List<TestEntity> entities = new ArrayList<>();
+        IntStream.range(0, 1000).forEach(i -> entities.add(entity(i, i % 7 == 0 ? "invalid" : "valid")));
+        BatchResult<TestEntity> result = service.saveAll(entities);
+
+        List<Integer> failedIndexes = result.getFailures().stream().map(BatchItemFailure::getIndex).toList();
+        Assertions.assertEquals(IntStream.range(0, 1000).filter(i -> i % 7 == 0).boxed().toList(), failedIndexes);
+        Assertions.assertEquals(1000 - failedIndexes.size(), result.getSucceededCount());
+        Assertions.assertTrue(validationThreads.stream().anyMatch(name -> name.startsWith("ForkJoinPool")));
+    }
+
+    @Test
+    void testSmallBatchesAreValidatedOnTheCallingThread() {
+        service.enableParallelValidation(pool, 100);
+        service.saveAll(List.of(entity(1, "valid"), entity(2, "valid")));
+        Assertions.assertEquals(Set.of(Thread.currentThread().getName()), validationThreads);
+        service.disableParallelValidation();
+        Assertions.assertFalse(service.isParallelValidationEnabled());
+    }
+
+    @Test
+    void testEntityAndExtensionViolationsAreCollected() {
+        TestEntity entity = entity(1, "invalid");
+        TestEntityExtension extension = new TestEntityExtension();
+        extension.setEntityField("invalid");
+        entity.setExtension(extension);
+        BatchResult<TestEntity> result = service.saveAll(List.of(entity));
+        Throwable cause = result.getFailures().get(0).getCause();
+        Assertions.assertInstanceOf(ValidationException.class, cause);
+        Assertions.assertInstanceOf(IllegalArgumentException.class, cause.getSuppressed()[0]);
+    }
+
+    @Test
+    void testExecutorRejectsInvalidSettings() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ValidationExecutor(pool, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ValidationExecutor(null, 10));
+        Assertions.assertEquals(ValidationExecutor.DEFAULT_PARALLELISM_THRESHOLD, ValidationExecutor.onCommonPool(ValidationExecutor.DEFAULT_PARALLELISM_THRESHOLD).getParallelismThreshold());
+    }
+
+    private static TestEntity entity(long id, String field) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField(field);
+        return entity;
+    }
+}
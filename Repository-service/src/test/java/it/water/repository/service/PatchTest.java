@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.entity.events.PostUpdateDetailedEvent;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.BaseRepository;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.validation.WaterValidator;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.entity.TestValidationEntity;
+import it.water.repository.service.event.AsyncEventDispatcher;
+import it.water.repository.service.spi.PropertyValidator;
+import it.water.repository.spi.PartialUpdateRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the partial updates of BaseEntityServiceImpl and BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class PatchTest {
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private ApplicationEventProducer eventProducer;
+
+    private TestEntityRepository repository;
+    private WaterValidator waterValidator;
+    private TestEntity persisted;
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        repository = Mockito.mock(TestEntityRepository.class, Mockito.withSettings().extraInterfaces(PartialUpdateRepository.class));
+        waterValidator = Mockito.mock(WaterValidator.class, Mockito.withSettings().extraInterfaces(PropertyValidator.class));
+        persisted = new TestEntity();
+        persisted.setId(1L);
+        persisted.setEntityField("persisted");
+        persisted.setOwnerUserId(7L);
+        Mockito.when(repository.find(anyLong())).thenReturn(persisted);
+        Mockito.when(((PartialUpdateRepository<TestEntity>) repository).update(any(), any())).thenAnswer(i -> i.getArgument(0));
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+    }
+
+    @Test
+    void testOnlyChangedPropertiesAreValidatedAndWritten() {
+        TestEntity patched = systemService.patch(1L, Map.of("entityField", "patched"));
+        Assertions.assertEquals("patched", patched.getEntityField());
+        Assertions.assertNotSame(persisted, patched);
+        Assertions.assertEquals("persisted", persisted.getEntityField());
+        Mockito.verify((PropertyValidator) waterValidator).validateProperties(patched, Set.of("entityField"));
+        Mockito.verify(waterValidator, Mockito.never()).validate(any());
+        Mockito.verify((PartialUpdateRepository<TestEntity>) repository).update(any(), eq(Set.of("entityField")));
+        Mockito.verify(repository, Mockito.never()).update(any());
+    }
+
+    @Test
+    void testUnchangedValuesSkipTheWrite() {
+        Assertions.assertSame(persisted, systemService.patch(1L, Map.of("entityField", "persisted")));
+        Mockito.verify((PartialUpdateRepository<TestEntity>) repository, Mockito.never()).update(any(), any());
+    }
+
+    @Test
+    void testReadOnlyAndUnknownPropertiesRejected() {
+        Assertions.assertThrows(WaterRuntimeException.class, () -> systemService.patch(1L, Map.of("id", 2L)));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> systemService.patch(1L, Map.of("notAProperty", 2L)));
+    }
+
+    @Test
+    void testVersionAndOwnerCannotBePatched() {
+        Assertions.assertThrows(WaterRuntimeException.class, () -> systemService.patch(1L, Map.of("entityVersion", 2)));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> systemService.patch(1L, Map.of("ownerUserId", 8L)));
+        Assertions.assertEquals(7L, persisted.getOwnerUserId());
+        Mockito.verify((PartialUpdateRepository<TestEntity>) repository, Mockito.never()).update(any(), any());
+    }
+
+    @Test
+    void testSynchronousPostUpdateListenersSeeChangedProperties() {
+        Assertions.assertEquals(Set.of("entityField"), dirtyFieldsSeenByPostUpdateListeners(null));
+    }
+
+    @Test
+    void testAsynchronousPostUpdateListenersSeeChangedProperties() {
+        Assertions.assertEquals(Set.of("entityField"), dirtyFieldsSeenByPostUpdateListeners(new AsyncEventDispatcher()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> dirtyFieldsSeenByPostUpdateListeners(AsyncEventDispatcher dispatcher) {
+        BaseRepository<TestValidationEntity> validationEntityRepository = Mockito.mock(BaseRepository.class);
+        TestValidationEntity persistedEntity = new TestValidationEntity();
+        persistedEntity.setId(1L);
+        persistedEntity.setEntityField("persisted");
+        Mockito.when(validationEntityRepository.find(anyLong())).thenReturn(persistedEntity);
+        Mockito.when(validationEntityRepository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        List<Set<String>> seenDirtyFields = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(i -> seenDirtyFields.add(((TestValidationEntity) i.getArgument(1)).getDirtyFields()))
+                .when(eventProducer).produceDetailedEvent(any(), any(), eq(PostUpdateDetailedEvent.class));
+        BaseEntitySystemServiceImpl<TestValidationEntity> validationEntitySystemService = new BaseEntitySystemServiceImpl<TestValidationEntity>(TestValidationEntity.class) {
+            @Override
+            protected BaseRepository<TestValidationEntity> getRepository() {
+                return validationEntityRepository;
+            }
+        };
+        validationEntitySystemService.setComponentRegistry(componentRegistry);
+        validationEntitySystemService.setWaterValidator(waterValidator);
+        if (dispatcher != null)
+            validationEntitySystemService.enableAsyncPostEvents(dispatcher);
+
+        TestValidationEntity patched = validationEntitySystemService.patch(1L, Map.of("entityField", "patched"));
+        Assertions.assertTrue(patched.getDirtyFields().isEmpty());
+        if (dispatcher != null)
+            Assertions.assertTrue(dispatcher.close(5000));
+        Assertions.assertEquals(1, seenDirtyFields.size());
+        return seenDirtyFields.get(0);
+    }
+
+    @Test
+    void testServiceCannotChangeOwner() {
+        BaseEntityServiceImpl<TestEntity> service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+        Assertions.assertThrows(UnauthorizedException.class, () -> service.patch(1L, Map.of("ownerUserId", 8L)));
+        Assertions.assertEquals("patched", service.patch(1L, Map.of("entityField", "patched")).getEntityField());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.entity.owned.OwnedResource;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.BaseRepository;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryBuilder;
+import it.water.core.api.repository.query.operands.FieldNameOperand;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.service.integration.SharedEntityIntegrationClient;
+import it.water.repository.entity.model.PaginatedResult;
+import it.water.repository.entity.model.RootParentIndexedResource;
+import it.water.repository.query.DefaultQueryBuilder;
+import it.water.repository.service.entity.IndexedChildTestEntity;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the denormalized root parent id of owned child resources.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RootParentIndexTest {
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private BaseRepository<IndexedChildTestEntity> repository;
+
+    private BaseEntitySystemServiceImpl<IndexedChildTestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        systemService = new BaseEntitySystemServiceImpl<IndexedChildTestEntity>(IndexedChildTestEntity.class) {
+            @Override
+            protected BaseRepository<IndexedChildTestEntity> getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+    }
+
+    @Test
+    void testRootParentIdIsMaintainedOnWrite() {
+        IndexedChildTestEntity child = new IndexedChildTestEntity();
+        child.setParent(parent(10L));
+        systemService.save(child);
+        Assertions.assertEquals(10L, child.getRootParentId());
+
+        child.setParent(parent(11L));
+        systemService.update(child);
+        Assertions.assertEquals(11L, child.getRootParentId());
+
+        child.setParent(null);
+        systemService.saveAll(List.of(child));
+        Assertions.assertNull(child.getRootParentId());
+    }
+
+    @Test
+    void testPatchOfTheParentRefreshesTheRootParentId() {
+        IndexedChildTestEntity persisted = new IndexedChildTestEntity();
+        persisted.setId(1L);
+        persisted.setParent(parent(10L));
+        persisted.setRootParentId(10L);
+        Mockito.when(repository.find(anyLong())).thenReturn(persisted);
+        IndexedChildTestEntity patched = systemService.patch(1L, Map.of("parent", parent(12L)));
+        Assertions.assertEquals(12L, patched.getRootParentId());
+        Assertions.assertEquals(10L, persisted.getRootParentId());
+    }
+
+    @Test
+    void testMovingAMiddleNodeReindexesItsSubtree() {
+        IndexedChildTestEntity middle = new IndexedChildTestEntity();
+        middle.setId(2L);
+        middle.setParent(parent(10L));
+        IndexedChildTestEntity child = new IndexedChildTestEntity();
+        child.setId(3L);
+        child.setParentNode(middle);
+        systemService.save(middle);
+        systemService.save(child);
+        Assertions.assertEquals(10L, child.getRootParentId());
+
+        //moving the middle node writes only the middle node
+        middle.setParent(parent(11L));
+        systemService.update(middle);
+        Assertions.assertEquals(11L, middle.getRootParentId());
+        Assertions.assertEquals(10L, child.getRootParentId());
+
+        DefaultQueryBuilder queryBuilder = new DefaultQueryBuilder();
+        Mockito.when(repository.getQueryBuilderInstance()).thenReturn(queryBuilder);
+        Mockito.when(repository.findAll(anyInt(), anyInt(), any(), any())).thenReturn(new PaginatedResult<>(1, 1, 1, 1, List.of(child)));
+        Assertions.assertEquals(1, systemService.reindexRootParents(queryBuilder.field("parentNode.id").equalTo(2L)));
+        Assertions.assertEquals(11L, child.getRootParentId());
+        Mockito.verify(repository).update(child);
+        //already correct entities are not written again
+        Assertions.assertEquals(0, systemService.reindexRootParents(queryBuilder.field("parentNode.id").equalTo(2L)));
+    }
+
+    @Test
+    void testSharedFilterUsesTheRootParentId() {
+        Runtime runtime = Mockito.mock(Runtime.class);
+        SecurityContext securityContext = Mockito.mock(SecurityContext.class);
+        SharedEntityIntegrationClient client = Mockito.mock(SharedEntityIntegrationClient.class);
+        QueryBuilder queryBuilder = Mockito.mock(QueryBuilder.class);
+        FieldNameOperand operand = Mockito.mock(FieldNameOperand.class);
+        Query query = Mockito.mock(Query.class);
+        @SuppressWarnings("unchecked")
+        BaseEntitySystemApi<IndexedChildTestEntity> systemApi = Mockito.mock(BaseEntitySystemApi.class);
+        Mockito.when(runtime.getSecurityContext()).thenReturn(securityContext);
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(5L);
+        Mockito.when(componentRegistry.findComponent(eq(SharedEntityIntegrationClient.class), isNull())).thenReturn(client);
+        Mockito.when(client.fetchSharingUsersIds(anyString(), anyLong())).thenReturn(List.of(10L));
+        Mockito.when(systemApi.getQueryBuilderInstance()).thenReturn(queryBuilder);
+        Mockito.when(queryBuilder.field(anyString())).thenReturn(operand);
+        Mockito.when(operand.equalTo(any())).thenReturn(query);
+        Mockito.when(operand.in(any())).thenReturn(query);
+        Mockito.when(query.or(any())).thenReturn(query);
+        OwnedChildBaseEntityServiceImpl<IndexedChildTestEntity> service = new OwnedChildBaseEntityServiceImpl<IndexedChildTestEntity>(IndexedChildTestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<IndexedChildTestEntity> getSystemService() {
+                return systemApi;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+
+            @Override
+            protected String getRootParentFieldPath() {
+                return "parent";
+            }
+
+            @Override
+            protected Class<? extends OwnedResource> getParentResourceClass() {
+                return TestEntity.class;
+            }
+        };
+        service.setRuntime(runtime);
+        service.countAll(null);
+        Mockito.verify(queryBuilder).field(RootParentIndexedResource.getRootParentIdFieldName());
+        Mockito.verify(queryBuilder, Mockito.never()).field("parent");
+    }
+
+    private TestEntity parent(long id) {
+        TestEntity parent = new TestEntity();
+        parent.setId(id);
+        parent.setOwnerUserId(1L);
+        return parent;
+    }
+}
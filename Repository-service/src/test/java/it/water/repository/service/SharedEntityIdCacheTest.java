@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryBuilder;
+import it.water.core.api.repository.query.operands.FieldNameOperand;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.service.integration.SharedEntityIntegrationClient;
+import it.water.repository.service.cache.SharedEntityIdCache;
+import it.water.repository.service.cache.SharedEntityIdCacheStatistics;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the per user cache of shared entity ids.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SharedEntityIdCacheTest {
+
+    @Mock
+    private BaseEntitySystemApi<TestEntity> systemService;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private SecurityContext securityContext;
+    @Mock
+    private SharedEntityIntegrationClient sharedEntityIntegrationClient;
+
+    private BaseEntityServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        QueryBuilder queryBuilder = Mockito.mock(QueryBuilder.class);
+        FieldNameOperand operand = Mockito.mock(FieldNameOperand.class);
+        Query query = Mockito.mock(Query.class);
+        Mockito.when(systemService.getQueryBuilderInstance()).thenReturn(queryBuilder);
+        Mockito.when(queryBuilder.field(anyString())).thenReturn(operand);
+        Mockito.when(operand.equalTo(any())).thenReturn(query);
+        Mockito.when(queryBuilder.createQueryFilter(anyString())).thenReturn(query);
+        Mockito.when(query.or(any())).thenReturn(query);
+        Mockito.when(runtime.getSecurityContext()).thenReturn(securityContext);
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(5L);
+        Mockito.when(componentRegistry.findComponent(eq(SharedEntityIntegrationClient.class), isNull())).thenReturn(sharedEntityIntegrationClient);
+        Mockito.when(sharedEntityIntegrationClient.fetchSharingUsersIds(anyString(), anyLong())).thenReturn(List.of(10L, 11L));
+        service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+    }
+
+    @Test
+    void testListAndCountFetchSharedIdsOnce() {
+        service.enableSharedEntityIdCache(100, 60000);
+        service.findAll(null, 10, 1, null);
+        service.countAll(null);
+        Mockito.verify(sharedEntityIntegrationClient, Mockito.times(1)).fetchSharingUsersIds(TestEntity.class.getName(), 5L);
+        SharedEntityIdCacheStatistics statistics = service.getSharedEntityIdCacheStatistics();
+        Assertions.assertEquals(1, statistics.getHits());
+        Assertions.assertEquals(1, statistics.getMisses());
+        Assertions.assertEquals(0.5, statistics.getHitRatio());
+
+        //another user has its own entry
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(6L);
+        service.countAll(null);
+        Mockito.verify(sharedEntityIntegrationClient, Mockito.times(1)).fetchSharingUsersIds(TestEntity.class.getName(), 6L);
+    }
+
+    @Test
+    void testConcurrentMissesAreCoalesced() throws Exception {
+        SharedEntityIdCache cache = new SharedEntityIdCache(100, 60000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Set<Long>> first = CompletableFuture.supplyAsync(() -> cache.get("type", 1L, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(1L);
+        }));
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Set<Long>> second = CompletableFuture.supplyAsync(() -> cache.get("type", 1L, () -> {
+            loads.incrementAndGet();
+            return List.of(2L);
+        }));
+        //the second lookup waits for the first one
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getStatistics().getCoalescedMisses() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        release.countDown();
+        Assertions.assertEquals(Set.of(1L), first.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(Set.of(1L), second.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1, cache.getStatistics().getCoalescedMisses());
+    }
+
+    @Test
+    void testInvalidationAndExpiration() throws InterruptedException {
+        SharedEntityIdCache cache = new SharedEntityIdCache(100, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("type", 1L, () -> List.of((long) loads.incrementAndGet()));
+        cache.get("type", 2L, () -> List.of((long) loads.incrementAndGet()));
+        SharedEntityIdCache.invalidateAll("type", 1L);
+        Assertions.assertEquals(Set.of(3L), cache.get("type", 1L, () -> List.of((long) loads.incrementAndGet())));
+        Assertions.assertEquals(Set.of(2L), cache.get("type", 2L, () -> List.of((long) loads.incrementAndGet())));
+
+        SharedEntityIdCache shortLived = new SharedEntityIdCache(100, 1);
+        shortLived.get("type", 1L, () -> List.of(1L));
+        Thread.sleep(10);
+        Assertions.assertEquals(Set.of(2L), shortLived.get("type", 1L, () -> List.of(2L)));
+        Assertions.assertEquals(1, shortLived.getStatistics().getExpirations());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryBuilder;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.service.integration.SharedEntityIntegrationClient;
+import it.water.repository.query.SubQueryDescriptor;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.spi.SharedEntitySubQueryProvider;
+import it.water.repository.spi.SemiJoinQueryBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the shared entity filter pushed down as a semi join.
+ */
+class SharedEntitySemiJoinTest {
+
+    private final Query filter = Mockito.mock(Query.class);
+    private final Query sharedFilter = Mockito.mock(Query.class);
+
+    @Test
+    void testSharedFilterIsPushedDownAsSemiJoin() {
+        QueryBuilder queryBuilder = Mockito.mock(QueryBuilder.class, Mockito.withSettings().extraInterfaces(SemiJoinQueryBuilder.class));
+        SharedEntityIntegrationClient client = Mockito.mock(SharedEntityIntegrationClient.class, Mockito.withSettings().extraInterfaces(SharedEntitySubQueryProvider.class));
+        SubQueryDescriptor subQuery = new SubQueryDescriptor("SharedEntity", "entityId", Map.of("userId", 5L));
+        Mockito.when(((SharedEntitySubQueryProvider) client).sharedEntityIdsSubQuery(TestEntity.class.getName(), 5L)).thenReturn(subQuery);
+        Mockito.when(((SemiJoinQueryBuilder) queryBuilder).in("id", subQuery)).thenReturn(sharedFilter);
+        Mockito.when(filter.or(sharedFilter)).thenReturn(filter);
+
+        Assertions.assertSame(filter, createService(queryBuilder, client).createFilterForOwnedOrSharedResource(filter, 5L));
+        Mockito.verify(filter).or(sharedFilter);
+        Mockito.verify(client, Mockito.never()).fetchSharingUsersIds(anyString(), anyLong());
+        Mockito.verify(queryBuilder, Mockito.never()).createQueryFilter(anyString());
+    }
+
+    @Test
+    void testIdListIsUsedWithoutSubQuerySupport() {
+        //the client describes a sub query but the query builder cannot push it down
+        QueryBuilder queryBuilder = Mockito.mock(QueryBuilder.class);
+        SharedEntityIntegrationClient client = Mockito.mock(SharedEntityIntegrationClient.class, Mockito.withSettings().extraInterfaces(SharedEntitySubQueryProvider.class));
+        Mockito.when(client.fetchSharingUsersIds(TestEntity.class.getName(), 5L)).thenReturn(List.of(10L, 11L));
+        Mockito.when(queryBuilder.createQueryFilter(anyString())).thenReturn(sharedFilter);
+        Mockito.when(filter.or(any())).thenReturn(filter);
+
+        createService(queryBuilder, client).createFilterForOwnedOrSharedResource(filter, 5L);
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(queryBuilder).createQueryFilter(captor.capture());
+        Assertions.assertEquals("id IN (10,11)", captor.getValue());
+        Mockito.verify((SharedEntitySubQueryProvider) client, Mockito.never()).sharedEntityIdsSubQuery(anyString(), anyLong());
+
+        //a provider without a sub query for the type falls back as well
+        QueryBuilder semiJoinQueryBuilder = Mockito.mock(QueryBuilder.class, Mockito.withSettings().extraInterfaces(SemiJoinQueryBuilder.class));
+        Mockito.when(semiJoinQueryBuilder.createQueryFilter(anyString())).thenReturn(sharedFilter);
+        createService(semiJoinQueryBuilder, client).createFilterForOwnedOrSharedResource(filter, 5L);
+        Mockito.verify(semiJoinQueryBuilder).createQueryFilter("id IN (10,11)");
+        Mockito.verify((SemiJoinQueryBuilder) semiJoinQueryBuilder, Mockito.never()).in(anyString(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private BaseEntityServiceImpl<TestEntity> createService(QueryBuilder queryBuilder, SharedEntityIntegrationClient client) {
+        BaseEntitySystemApi<TestEntity> systemService = Mockito.mock(BaseEntitySystemApi.class);
+        ComponentRegistry componentRegistry = Mockito.mock(ComponentRegistry.class);
+        Runtime runtime = Mockito.mock(Runtime.class);
+        Mockito.when(runtime.getSecurityContext()).thenReturn(Mockito.mock(SecurityContext.class));
+        Mockito.when(systemService.getQueryBuilderInstance()).thenReturn(queryBuilder);
+        Mockito.when(componentRegistry.findComponent(eq(SharedEntityIntegrationClient.class), isNull())).thenReturn(client);
+        BaseEntityServiceImpl<TestEntity> service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+        return service;
+    }
+}
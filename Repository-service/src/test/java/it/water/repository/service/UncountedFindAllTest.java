@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.repository.entity.model.PaginatedResult;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.spi.UncountedFindAllRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+
+/**
+ * Tests for the pages fetched without counting the results.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UncountedFindAllTest {
+    private static final int TOTAL = 25;
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    private TestEntityRepository repository;
+    private BaseEntitySystemServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repository = Mockito.mock(TestEntityRepository.class, Mockito.withSettings().extraInterfaces(UncountedFindAllRepository.class));
+        Mockito.when(((UncountedFindAllRepository<TestEntity>) repository).findRange(anyInt(), anyInt(), any(), any()))
+                .thenAnswer(i -> range(i.getArgument(0), i.getArgument(1)));
+        service = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+    }
+
+    @Test
+    void testNextPageIsProbedWithOneMoreRow() {
+        PaginatedResult<TestEntity> firstPage = service.findAllWithoutCount(null, 10, 1, null);
+        Assertions.assertEquals(10, firstPage.getResults().size());
+        Assertions.assertTrue(firstPage.isHasNext());
+        Assertions.assertFalse(firstPage.isTotalKnown());
+        Assertions.assertEquals(PaginatedResult.UNKNOWN_NUM_PAGES, firstPage.getNumPages());
+        Assertions.assertEquals(2, firstPage.getNextPage());
+
+        PaginatedResult<TestEntity> lastPage = service.findAllWithoutCount(null, 10, 3, null);
+        Assertions.assertEquals(5, lastPage.getResults().size());
+        Assertions.assertFalse(lastPage.isHasNext());
+        Assertions.assertEquals(21L, lastPage.getResults().iterator().next().getId());
+
+        //a full last page is not followed by another one
+        Assertions.assertFalse(service.findAllWithoutCount(null, 5, 5, null).isHasNext());
+        Mockito.verify((UncountedFindAllRepository<?>) repository).findRange(0, 11, null, null);
+        Mockito.verify(repository, Mockito.never()).countAll(any());
+        Mockito.verify(repository, Mockito.never()).findAll(anyInt(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testCountedPagesReportNextPage() {
+        PaginatedResult<TestEntity> page = new PaginatedResult<>(3, 2, 3, 10, List.of());
+        Assertions.assertTrue(page.isTotalKnown());
+        Assertions.assertTrue(page.isHasNext());
+        Assertions.assertFalse(new PaginatedResult<>(3, 3, 1, 10, List.<TestEntity>of()).isHasNext());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.findAllWithoutCount(null, 0, 1, null));
+    }
+
+    private static List<TestEntity> range(int firstResult, int maxResults) {
+        return LongStream.rangeClosed(1, TOTAL).skip(firstResult).limit(maxResults).mapToObj(id -> {
+            TestEntity entity = new TestEntity();
+            entity.setId(id);
+            return entity;
+        }).toList();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.PermissionManager;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.cache.UnitOfWork;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * Tests for the unit of work identity map shared by BaseEntityServiceImpl and BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UnitOfWorkTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private SecurityContext securityContext;
+
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+    private BaseEntityServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0), 7L));
+        Mockito.when(runtime.getSecurityContext()).thenReturn(securityContext);
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(7L);
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+        service.setUnitOfWorkEnabled(true);
+    }
+
+    @Test
+    void testRemoveReadsEntityOnce() {
+        service.remove(1L);
+        Mockito.verify(repository, Mockito.times(1)).find(1L);
+        Mockito.verify(repository).remove(1L);
+        Assertions.assertNull(UnitOfWork.current());
+    }
+
+    @Test
+    void testSameInstanceWithinScopeAndFlushedOnWrite() {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin()) {
+            TestEntity entity = service.find(1L);
+            Assertions.assertSame(entity, systemService.find(1L));
+            Assertions.assertEquals(1, unitOfWork.getHits());
+            //no event listener, the update does not read the state before the update
+            systemService.update(entity(1L, 7L));
+            systemService.find(1L);
+            Mockito.verify(repository, Mockito.times(2)).find(1L);
+        }
+        Assertions.assertNull(UnitOfWork.current());
+    }
+
+    @Test
+    void testPermissionDecisionsAreMemoizedUntilTheEntityIsWritten() {
+        PermissionManager permissionManager = Mockito.mock(PermissionManager.class);
+        Mockito.when(componentRegistry.findComponent(PermissionManager.class, null)).thenReturn(permissionManager);
+        Mockito.when(permissionManager.checkPermission(anyString(), any(TestEntity.class), anyString())).thenReturn(true);
+        Mockito.when(securityContext.getLoggedUsername()).thenReturn("user");
+        //the entity is owned by user 7, user 8 is refused
+        Mockito.when(securityContext.getLoggedEntityId()).thenReturn(8L);
+        try (UnitOfWork unitOfWork = UnitOfWork.begin()) {
+            Assertions.assertEquals(1, service.updateAll(List.of(entity(1L, 8L))).getFailedCount());
+            Assertions.assertEquals(1, service.updateAll(List.of(entity(1L, 8L))).getFailedCount());
+            Mockito.verify(permissionManager, Mockito.times(1)).checkPermission(anyString(), any(TestEntity.class), anyString());
+            Assertions.assertEquals(1, unitOfWork.getPermissionDecisionHits());
+
+            //the owner may change on write, so the decision is taken again
+            systemService.update(entity(1L, 8L));
+            Mockito.when(securityContext.getLoggedEntityId()).thenReturn(7L);
+            Assertions.assertEquals(1, service.updateAll(List.of(entity(1L, 7L))).getSucceededCount());
+            Mockito.verify(permissionManager, Mockito.times(2)).checkPermission(anyString(), any(TestEntity.class), anyString());
+        }
+    }
+
+    @Test
+    void testOwnerRestoredWhenUpdatingTheMappedInstance() {
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            TestEntity entity = service.find(1L);
+            entity.setOwnerUserId(99L);
+            Assertions.assertEquals(7L, service.update(entity).getOwnerUserId());
+        }
+    }
+
+    @Test
+    void testNestedScopesShareTheIdentityMap() {
+        try (UnitOfWork outer = UnitOfWork.begin()) {
+            try (UnitOfWork inner = UnitOfWork.begin()) {
+                Assertions.assertSame(outer, inner);
+                systemService.find(2L);
+            }
+            Assertions.assertSame(outer, UnitOfWork.current());
+            Assertions.assertEquals(1, outer.size());
+        }
+        Assertions.assertNull(UnitOfWork.current());
+    }
+
+    @Test
+    void testAsyncFindDoesNotKeepTheCallerScopeOpen() {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin()) {
+            TestEntity entity = service.findAsync(3L).join();
+            //the async find shares the identity map of the caller
+            Assertions.assertSame(entity, systemService.find(3L));
+            Assertions.assertSame(unitOfWork, UnitOfWork.current());
+        }
+        Assertions.assertNull(UnitOfWork.current());
+    }
+
+    private static TestEntity entity(long id, Long ownerUserId) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField("entity " + id);
+        entity.setOwnerUserId(ownerUserId);
+        return entity;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service;
+
+import it.water.core.api.entity.events.PostUpdateDetailedEvent;
+import it.water.core.api.entity.events.PreRemoveEvent;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.TestEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the coalescing of post update events.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UpdateEventCoalescingTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private ApplicationEventProducer eventProducer;
+
+    private BaseEntitySystemServiceImpl<TestEntity> systemService;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0), "persisted"));
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+    }
+
+    @Test
+    void testUpdatesMergedAndFlushedOnRemove() {
+        systemService.enableUpdateEventCoalescing(60000, 100);
+        systemService.update(entity(1L, "first"));
+        systemService.update(entity(1L, "second"));
+        systemService.update(entity(1L, "third"));
+        Mockito.verify(eventProducer, Mockito.never()).produceDetailedEvent(any(), any(), eq(PostUpdateDetailedEvent.class));
+
+        systemService.remove(1L);
+        ArgumentCaptor<TestEntity> before = ArgumentCaptor.forClass(TestEntity.class);
+        ArgumentCaptor<TestEntity> after = ArgumentCaptor.forClass(TestEntity.class);
+        InOrder inOrder = Mockito.inOrder(eventProducer);
+        inOrder.verify(eventProducer).produceDetailedEvent(before.capture(), after.capture(), eq(PostUpdateDetailedEvent.class));
+        inOrder.verify(eventProducer).produceEvent(any(), eq(PreRemoveEvent.class));
+        Assertions.assertEquals("persisted", before.getValue().getEntityField());
+        Assertions.assertEquals("third", after.getValue().getEntityField());
+    }
+
+    @Test
+    void testMergedEventsBoundedByCount() {
+        systemService.enableUpdateEventCoalescing(60000, 2);
+        for (int i = 0; i < 4; i++)
+            systemService.update(entity(1L, "update-" + i));
+        Mockito.verify(eventProducer, Mockito.times(2)).produceDetailedEvent(any(), any(), eq(PostUpdateDetailedEvent.class));
+    }
+
+    @Test
+    void testMergedEventsBoundedByTime() {
+        systemService.enableUpdateEventCoalescing(50, 100);
+        systemService.update(entity(1L, "first"));
+        systemService.update(entity(2L, "second"));
+        Mockito.verify(eventProducer, Mockito.timeout(5000).times(2)).produceDetailedEvent(any(), any(), eq(PostUpdateDetailedEvent.class));
+    }
+
+    private static TestEntity entity(long id, String field) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField(field);
+        return entity;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.entity.events.PostUpdateDetailedEvent;
+import it.water.core.api.model.events.ApplicationEventProducer;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.service.api.NotOwnedEntityRepository;
+import it.water.repository.service.api.TestEntityRepository;
+import it.water.repository.service.entity.NotOwnedEntity;
+import it.water.repository.service.entity.TestEntity;
+import it.water.repository.service.spi.EventInterestRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+/**
+ * Tests for the single read update path between BaseEntityServiceImpl and BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UpdateSnapshotTest {
+
+    @Mock
+    private TestEntityRepository repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+    @Mock
+    private WaterValidator waterValidator;
+    @Mock
+    private Runtime runtime;
+    @Mock
+    private ApplicationEventProducer eventProducer;
+
+    private BaseEntityServiceImpl<TestEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(repository.find(anyLong())).thenAnswer(i -> entity(i.getArgument(0), "persisted", 7L));
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(eventProducer);
+        BaseEntitySystemServiceImpl<TestEntity> systemService = new BaseEntitySystemServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected TestEntityRepository getRepository() {
+                return repository;
+            }
+        };
+        systemService.setComponentRegistry(componentRegistry);
+        systemService.setWaterValidator(waterValidator);
+        service = new BaseEntityServiceImpl<TestEntity>(TestEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<TestEntity> getSystemService() {
+                return systemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        service.setRuntime(runtime);
+    }
+
+    @Test
+    void testUpdateReadsEntityOnce() {
+        TestEntity updated = service.update(entity(1L, "changed", 99L));
+        Mockito.verify(repository, Mockito.times(1)).find(1L);
+        Assertions.assertEquals(7L, updated.getOwnerUserId());
+        ArgumentCaptor<TestEntity> before = ArgumentCaptor.forClass(TestEntity.class);
+        Mockito.verify(eventProducer).produceDetailedEvent(before.capture(), any(), eq(PostUpdateDetailedEvent.class));
+        Assertions.assertEquals("persisted", before.getValue().getEntityField());
+    }
+
+    @Test
+    void testUpdateOfNotOwnedEntityWithoutListenersDoesNotRead() {
+        NotOwnedEntityRepository notOwnedRepository = Mockito.mock(NotOwnedEntityRepository.class);
+        Mockito.when(notOwnedRepository.update(any())).thenAnswer(i -> i.getArgument(0));
+        ApplicationEventProducer interestProducer = Mockito.mock(ApplicationEventProducer.class, Mockito.withSettings().extraInterfaces(EventInterestRegistry.class));
+        Mockito.when(((EventInterestRegistry) interestProducer).hasListeners(any(), any())).thenReturn(false);
+        Mockito.when(componentRegistry.findComponent(eq(ApplicationEventProducer.class), isNull())).thenReturn(interestProducer);
+        BaseEntitySystemServiceImpl<NotOwnedEntity> notOwnedSystemService = new BaseEntitySystemServiceImpl<NotOwnedEntity>(NotOwnedEntity.class) {
+            @Override
+            protected NotOwnedEntityRepository getRepository() {
+                return notOwnedRepository;
+            }
+        };
+        notOwnedSystemService.setComponentRegistry(componentRegistry);
+        notOwnedSystemService.setWaterValidator(waterValidator);
+        BaseEntityServiceImpl<NotOwnedEntity> notOwnedService = new BaseEntityServiceImpl<NotOwnedEntity>(NotOwnedEntity.class) {
+            @Override
+            protected BaseEntitySystemApi<NotOwnedEntity> getSystemService() {
+                return notOwnedSystemService;
+            }
+
+            @Override
+            protected ComponentRegistry getComponentRegistry() {
+                return componentRegistry;
+            }
+        };
+        notOwnedService.setRuntime(runtime);
+        NotOwnedEntity entity = new NotOwnedEntity();
+        entity.setId(1L);
+        entity.setEntityField("changed");
+        Assertions.assertSame(entity, notOwnedService.update(entity));
+        Mockito.verify(notOwnedRepository, Mockito.never()).find(anyLong());
+        Mockito.verify(notOwnedRepository).update(entity);
+    }
+
+    private static TestEntity entity(long id, String field, Long ownerUserId) {
+        TestEntity entity = new TestEntity();
+        entity.setId(id);
+        entity.setEntityField(field);
+        entity.setOwnerUserId(ownerUserId);
+        return entity;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.repository.service;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.BaseRepository;
+import it.water.core.api.validation.WaterValidator;
+import it.water.repository.entity.model.AbstractEntity;
+import it.water.repository.service.spi.PropertyValidator;
+import it.water.repository.service.validation.ValidationPlan;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * Tests for the per class validation plans of BaseEntitySystemServiceImpl.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ValidationPlanTest {
+
+    @Mock
+    private BaseRepository<ConstrainedEntity> repository;
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    private WaterValidator validator;
+    private BaseEntitySystemServiceImpl<ConstrainedEntity> service;
+
+    @BeforeEach
+    void setUp() {
+        validator = Mockito.mock(WaterValidator.class, Mockito.withSettings().extraInterfaces(PropertyValidator.class));
+        Mockito.when(repository.update(any())).thenAnswer(i -> i.getArgument(0));
+        service = new BaseEntitySystemServiceImpl<ConstrainedEntity>(ConstrainedEntity.class) {
+            @Override
+            protected BaseRepository<ConstrainedEntity> getRepository() {
+                return repository;
+            }
+        };
+        service.setComponentRegistry(componentRegistry);
+        service.setWaterValidator(validator);
+    }
+
+    @Test
+    void testPlanFindsConstrainedProperties() {
+        ValidationPlan plan = ValidationPlan.of(ConstrainedEntity.class);
+        Assertions.assertSame(plan, ValidationPlan.of(ConstrainedEntity.class));
+        Assertions.assertEquals(Set.of("name", "code", "tags"), plan.getConstrainedProperties());
+        Assertions.assertFalse(plan.isClassConstrained());
+        Assertions.assertFalse(ValidationPlan.of(UnconstrainedEntity.class).hasConstraints());
+    }
+
+    @Test
+    void testResourcesWithoutConstraintsSkipTheValidator() {
+        service.enableValidationPlan(false);
+        service.validate(new UnconstrainedEntity());
+        Mockito.verify(validator, Mockito.never()).validate(any());
+        ConstrainedEntity entity = entity("name", "AB12");
+        service.validate(entity);
+        Mockito.verify(validator).validate(entity);
+
+        service.disableValidationPlan();
+        service.validate(new UnconstrainedEntity());
+        Mockito.verify(validator, Mockito.times(2)).validate(any());
+    }
+
+    @Test
+    void testOnlyChangedPropertiesAreValidated() {
+        service.enableValidationPlan(true);
+        ConstrainedEntity loaded = entity("name", "AB12");
+        ConstrainedEntity unchanged = entity("name", "AB12");
+        unchanged.setDescription("not constrained");
+        service.update(unchanged, loaded);
+        Mockito.verifyNoInteractions(validator);
+
+        ConstrainedEntity changed = entity("other name", "AB12");
+        service.update(changed, loaded);
+        Mockito.verify((PropertyValidator) validator).validateProperties(changed, Set.of("name"));
+        Mockito.verify(validator, Mockito.never()).validate(any());
+
+        //without a snapshot all the constrained properties are validated
+        service.update(changed);
+        Mockito.verify(validator).validate(changed);
+    }
+
+    @Test
+    void testCascadedPropertiesAreAlwaysValidated() {
+        ValidationPlan plan = ValidationPlan.of(CascadingEntity.class);
+        Detail detail = new Detail();
+        CascadingEntity loaded = new CascadingEntity();
+        loaded.setName("name");
+        loaded.setDetail(detail);
+        CascadingEntity updated = new CascadingEntity();
+        updated.setName("name");
+        updated.setDetail(detail);
+        //the shared detail may have been changed in place
+        detail.setValue(null);
+        Assertions.assertEquals(Set.of("detail"), plan.changedProperties(updated, loaded));
+        //a resource compared with itself has every constrained property changed
+        Assertions.assertEquals(Set.of("name", "detail"), plan.changedProperties(updated, updated));
+        plan.validate(validator, updated, updated);
+        Mockito.verify(validator).validate(updated);
+    }
+
+    private static ConstrainedEntity entity(String name, String code) {
+        ConstrainedEntity entity = new ConstrainedEntity();
+        entity.setId(1L);
+        entity.setName(name);
+        entity.setCode(code);
+        entity.setTags(List.of("tag"));
+        return entity;
+    }
+
+    @Getter
+    @Setter
+    public static class ConstrainedEntity extends AbstractEntity {
+        @NotNull
+        @Size(max = 20)
+        private String name;
+        @Pattern.List({@Pattern(regexp = "[A-Z]+[0-9]+"), @Pattern(regexp = ".{4}")})
+        private String code;
+        private List<@NotNull String> tags;
+        private String description;
+
+        public void setId(long id) {
+            this.id = id;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class CascadingEntity extends AbstractEntity {
+        @NotNull
+        private String name;
+        @Valid
+        private Detail detail;
+    }
+
+    @Getter
+    @Setter
+    public static class Detail {
+        @NotNull
+        private String value = "value";
+    }
+
+    public static class UnconstrainedEntity extends AbstractEntity {
+        private String description;
+    }
+}
@@ -40,6 +40,7 @@ import it.water.core.testing.utils.api.TestPermissionManager;
 import it.water.core.testing.utils.bundle.TestRuntimeInitializer;
 import it.water.core.testing.utils.junit.WaterTestExtension;
 import it.water.repository.entity.model.exceptions.DuplicateEntityException;
+import it.water.repository.entity.model.BatchResult;
 import it.water.repository.entity.model.exceptions.EntityNotFound;
 import it.water.repository.service.api.ChildTestEntityApi;
 import it.water.repository.service.api.ChildTestEntityRepository;
@@ -334,6 +335,10 @@ class WaterRepositoryServiceTest implements Service {
         AssetCategoryIntegrationClient assetCategoryClient = Mockito.mock(AssetCategoryIntegrationClient.class);
         AssetTagIntegrationClient assetTagClient = Mockito.mock(AssetTagIntegrationClient.class);
 
+        //only the changed associations are written
+        Mockito.when(assetCategoryClient.findAssetCategories(any(), anyLong())).thenReturn(new long[] { 2L });
+        Mockito.when(assetTagClient.findAssetTags(any(), anyLong())).thenReturn(new long[] { 20L });
+
         localService.setAssetCategoryIntegrationClient(assetCategoryClient);
         localService.setAssetTagIntegrationClient(assetTagClient);
         localService.setWaterValidator(waterValidator);
@@ -484,6 +489,33 @@ class WaterRepositoryServiceTest implements Service {
         Assertions.assertThrows(UnauthorizedException.class, () -> protectedService.find((Query) null));
     }
 
+    @Test
+    @Order(14)
+    void testBatchOperationsCheckEachItem() {
+        TestEntity ownedByReadUser = new TestEntity();
+        ownedByReadUser.setId(60);
+        ownedByReadUser.setOwnerUserId(readUser.getId());
+        Mockito.doReturn(ownedByReadUser).when(workingRepo).find(60L);
+        TestEntityApi testEntityApi = getTestEntityApi();
+        List<Long> ids = List.of(60L, 61L);
+
+        //readUser has the remove permission but owns only the first entity
+        TestRuntimeInitializer.getInstance().impersonate(readUser, runtime);
+        BatchResult<TestEntity> result = testEntityApi.removeAllByIds(ids);
+        Assertions.assertEquals(1, result.getSucceededCount());
+        Assertions.assertEquals(1, result.getFailedCount());
+        Assertions.assertEquals(61L, result.getFailures().get(0).getEntityId());
+        Assertions.assertTrue(result.getFailures().get(0).getCause() instanceof UnauthorizedException);
+
+        //userKo has no permission at all
+        TestRuntimeInitializer.getInstance().impersonate(userKo, runtime);
+        Assertions.assertThrows(UnauthorizedException.class, () -> testEntityApi.removeAllByIds(ids));
+
+        TestRuntimeInitializer.getInstance().impersonate(userOk, runtime);
+        Assertions.assertEquals(2, testEntityApi.removeAllByIds(ids).getSucceededCount());
+        resetRepositoryMock();
+    }
+
     private BaseEntitySystemServiceImpl<TestEntity> createLocalSystemService() {
         TestEntityRepository mockRepo = Mockito.mock(TestEntityRepository.class);
         Mockito.lenient().when(mockRepo.persist(any())).thenAnswer(i -> i.getArgument(0));
@@ -18,5 +18,5 @@ package it.water.repository.service.api;
 import it.water.core.api.service.BaseEntityApi;
 import it.water.repository.service.entity.TestEntity;
 
-public interface TestEntityApi extends BaseEntityApi<TestEntity> {
+public interface TestEntityApi extends BaseEntityApi<TestEntity>, BatchEntityApi<TestEntity> {
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.water.repository.service.entity;
+
+import it.water.core.api.entity.owned.OwnedResource;
+import it.water.core.api.model.EntityExtension;
+import it.water.repository.entity.model.RootParentIndexedResource;
+import jakarta.persistence.Access;
+import jakarta.persistence.AccessType;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Transient;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+@Entity
+@Access(AccessType.FIELD)
+@Data
+public class IndexedChildTestEntity implements RootParentIndexedResource {
+    @Id
+    private long id;
+    @ManyToOne
+    private TestEntity parent;
+    /**
+     * Intermediate node of the parent chain, the root parent is the parent of the first node without one
+     */
+    @ManyToOne
+    private IndexedChildTestEntity parentNode;
+    private Long rootParentId;
+    private Date entityCreateDate;
+    private Date entityModifyDate;
+    private Integer entityVersion;
+    @Transient
+    private Map<String, Object> extraFields = new HashMap<>();
+    @Transient
+    private EntityExtension extension;
+
+    @Override
+    public OwnedResource getRootParent() {
+        return parentNode != null ? parentNode.getRootParent() : parent;
+    }
+
+    @Override
+    public Long getOwnerUserId() {
+        return parent != null ? parent.getOwnerUserId() : null;
+    }
+
+    @Override
+    public void setOwnerUserId(Long ownerUserId) {
+        //do nothing
+    }
+}